@@ -0,0 +1,81 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoFunction;
+import com.sap.conn.jco.JCoTable;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account search filter path: translation of ConnId filter to {@link SapFilter}, adding of base account query
+ * and writing of SELECTION_EXP rows into BAPI_USER_GETLIST.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.DISABLE_OK_LOG)
+public class AccountFilterBenchmark {
+
+    private SapConnector connector;
+
+    private SapAccountFilterTranslator translator;
+
+    private Filter filter;
+
+    private SapFilter baseQuery;
+
+    private SapFilter query;
+
+    private JCoFunction getList;
+
+    private JCoTable selectionExp;
+
+    @Setup
+    public void setup() {
+        SapSimulator simulator = new SapSimulator("JMH_FILTER");
+        connector = simulator.connect(simulator.createConfiguration());
+        translator = new SapAccountFilterTranslator();
+        // (department = IT and last name starts with N and modified since 2024) or ... as typical for imports
+        filter = FilterBuilder.and(
+                FilterBuilder.and(
+                        FilterBuilder.equalTo(AttributeBuilder.build("ADDRESS.DEPARTMENT", "IT")),
+                        FilterBuilder.startsWith(AttributeBuilder.build("ADDRESS.LASTNAME", "N"))),
+                FilterBuilder.greaterThanOrEqualTo(AttributeBuilder.build("LASTMODIFIED.MODDATE", "2024-01-01")));
+        baseQuery = new SapFilter(SapFilter.OPERATOR_EQUAL, "LOGONDATA.USTYP", "A");
+        query = translator.translate(filter).get(0);
+        getList = simulator.getFunction("BAPI_USER_GETLIST");
+        selectionExp = getList.getTableParameterList().getTable("SELECTION_EXP");
+    }
+
+    @Benchmark
+    public List<SapFilter> translate() {
+        return translator.translate(filter);
+    }
+
+    @Benchmark
+    public SapFilter addBaseQuery() {
+        return connector.addBaseToAccountQuery(baseQuery, query);
+    }
+
+    @Benchmark
+    public JCoTable prepareFilters() {
+        selectionExp.deleteAllRows();
+        connector.prepareFilters(getList, connector.addBaseToAccountQuery(baseQuery, query));
+        return selectionExp;
+    }
+}
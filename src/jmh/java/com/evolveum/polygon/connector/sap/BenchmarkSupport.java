@@ -0,0 +1,16 @@
+package com.evolveum.polygon.connector.sap;
+
+/**
+ * Common settings of connector benchmarks.
+ */
+final class BenchmarkSupport {
+
+    /**
+     * JDK logging with default INFO level in forked JVM, so OK (FINE) messages are disabled as usual in production
+     * and are not written to the output of the benchmark.
+     */
+    static final String DISABLE_OK_LOG = "-Dorg.identityconnectors.common.logging.class=org.identityconnectors.common.logging.impl.JDKLogger";
+
+    private BenchmarkSupport() {
+    }
+}
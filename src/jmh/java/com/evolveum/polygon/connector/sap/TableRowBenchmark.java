@@ -0,0 +1,55 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of one fixed width table row (WA) returned by RFC_GET_TABLE_ENTRIES into key and connector object,
+ * as done for each row in table search, with default AGR_DEFINE configuration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.DISABLE_OK_LOG)
+public class TableRowBenchmark {
+
+    private static final String TABLE = "AGR_DEFINE";
+
+    private SapConnector connector;
+
+    private String wa;
+
+    @Setup
+    public void setup() {
+        SapSimulator simulator = new SapSimulator("JMH_TABLE_ROW");
+        connector = simulator.connect(simulator.createConfiguration());
+        wa = String.format("%-3s%-30s%-30s", SapSimulator.CLIENT, "Z_ROLE_BENCHMARK", "Z_ROLE_PARENT");
+    }
+
+    @Benchmark
+    public String rowKey() {
+        return connector.getTableRowKey(TABLE, wa);
+    }
+
+    @Benchmark
+    public ConnectorObject rowObject() {
+        Map<String, String> rootValues = new HashMap<>();
+        String key = connector.getTableRowKey(TABLE, wa);
+        return connector.buildTableObject(TABLE, key, wa, rootValues).build();
+    }
+}
@@ -0,0 +1,81 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoFunction;
+import com.sap.conn.jco.JCoTable;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.evolveum.polygon.connector.sap.SapSimulator.row;
+
+/**
+ * XML encoding of table parameter rows read from SAP ({@link Table#Table(JCoTable)}) and parsing of XML and key-only
+ * values coming from ConnId ({@link Table#Table(Set, String)}), per whole ACTIVITYGROUPS table of one user.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.DISABLE_OK_LOG)
+public class TableXmlBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int rows;
+
+    private JCoTable activityGroups;
+
+    private Set<Attribute> xmlValues;
+
+    private Set<Attribute> keyValues;
+
+    @Setup
+    public void setup() throws Exception {
+        SapSimulator simulator = new SapSimulator("JMH_TABLE_XML");
+        SapSimulator.User user = simulator.addUser("BENCH");
+        List<String> agrNames = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            String agrName = String.format("Z_ROLE_%03d", i);
+            user.addRow(SapConnector.ACTIVITYGROUPS, row("AGR_NAME", agrName, "FROM_DAT", "2020-01-01",
+                    "TO_DAT", "9999-12-31", "AGR_TEXT", "Role " + agrName));
+            agrNames.add(agrName);
+        }
+        JCoFunction detail = simulator.getFunction("BAPI_USER_GET_DETAIL");
+        detail.getImportParameterList().setValue(SapConnector.USERNAME, "BENCH");
+        simulator.execute(detail);
+        activityGroups = detail.getTableParameterList().getTable(SapConnector.ACTIVITYGROUPS);
+
+        xmlValues = Set.of(AttributeBuilder.build(SapConnector.ACTIVITYGROUPS, new ArrayList<Object>(new Table(activityGroups).getXmls())));
+        keyValues = Set.of(AttributeBuilder.build(SapConnector.ACTIVITYGROUPS + ".AGR_NAME", new ArrayList<Object>(agrNames)));
+    }
+
+    @Benchmark
+    public Table encode() throws Exception {
+        return new Table(activityGroups);
+    }
+
+    @Benchmark
+    public Table parseXml() throws Exception {
+        return new Table(xmlValues, SapConnector.ACTIVITYGROUPS);
+    }
+
+    @Benchmark
+    public Table parseKeys() throws Exception {
+        return new Table(keyValues, SapConnector.ACTIVITYGROUPS);
+    }
+}
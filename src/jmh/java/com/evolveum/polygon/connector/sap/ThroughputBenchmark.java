@@ -0,0 +1,365 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * End-to-end throughput of {@link SapConnector} operations against simulated SAP ({@link SapSimulator}) with
+ * configurable count of users and latency of each RFC call, runs without SAP.
+ * <br/>
+ * Each operation is measured for each combination of JCo pool size (simulated peak limit of the destination) and
+ * concurrency:
+ * <ul>
+ *     <li>full - search of all users, concurrency is count of reconciliation partitions and threads</li>
+ *     <li>paged - search of all users page by page, pages are read by concurrency client threads</li>
+ *     <li>sync - LiveSync of changed users (see --changes), concurrency is count of sync threads</li>
+ *     <li>table - paged search of roles (AGR_DEFINE, see --roles) with short texts from sub-table AGR_TEXTS,
+ *     pages are read by concurrency client threads</li>
+ *     <li>update - change of department of changed users (see --changes) by concurrency client threads</li>
+ * </ul>
+ * Client threads use their own connector instance, as from connector pool. Reported are objects per second,
+ * 50th and 99th percentile of latency of one object (time between returned objects of one thread, or duration of
+ * one update), count of RFC calls and peak of used heap (including the simulated data). Start it with:
+ * <pre>
+ * mvn -Pbenchmark verify -Djmh.skip=true -Dthroughput.skip=false -Dthroughput.args="--users 100000 --latency 2 --pool-sizes 4,16 --concurrency 1,4"
+ * </pre>
+ * Simulated data need about 3 kB of heap for each user, so add for example -Xmx8g to JAVA_TOOL_OPTIONS for 1M users.
+ */
+public class ThroughputBenchmark {
+
+    private static final String USAGE = "Usage: ThroughputBenchmark [--users 10000] [--latency 1] [--jitter 0]"
+            + " [--operations full,paged,sync,table,update] [--pool-sizes 4] [--concurrency 1,4] [--page-size 500]"
+            + " [--changes 10] [--roles 1000] [--warmup 1] [--csv file]";
+
+    private static final String[] COLUMNS = {"op", "users", "latency ms", "pool", "concurrency", "objects", "seconds",
+            "objects/s", "p50 ms", "p99 ms", "RFC calls", "peak heap MB"};
+
+    private static final String FORMAT = "%-7s %8s %10s %5s %11s %9s %9s %11s %8s %8s %10s %12s";
+
+    private static final String SUB_TABLE = "AGR_TEXTS for AGR_DEFINE format TSV as ShortDescription="
+            + "MANDT:3:IGNORE,AGR_NAME:30:MATCH,SPRAS:1(\"E\"):IGNORE,LINE:5(\"00000\"):IGNORE,TEXT:80";
+
+    private int users = 10000;
+    private long latency = 1;
+    private long jitter = 0;
+    private List<String> operations = Arrays.asList("full", "paged", "sync", "table", "update");
+    private int[] poolSizes = {4};
+    private int[] concurrency = {1, 4};
+    private int pageSize = 500;
+    private int changesPercent = 10;
+    private int roles = 1000;
+    private int warmup = 1;
+    private String csv;
+
+    private SapSimulator simulator;
+
+    private List<String> userNames;
+
+    private final AtomicLong updates = new AtomicLong();
+
+    /**
+     * Measured values of one run.
+     */
+    private static final class Run {
+
+        final LatencyHistogram latencies = new LatencyHistogram();
+
+        final AtomicLong objects = new AtomicLong();
+
+        /**
+         * Object returned or processed by a thread, latency is the time from the previous one of the thread.
+         */
+        void object(long[] last) {
+            long now = System.nanoTime();
+            latencies.record(now - last[0]);
+            last[0] = now;
+            objects.incrementAndGet();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ThroughputBenchmark benchmark = new ThroughputBenchmark();
+        benchmark.parse(args);
+        benchmark.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            if (value == null && !"--help".equals(args[i])) {
+                throw new IllegalArgumentException("Missing value of " + args[i] + "\n" + USAGE);
+            }
+            switch (args[i]) {
+                case "--users":
+                    users = Integer.parseInt(value);
+                    break;
+                case "--latency":
+                    latency = Long.parseLong(value);
+                    break;
+                case "--jitter":
+                    jitter = Long.parseLong(value);
+                    break;
+                case "--operations":
+                    operations = Arrays.asList(value.split(","));
+                    break;
+                case "--pool-sizes":
+                    poolSizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--concurrency":
+                    concurrency = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--page-size":
+                    pageSize = Integer.parseInt(value);
+                    break;
+                case "--changes":
+                    changesPercent = Integer.parseInt(value);
+                    break;
+                case "--roles":
+                    roles = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--csv":
+                    csv = value;
+                    break;
+                default:
+                    System.out.println(USAGE);
+                    System.exit("--help".equals(args[i]) ? 0 : 1);
+            }
+            i++;
+        }
+    }
+
+    private void run() throws Exception {
+        long start = System.nanoTime();
+        simulator = SapSimulator.generate("THROUGHPUT", users, 1);
+        for (int i = 0; i < roles; i++) {
+            String agrName = String.format("Z_BENCH_%06d", i);
+            simulator.addRole(agrName, "");
+            simulator.addTableRow("AGR_TEXTS", String.format("%s%-30sE00000%-80s", SapSimulator.CLIENT, agrName, "Benchmark role " + i));
+        }
+        userNames = new ArrayList<>();
+        for (int i = 1; i <= users; i++) {
+            userNames.add(String.format("USER%06d", i));
+        }
+        System.out.printf("Generated %d users and %d roles in %.1f s%n", users, roles, (System.nanoTime() - start) / 1e9);
+
+        for (int i = 0; i < warmup; i++) {
+            for (String operation : operations) {
+                measure(operation, poolSizes[0], concurrency[0]);
+            }
+        }
+
+        List<Object[]> results = new ArrayList<>();
+        System.out.println(String.format(FORMAT, (Object[]) COLUMNS));
+        for (String operation : operations) {
+            for (int pool : poolSizes) {
+                for (int threads : concurrency) {
+                    Object[] result = measure(operation, pool, threads);
+                    System.out.println(String.format(FORMAT, result));
+                    results.add(result);
+                }
+            }
+        }
+        if (csv != null) {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(csv))) {
+                writer.println(String.join(",", COLUMNS));
+                for (Object[] result : results) {
+                    writer.println(Arrays.stream(result).map(String::valueOf).collect(Collectors.joining(",")));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return values of {@link #COLUMNS}
+     */
+    private Object[] measure(String operation, int pool, int threads) throws Exception {
+        simulator.setLatency(0, 0);
+        simulator.setPoolCapacity(0);
+        int clients = "full".equals(operation) || "sync".equals(operation) ? 1 : threads;
+        List<SapConnector> connectors = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            // own configuration instance for each connector, as created by ConnId
+            connectors.add(simulator.connect(configuration(operation, pool, threads)));
+        }
+        SyncToken token = null;
+        if ("sync".equals(operation)) {
+            token = connectors.get(0).getLatestSyncToken(ObjectClass.ACCOUNT);
+            // changes are in the next second after the token
+            Thread.sleep(1100);
+            for (String userName : changedUsers()) {
+                simulator.touch(userName);
+            }
+        }
+
+        simulator.setLatency(latency, jitter);
+        simulator.setPoolCapacity(pool);
+        simulator.resetStatistics();
+        Run run = new Run();
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP) {
+                memoryPool.resetPeakUsage();
+                heapPools.add(memoryPool);
+            }
+        }
+
+        long start = System.nanoTime();
+        switch (operation) {
+            case "full":
+                fullSearch(connectors.get(0), run);
+                break;
+            case "paged":
+                pagedSearch(connectors, ObjectClass.ACCOUNT, users, run);
+                break;
+            case "sync":
+                long[] last = {System.nanoTime()};
+                connectors.get(0).sync(ObjectClass.ACCOUNT, token, delta -> {
+                    run.object(last);
+                    return true;
+                }, null);
+                break;
+            case "table":
+                pagedSearch(connectors, new ObjectClass("ACTIVITYGROUP"), roles + 50, run);
+                break;
+            case "update":
+                massUpdate(connectors, run);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation + "\n" + USAGE);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean memoryPool : heapPools) {
+            peakHeap += memoryPool.getPeakUsage().getUsed();
+        }
+        for (SapConnector connector : connectors) {
+            connector.dispose();
+        }
+        return new Object[]{operation, users, latency + (jitter > 0 ? "+" + jitter : ""), pool, threads, run.objects.get(),
+                round(seconds, 2), round(run.objects.get() / seconds, 1), round(run.latencies.getPercentileMillis(50), 2),
+                round(run.latencies.getPercentileMillis(99), 2), simulator.getCalls(), peakHeap / (1024 * 1024)};
+    }
+
+    private static String round(double value, int decimals) {
+        return String.format(Locale.ROOT, "%." + decimals + "f", value);
+    }
+
+    private SapConfiguration configuration(String operation, int pool, int threads) {
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setPoolCapacity(String.valueOf(pool));
+        configuration.setPeakLimit(String.valueOf(pool));
+        if ("full".equals(operation) && threads > 1) {
+            // ranges of the same size over generated usernames
+            String[] partitions = new String[threads - 1];
+            for (int i = 1; i < threads; i++) {
+                partitions[i - 1] = String.format("USER%06d", (long) users * i / threads + 1);
+            }
+            configuration.setReconciliationPartitions(partitions);
+            configuration.setReconciliationThreads(threads);
+        } else if ("sync".equals(operation)) {
+            configuration.setSyncThreads(threads);
+        } else if ("table".equals(operation)) {
+            configuration.setSubTables(new String[]{SUB_TABLE});
+        }
+        return configuration;
+    }
+
+    private List<String> changedUsers() {
+        List<String> changed = new ArrayList<>(userNames);
+        Collections.shuffle(changed, new Random(updates.get()));
+        return changed.subList(0, (int) ((long) users * changesPercent / 100));
+    }
+
+    private void fullSearch(SapConnector connector, Run run) {
+        long[] last = {System.nanoTime()};
+        connector.executeQuery(ObjectClass.ACCOUNT, null, object -> {
+            run.object(last);
+            return true;
+        }, null);
+    }
+
+    /**
+     * Pages are read by threads in turn, thread i reads pages i, i + threads, ...
+     */
+    private void pagedSearch(List<SapConnector> connectors, ObjectClass objectClass, int total, Run run) throws Exception {
+        int pages = (total + pageSize - 1) / pageSize;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < connectors.size(); t++) {
+            SapConnector connector = connectors.get(t);
+            int first = t;
+            tasks.add(() -> {
+                long[] last = {System.nanoTime()};
+                for (int page = first; page < pages; page += connectors.size()) {
+                    OperationOptions options = new OperationOptionsBuilder().setPageSize(pageSize)
+                            .setPagedResultsOffset(page * pageSize).build();
+                    connector.executeQuery(objectClass, null, object -> {
+                        run.object(last);
+                        return true;
+                    }, options);
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    private void massUpdate(List<SapConnector> connectors, Run run) throws Exception {
+        List<String> changed = changedUsers();
+        String department = "DEPT" + updates.incrementAndGet();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < connectors.size(); t++) {
+            SapConnector connector = connectors.get(t);
+            int first = t;
+            tasks.add(() -> {
+                long[] last = {System.nanoTime()};
+                for (int i = first; i < changed.size(); i += connectors.size()) {
+                    last[0] = System.nanoTime();
+                    connector.update(ObjectClass.ACCOUNT, new Uid(changed.get(i)),
+                            Collections.singleton(AttributeBuilder.build("ADDRESS.DEPARTMENT", department)), null);
+                    run.object(last);
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    private static void invokeAll(List<Callable<Void>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoFunction;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.evolveum.polygon.connector.sap.SapSimulator.row;
+
+/**
+ * Conversion of BAPI_USER_GET_DETAIL (and optional SUSR_GET_ADMIN_USER_LOGIN_INFO) result to connector object,
+ * done for each user in reconciliation. Functions are executed once in setup, only conversion is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.DISABLE_OK_LOG)
+public class UserConversionBenchmark {
+
+    @Param({"0", "10", "50"})
+    public int activityGroups;
+
+    @Param({"false", "true"})
+    public boolean loginInfo;
+
+    private SapConnector connector;
+
+    private JCoFunction detail;
+
+    private JCoFunction userLoginInfo;
+
+    @Setup
+    public void setup() throws Exception {
+        SapSimulator simulator = SapSimulator.generate("JMH_CONVERSION", 0, 1);
+        SapSimulator.User user = simulator.addUser("BENCH")
+                .set("ADDRESS.FIRSTNAME", "Anna")
+                .set("ADDRESS.LASTNAME", "Novak")
+                .set("ADDRESS.FULLNAME", "Anna Novak")
+                .set("ADDRESS.DEPARTMENT", "IT")
+                .set("ADDRESS.E_MAIL", "anna.novak@example.com")
+                .set("DEFAULTS.LANGU", "E")
+                .set("LOGONDATA.GLTGV", "2020-01-01")
+                .set("COMPANY.COMPANY", "EXAMPLE");
+        user.addRow("GROUPS", row("USERGROUP", "IT"));
+        user.addRow("PROFILES", row("BAPIPROF", "Z_PROF_01", "BAPIPTEXT", "Generated profile", "BAPITYPE", "S", "BAPIAKTPS", "A"));
+        for (int i = 0; i < activityGroups; i++) {
+            String agrName = String.format("Z_ROLE_%03d", i);
+            user.addRow(SapConnector.ACTIVITYGROUPS, row("AGR_NAME", agrName, "FROM_DAT", "2020-01-01",
+                    "TO_DAT", "9999-12-31", "AGR_TEXT", "Role " + agrName));
+        }
+
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setAlsoReadLoginInfo(loginInfo);
+        connector = simulator.connect(configuration);
+
+        detail = simulator.getFunction("BAPI_USER_GET_DETAIL");
+        detail.getImportParameterList().setValue(SapConnector.USERNAME, "BENCH");
+        simulator.execute(detail);
+        if (loginInfo) {
+            userLoginInfo = simulator.getFunction("SUSR_GET_ADMIN_USER_LOGIN_INFO");
+            userLoginInfo.getImportParameterList().setValue("USERID", "BENCH");
+            simulator.execute(userLoginInfo);
+        }
+    }
+
+    @Benchmark
+    public ConnectorObject convert() throws Exception {
+        return connector.convertUserToConnectorObject(detail, userLoginInfo);
+    }
+}
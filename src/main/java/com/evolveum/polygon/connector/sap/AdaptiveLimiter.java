@@ -0,0 +1,197 @@
+package com.evolveum.polygon.connector.sap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD (additive increase, multiplicative decrease) limit of concurrent RFC calls to one SAP destination.
+ * <br/>
+ * Limit grows by 1 per limit of successful calls, while the limit is used and latency is stable. When latency
+ * of a function is more than twice its usual latency, limit is multiplied by 0.8, when SAP is overloaded
+ * (resource or system failure), limit is halved. Limit is between 1 and configured maximum.
+ * <br/>
+ * Part of the limit (reserved percent, at least one call) is reserved for {@link RfcPriority#INTERACTIVE} calls,
+ * bulk calls can use only the rest of it and don't start while an interactive call is waiting.
+ */
+public class AdaptiveLimiter {
+
+    private static final double LATENCY_BACKOFF = 0.8;
+    private static final double OVERLOAD_BACKOFF = 0.5;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // weight of new latency sample in usual latency of a function
+    private static final double BASELINE_ALPHA = 0.1;
+    // latency differences under this are not considered as spikes
+    private static final long MIN_SPIKE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    // usual latency of each function in nanoseconds
+    private final Map<String, Double> baselines = new HashMap<>();
+
+    private int maxLimit;
+    private double limit;
+    private int inFlight;
+
+    private int reservedPercent;
+    private int bulkInFlight;
+    private int interactiveWaiting;
+
+    /**
+     * @param reservedPercent percent of limit reserved for interactive calls, 0 = no reservation
+     */
+    public AdaptiveLimiter(int maxLimit, int reservedPercent) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(1, this.maxLimit / 2);
+        this.reservedPercent = Math.max(0, Math.min(100, reservedPercent));
+    }
+
+    /**
+     * Wait until a call can be started.
+     */
+    public void acquire(RfcPriority priority) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (priority == RfcPriority.INTERACTIVE) {
+                interactiveWaiting++;
+                try {
+                    while (inFlight >= (int) limit) {
+                        available.await();
+                    }
+                } finally {
+                    interactiveWaiting--;
+                }
+            } else {
+                while (inFlight >= (int) limit || bulkInFlight >= getBulkLimit() || interactiveWaiting > 0) {
+                    available.await();
+                }
+                bulkInFlight++;
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return limit of bulk calls, at least 1
+     */
+    private int getBulkLimit() {
+        if (reservedPercent == 0) {
+            return (int) limit;
+        }
+        int reserved = Math.max(1, (int) Math.round(limit * reservedPercent / 100));
+        return Math.max(1, (int) limit - reserved);
+    }
+
+    /**
+     * Call finished.
+     *
+     * @param priority priority used in {@link #acquire(RfcPriority)}
+     * @param function name of called function
+     * @param latencyNanos duration of the call, negative if it failed and is not a latency sample
+     * @param overload true if SAP was not able to process the call because of its load
+     */
+    public void release(RfcPriority priority, String function, long latencyNanos, boolean overload) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (priority == RfcPriority.BULK) {
+                bulkInFlight--;
+            }
+            if (overload) {
+                limit = Math.max(1, limit * OVERLOAD_BACKOFF);
+            } else if (latencyNanos >= 0) {
+                Double baseline = baselines.get(function);
+                if (baseline != null && latencyNanos > baseline * LATENCY_TOLERANCE && latencyNanos - baseline > MIN_SPIKE_NANOS) {
+                    limit = Math.max(1, limit * LATENCY_BACKOFF);
+                } else if (inFlight + 1 >= (int) limit) {
+                    // grow only when the limit is really used
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+                baselines.put(function, baseline == null ? latencyNanos : baseline + BASELINE_ALPHA * (latencyNanos - baseline));
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        lock.lock();
+        try {
+            this.maxLimit = Math.max(1, maxLimit);
+            this.limit = Math.min(limit, this.maxLimit);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setReservedPercent(int reservedPercent) {
+        lock.lock();
+        try {
+            this.reservedPercent = Math.max(0, Math.min(100, reservedPercent));
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getReservedPercent() {
+        lock.lock();
+        try {
+            return reservedPercent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getBulkInFlight() {
+        lock.lock();
+        try {
+            return bulkInFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInteractiveWaiting() {
+        lock.lock();
+        try {
+            return interactiveWaiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxLimit() {
+        lock.lock();
+        try {
+            return maxLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
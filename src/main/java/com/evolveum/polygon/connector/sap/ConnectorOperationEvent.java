@@ -0,0 +1,72 @@
+package com.evolveum.polygon.connector.sap;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+
+/**
+ * Java Flight Recorder event of one ConnId operation of {@link SapConnector}, {@link RfcCallEvent}s of its RFC calls
+ * are recorded inside of it in the same thread (or in worker threads of parallel reads).
+ */
+@Name("com.evolveum.polygon.connector.sap.ConnectorOperation")
+@Label("SAP Connector Operation")
+@Category({"Evolveum", "SAP Connector"})
+@Description("ConnId operation (executeQuery, create, update, delete, sync) of SAP connector")
+@StackTrace(false)
+public class ConnectorOperationEvent extends Event {
+
+    static final String OK = "OK";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Object Class")
+    String objectClass;
+
+    @Label("Destination")
+    String destination;
+
+    @Label("Objects")
+    @Description("Objects or sync deltas handed over to the handler, 1 for successful create, update and delete")
+    long objects;
+
+    @Label("Outcome")
+    @Description("OK, or simple class name of the thrown exception")
+    String outcome;
+
+    /**
+     * Create and begin the event.
+     */
+    static ConnectorOperationEvent start(String operation, ObjectClass objectClass, String destination) {
+        ConnectorOperationEvent event = new ConnectorOperationEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.objectClass = objectClass == null ? null : objectClass.getObjectClassValue();
+            event.destination = destination;
+            event.outcome = OK;
+            event.begin();
+        }
+        return event;
+    }
+
+    void failed(Throwable e) {
+        outcome = e.getClass().getSimpleName();
+    }
+
+    /**
+     * End the event and commit it, when it's over threshold.
+     */
+    void finish(long objects) {
+        if (isEnabled()) {
+            this.objects = objects;
+            end();
+            if (shouldCommit()) {
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Stable 64-bit hash of all attributes of a connector object, used to recognize objects without any change.
+ * <br/>
+ * Each attribute is hashed (FNV-1a over its name and values) separately and the results are summed,
+ * so the fingerprint doesn't depend on the order of attributes. Values are hashed directly
+ * (characters of strings, bits of numbers), without creating temporary strings.
+ */
+public class ContentFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // separates values and marks their type, so "A","B" differs from "AB" and 1L from "1"
+    private static final int NULL_VALUE = 0x100;
+    private static final int STRING_VALUE = 0x101;
+    private static final int NUMBER_VALUE = 0x102;
+    private static final int BYTES_VALUE = 0x103;
+    private static final int OTHER_VALUE = 0x104;
+
+    private ContentFingerprint() {
+    }
+
+    /**
+     * @param ignoredAttribute name of attribute not included in the fingerprint, may be null
+     */
+    public static long of(ConnectorObject object, String ignoredAttribute) {
+        return of(object.getAttributes(), ignoredAttribute);
+    }
+
+    /**
+     * Fingerprint of attributes of an object not built yet, the same as of the built object.
+     *
+     * @param ignoredAttribute name of attribute not included in the fingerprint, may be null
+     */
+    public static long of(Collection<? extends Attribute> attributes, String ignoredAttribute) {
+        long fingerprint = 0;
+        for (Attribute attribute : attributes) {
+            if (attribute.getName().equals(ignoredAttribute)) {
+                continue;
+            }
+            fingerprint += hash(attribute);
+        }
+        return fingerprint;
+    }
+
+    private static long hash(Attribute attribute) {
+        long hash = update(FNV_OFFSET, attribute.getName());
+        List<Object> values = attribute.getValue();
+        if (values == null) {
+            return hash;
+        }
+        for (Object value : values) {
+            hash = updateValue(hash, value);
+        }
+        return hash;
+    }
+
+    private static long updateValue(long hash, Object value) {
+        if (value == null) {
+            return update(hash, NULL_VALUE);
+        }
+        if (value instanceof CharSequence) {
+            return update(update(hash, STRING_VALUE), (CharSequence) value);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return update(update(hash, NUMBER_VALUE), ((Number) value).longValue());
+        }
+        if (value instanceof Boolean) {
+            return update(update(hash, NUMBER_VALUE), (Boolean) value ? 1L : 0L);
+        }
+        if (value instanceof Date) {
+            return update(update(hash, NUMBER_VALUE), ((Date) value).getTime());
+        }
+        if (value instanceof byte[]) {
+            hash = update(hash, BYTES_VALUE);
+            for (byte b : (byte[]) value) {
+                hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+            }
+            return hash;
+        }
+        // BigDecimal, Double, ... are rare in SAP user, use their text form
+        return update(update(hash, OTHER_VALUE), value.toString());
+    }
+
+    private static long update(long hash, CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = update(hash, value.charAt(i));
+        }
+        return hash;
+    }
+
+    private static long update(long hash, int value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    private static long update(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
+
+    public static String toHex(long fingerprint) {
+        String hex = Long.toHexString(fingerprint);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+}
@@ -0,0 +1,51 @@
+package com.evolveum.polygon.connector.sap;
+
+import java.util.Map;
+
+/**
+ * JMX view of RFC calls to one SAP destination, shared by all connector instances using it.
+ */
+public interface DestinationMetricsMXBean {
+
+    String getDestinationName();
+
+    /**
+     * @return actual limit of concurrent RFC calls, 0 if calls are not limited
+     */
+    int getConcurrencyLimit();
+
+    /**
+     * @return configured maximum of concurrent RFC calls, 0 if calls are not limited
+     */
+    int getMaxConcurrency();
+
+    /**
+     * @return number of running RFC calls
+     */
+    int getInFlight();
+
+    /**
+     * @return number of running bulk RFC calls (search, LiveSync)
+     */
+    int getBulkInFlight();
+
+    /**
+     * @return number of interactive RFC calls waiting for a free permit
+     */
+    int getInteractiveWaiting();
+
+    /**
+     * @return total time spent waiting for rate limit, in milliseconds, for each function class
+     */
+    Map<String, Long> getThrottleWaitMillis();
+
+    /**
+     * @return number of calls, which waited for rate limit, for each function class
+     */
+    Map<String, Long> getThrottledCalls();
+
+    /**
+     * @return calls, errors and latency percentiles of each called function (and conversion of results)
+     */
+    Map<String, RfcFunctionStats> getFunctionStats();
+}
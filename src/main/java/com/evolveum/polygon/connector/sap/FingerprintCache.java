@@ -0,0 +1,171 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Last synchronized content fingerprint of users, one cache for each SAP destination shared by all connector
+ * instances. Only the least recently used syncFingerprintCacheSize users are kept in memory.
+ * <br/>
+ * If a file is given, the cache is loaded from it when created and stored to it after changes, so it survives restart.
+ * The file is gzip compressed: header with count, followed by usernames and their fingerprints from the least
+ * recently used one.
+ */
+public class FingerprintCache {
+
+    private static final Log LOG = Log.getLog(FingerprintCache.class);
+
+    private static final int MAGIC = 0x53415046; // "SAPF"
+    private static final byte VERSION = 1;
+
+    private static final Map<String, FingerprintCache> CACHES = new ConcurrentHashMap<>();
+
+    private final int capacity;
+
+    private final File file;
+
+    private final Map<String, Long> fingerprints;
+
+    private final AtomicLong suppressed = new AtomicLong();
+
+    // changed after the last save
+    private volatile boolean dirty;
+
+    private FingerprintCache(int capacity, File file) {
+        this.capacity = capacity;
+        this.file = file;
+        this.fingerprints = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param file where the cache is stored, null to keep it only in memory
+     * @return cache of destination, a new one if capacity or file changed
+     */
+    public static FingerprintCache get(String destinationName, int capacity, File file) {
+        return CACHES.compute(destinationName, (name, cache) -> {
+            if (cache != null && cache.capacity == capacity && Objects.equals(cache.file, file)) {
+                return cache;
+            }
+            FingerprintCache created = new FingerprintCache(capacity, file);
+            created.load();
+            return created;
+        });
+    }
+
+    private void load() {
+        if (file == null || !file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a fingerprint cache file: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                fingerprints.put(in.readUTF(), in.readLong());
+            }
+            LOG.info("Loaded {0} fingerprint(s) from {1}", fingerprints.size(), file);
+        } catch (IOException e) {
+            // only optimization, users are reported again
+            LOG.warn(e, "Can't load fingerprints from {0}, starting with empty cache: {1}", file, e.getMessage());
+            fingerprints.clear();
+        }
+    }
+
+    /**
+     * Store the cache to its file, if it was changed after the last save.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null || !dirty) {
+            return;
+        }
+        dirty = false;
+        List<Map.Entry<String, Long>> entries;
+        synchronized (fingerprints) {
+            entries = new ArrayList<>(fingerprints.size());
+            for (Map.Entry<String, Long> entry : fingerprints.entrySet()) {
+                entries.add(new AbstractMap.SimpleEntry<>(entry));
+            }
+        }
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Can't create directory " + parent);
+            }
+            File tmp = new File(parent, file.getName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Long> entry : entries) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if user has the same fingerprint as in the last synchronization, suppressed count is increased
+     */
+    public boolean isUnchanged(String userName, long fingerprint) {
+        Long last;
+        synchronized (fingerprints) {
+            last = fingerprints.get(userName);
+        }
+        if (last != null && last == fingerprint) {
+            suppressed.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public void put(String userName, long fingerprint) {
+        synchronized (fingerprints) {
+            fingerprints.put(userName, fingerprint);
+        }
+        dirty = true;
+    }
+
+    public void remove(String userName) {
+        synchronized (fingerprints) {
+            fingerprints.remove(userName);
+        }
+        dirty = true;
+    }
+
+    public int size() {
+        synchronized (fingerprints) {
+            return fingerprints.size();
+        }
+    }
+
+    /**
+     * @return number of suppressed not changed users since start
+     */
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+}
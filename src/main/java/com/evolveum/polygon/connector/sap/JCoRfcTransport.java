@@ -0,0 +1,58 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoContext;
+import com.sap.conn.jco.JCoDestination;
+import com.sap.conn.jco.JCoException;
+import com.sap.conn.jco.JCoFunction;
+
+/**
+ * RFC calls over JCo destination.
+ */
+public class JCoRfcTransport implements RfcTransport {
+
+    private final JCoDestination destination;
+
+    public JCoRfcTransport(JCoDestination destination) {
+        this.destination = destination;
+    }
+
+    @Override
+    public String getDestinationName() {
+        return destination.getDestinationName();
+    }
+
+    @Override
+    public JCoFunction getFunction(String name) throws JCoException {
+        return destination.getRepository().getFunction(name);
+    }
+
+    @Override
+    public void execute(JCoFunction function) throws JCoException {
+        function.execute(destination);
+    }
+
+    @Override
+    public void ping() throws JCoException {
+        destination.ping();
+    }
+
+    @Override
+    public boolean isValid() {
+        return destination.isValid();
+    }
+
+    @Override
+    public void begin() {
+        JCoContext.begin(destination);
+    }
+
+    @Override
+    public void end() throws JCoException {
+        JCoContext.end(destination);
+    }
+
+    @Override
+    public boolean isStateful() {
+        return JCoContext.isStateful(destination);
+    }
+}
@@ -0,0 +1,94 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoRecord;
+import org.identityconnectors.common.logging.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for logging from hot paths.
+ * <br/>
+ * {@link Log} formats the message only when the level is enabled, but arguments are evaluated before the call.
+ * Expensive arguments (XML of JCo structures, ...) are wrapped with {@link #lazy(Supplier)} or {@link #xml(JCoRecord)},
+ * so they are serialized only when the message is really written. Logging of each read object is replaced
+ * by {@link Sampler}.
+ */
+public final class LazyLog {
+
+    private LazyLog() {
+    }
+
+    /**
+     * @return argument for {@link Log} methods, which calls supplier only when the message is formatted
+     */
+    public static Object lazy(Supplier<?> supplier) {
+        return new Object() {
+            @Override
+            public String toString() {
+                return String.valueOf(supplier.get());
+            }
+        };
+    }
+
+    /**
+     * @return argument for {@link Log} methods with XML of the record, serialized only when the message is formatted
+     */
+    public static Object xml(JCoRecord record) {
+        return lazy(() -> record == null ? null : record.toXML());
+    }
+
+    /**
+     * Selects which of many similar messages (one per read object) are logged: first ones and then every n-th.
+     */
+    public static class Sampler {
+
+        private final Log log;
+
+        private final long first;
+
+        private final long every;
+
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * @param first count of messages logged always
+         * @param every after the first ones, only each every-th message is logged
+         */
+        public Sampler(Log log, long first, long every) {
+            this.log = log;
+            this.first = first;
+            this.every = Math.max(1, every);
+        }
+
+        /**
+         * Log sampled message on OK level, arguments are not touched when the message is not logged.
+         */
+        public void ok(String format, Object... args) {
+            if (!log.isOk()) {
+                return;
+            }
+            long actual = sample();
+            if (actual > 0) {
+                log.ok(format + " (#{" + args.length + "})", append(args, actual));
+            }
+        }
+
+        /**
+         * Count the message.
+         *
+         * @return number of the message if it should be logged, 0 if it should be skipped
+         */
+        long sample() {
+            long actual = count.incrementAndGet();
+            return actual <= first || actual % every == 0 ? actual : 0;
+        }
+
+        private static Object[] append(Object[] args, long actual) {
+            Object[] result = new Object[args.length + 1];
+            System.arraycopy(args, 0, result, 0, args.length);
+            result[args.length] = actual;
+            return result;
+        }
+    }
+}
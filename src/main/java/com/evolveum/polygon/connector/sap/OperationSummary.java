@@ -0,0 +1,298 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where the time of one ConnId operation went: RFC calls by function with received rows, conversion of RFC results
+ * to connector objects, handler (caller) and count of delivered and filtered objects.
+ * <br/>
+ * Updated from worker threads of parallel reads, so all counters are thread safe. RFC time is sum of all calls,
+ * with parallel reads it can be longer than the operation.
+ */
+public class OperationSummary {
+
+    private final String operation;
+
+    private final String objectClass;
+
+    private final String destination;
+
+    private final long start = System.nanoTime();
+
+    private long durationNanos = -1;
+
+    private String outcome = ConnectorOperationEvent.OK;
+
+    private final Map<String, FunctionCalls> functions = new ConcurrentHashMap<>();
+
+    private final LongAdder conversionNanos = new LongAdder();
+
+    private final LongAdder handlerNanos = new LongAdder();
+
+    private final LongAdder xmlLength = new LongAdder();
+
+    private final LongAdder delivered = new LongAdder();
+
+    private final LongAdder filtered = new LongAdder();
+
+    private final ConnectorOperationEvent event;
+
+    /**
+     * Start the operation, also as JFR {@link ConnectorOperationEvent}.
+     */
+    public OperationSummary(String operation, ObjectClass objectClass, String destination) {
+        this.operation = operation;
+        this.objectClass = objectClass == null ? null : objectClass.getObjectClassValue();
+        this.destination = destination;
+        this.event = ConnectorOperationEvent.start(operation, objectClass, destination);
+    }
+
+    /**
+     * RFC calls of one function.
+     */
+    public static class FunctionCalls {
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder rows = new LongAdder();
+
+        private final LongAdder nanos = new LongAdder();
+
+        private final LongAdder retries = new LongAdder();
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+        }
+
+        /**
+         * @return count of failed calls executed again, each attempt is also counted in calls
+         */
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        @Override
+        public String toString() {
+            long retried = getRetries();
+            return getCalls() + " calls, " + getRows() + " rows, " + getMillis() + " ms" + (retried > 0 ? ", " + retried + " retries" : "");
+        }
+    }
+
+    public void rfc(String function, long nanos, int rows) {
+        FunctionCalls calls = functions.computeIfAbsent(function, name -> new FunctionCalls());
+        calls.calls.increment();
+        calls.rows.add(rows);
+        calls.nanos.add(nanos);
+    }
+
+    /**
+     * Failed call of the function will be executed again.
+     */
+    public void retry(String function) {
+        functions.computeIfAbsent(function, name -> new FunctionCalls()).retries.increment();
+    }
+
+    public void conversion(long nanos) {
+        conversionNanos.add(nanos);
+    }
+
+    /**
+     * @param length length of produced XML (table parameters of user)
+     */
+    public void xml(long length) {
+        xmlLength.add(length);
+    }
+
+    /**
+     * Object was created, updated or deleted.
+     */
+    public void delivered() {
+        delivered.increment();
+    }
+
+    /**
+     * Object was read from SAP, but not handed over (not matched filter, not changed, ...).
+     */
+    public void filtered() {
+        filtered.increment();
+    }
+
+    /**
+     * @return handler measuring time and counting delivered objects, paged search result is passed to original handler
+     */
+    public ResultsHandler wrapSearch(ResultsHandler handler) {
+        return new SearchResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject connectorObject) {
+                long handlerStart = System.nanoTime();
+                try {
+                    return handler.handle(connectorObject);
+                } finally {
+                    handlerNanos.add(System.nanoTime() - handlerStart);
+                    delivered.increment();
+                }
+            }
+
+            @Override
+            public void handleResult(SearchResult result) {
+                if (handler instanceof SearchResultsHandler) {
+                    ((SearchResultsHandler) handler).handleResult(result);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return handler measuring time and counting delivered deltas, final token is passed to original handler
+     */
+    public SyncResultsHandler wrapSync(SyncResultsHandler handler) {
+        return new SyncTokenResultsHandler() {
+            @Override
+            public boolean handle(SyncDelta delta) {
+                long handlerStart = System.nanoTime();
+                try {
+                    return handler.handle(delta);
+                } finally {
+                    handlerNanos.add(System.nanoTime() - handlerStart);
+                    delivered.increment();
+                }
+            }
+
+            @Override
+            public void handleResult(SyncToken token) {
+                if (handler instanceof SyncTokenResultsHandler) {
+                    ((SyncTokenResultsHandler) handler).handleResult(token);
+                }
+            }
+        };
+    }
+
+    void failed(Throwable e) {
+        outcome = e.getClass().getSimpleName();
+        event.failed(e);
+    }
+
+    void finish() {
+        durationNanos = System.nanoTime() - start;
+        event.finish(getDelivered());
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getObjectClass() {
+        return objectClass;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return duration of whole operation, or time from its start when it is still running
+     */
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos < 0 ? System.nanoTime() - start : durationNanos);
+    }
+
+    /**
+     * @return RFC calls by function name, sorted
+     */
+    public Map<String, FunctionCalls> getFunctions() {
+        return new TreeMap<>(functions);
+    }
+
+    public long getRfcCalls() {
+        long calls = 0;
+        for (FunctionCalls function : functions.values()) {
+            calls += function.getCalls();
+        }
+        return calls;
+    }
+
+    public long getRows() {
+        long rows = 0;
+        for (FunctionCalls function : functions.values()) {
+            rows += function.getRows();
+        }
+        return rows;
+    }
+
+    public long getRetries() {
+        long retries = 0;
+        for (FunctionCalls function : functions.values()) {
+            retries += function.getRetries();
+        }
+        return retries;
+    }
+
+    public long getRfcMillis() {
+        long nanos = 0;
+        for (FunctionCalls function : functions.values()) {
+            nanos += function.nanos.sum();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public long getConversionMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(conversionNanos.sum());
+    }
+
+    public long getHandlerMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(handlerNanos.sum());
+    }
+
+    public long getXmlLength() {
+        return xmlLength.sum();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getFiltered() {
+        return filtered.sum();
+    }
+
+    @Override
+    public String toString() {
+        return operation + " " + objectClass + " on " + destination + ": " + outcome +
+                " in " + getDurationMillis() + " ms" +
+                ", delivered: " + getDelivered() +
+                ", filtered: " + getFiltered() +
+                ", RFC: " + getRfcMillis() + " ms" +
+                ", retries: " + getRetries() +
+                ", conversion: " + getConversionMillis() + " ms" +
+                ", handler: " + getHandlerMillis() + " ms" +
+                ", rows: " + getRows() +
+                ", XML: " + getXmlLength() +
+                ", functions: " + getFunctions();
+    }
+}
@@ -0,0 +1,115 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent RFC reads in more threads (over JCo destination pool), but hands over their results
+ * in the same order as were the input items.
+ * <br/>
+ * Only a window of 2 * threads items is read ahead, so memory usage is bounded. When consumer stops
+ * or any read fails, reads not handed over yet are cancelled and nothing after them is consumed,
+ * so the last consumed result is always a continuous prefix of the input.
+ */
+public class OrderedFetcher implements AutoCloseable {
+
+    private static final Log LOG = Log.getLog(OrderedFetcher.class);
+
+    public interface Fetch<T, R> {
+        R fetch(T item) throws Exception;
+    }
+
+    public interface Consumer<R> {
+        /**
+         * @return false to stop processing
+         */
+        boolean accept(R result) throws Exception;
+    }
+
+    private final int threads;
+
+    private final ExecutorService executor;
+
+    public OrderedFetcher(int threads, String name) {
+        this.threads = Math.max(1, threads);
+        if (this.threads > 1) {
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+                Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * @return true if all items were consumed, false if consumer stopped
+     */
+    public <T, R> boolean run(Iterable<T> items, Fetch<T, R> fetch, Consumer<R> consumer) throws Exception {
+        if (executor == null) {
+            for (T item : items) {
+                if (!consumer.accept(fetch.fetch(item))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Deque<Future<R>> window = new ArrayDeque<>();
+        Iterator<T> iterator = items.iterator();
+        try {
+            while (true) {
+                while (window.size() < 2 * threads && iterator.hasNext()) {
+                    T item = iterator.next();
+                    window.add(executor.submit(() -> fetch.fetch(item)));
+                }
+                Future<R> next = window.poll();
+                if (next == null) {
+                    return true;
+                }
+                if (!consumer.accept(get(next))) {
+                    return false;
+                }
+            }
+        } finally {
+            if (!window.isEmpty()) {
+                LOG.ok("Cancelling {0} not consumed reads", window.size());
+                for (Future<R> future : window) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private static <R> R get(Future<R> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.evolveum.polygon.connector.sap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket limiting rate of RFC calls, implemented as GCRA (generic cell rate algorithm):
+ * only the theoretical arrival time of the next call is stored and updated with compare-and-set, so no lock is needed.
+ * Bucket size (burst) is one second of calls.
+ */
+public class RateLimiter {
+
+    private final double rate;
+
+    // nanoseconds between two calls
+    private final long interval;
+
+    // how much can calls come earlier than their theoretical arrival time (burst - 1 intervals)
+    private final long tolerance;
+
+    private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+    private final LongAdder waitNanos = new LongAdder();
+
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * @param rate permitted calls per second
+     */
+    public RateLimiter(double rate) {
+        this.rate = rate;
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        long burst = Math.max(1, (long) rate);
+        this.tolerance = interval * (burst - 1);
+    }
+
+    /**
+     * Wait until the call is permitted.
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve(System.nanoTime());
+        if (wait > 0) {
+            throttled.increment();
+            waitNanos.add(wait);
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Reserve the next call.
+     *
+     * @return nanoseconds to wait before the call
+     */
+    long reserve(long now) {
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            long start = arrival == Long.MIN_VALUE || arrival - now < 0 ? now : arrival;
+            if (theoreticalArrival.compareAndSet(arrival, start + interval)) {
+                return start - tolerance - now;
+            }
+        }
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+}
@@ -0,0 +1,331 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoException;
+import com.sap.conn.jco.JCoField;
+import com.sap.conn.jco.JCoFunction;
+import com.sap.conn.jco.JCoMetaData;
+import com.sap.conn.jco.JCoParameterList;
+import com.sap.conn.jco.JCoRecord;
+import com.sap.conn.jco.JCoTable;
+import org.identityconnectors.common.logging.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records all RFC calls of the connector (request and response values or exception, start and duration) and metadata
+ * of all used functions to a gzipped text file, so production traffic can be replayed offline without SAP.
+ * Values of password fields are masked. Recording never fails the call, after a write error it is stopped.
+ * <br/>
+ * One record per line, columns separated by tab, tab, new line and backslash in values escaped by backslash:
+ * <pre>
+ * SAPRFC  version  destination  start (epoch millis)
+ * F  function  import list  export list  table list   (metadata, see {@link #describe(JCoMetaData)})
+ * C  function  start offset (micros)  duration (micros)  thread
+ * &gt;  path=value ...                                     (import and table parameters before the call)
+ * &lt;  path=value ...                                     (export and table parameters after the call)
+ * !  group  key  message number  message                (instead of &lt; when the call failed)
+ * </pre>
+ * Paths are I.FIELD, E.STRUCTURE.FIELD, T.TABLE# (count of rows), T.TABLE.row.FIELD, only not initial values are written.
+ */
+public class RecordingRfcTransport implements RfcTransport {
+
+    private static final Log LOG = Log.getLog(RecordingRfcTransport.class);
+
+    static final String HEADER = "SAPRFC";
+
+    static final int VERSION = 1;
+
+    static final String MASK = "********";
+
+    /**
+     * fields with passwords in functions called by the connector
+     */
+    static final Set<String> MASKED_FIELDS = Set.of("BAPIPWD", "PASSWORD", "NEW_PASSWORD", "OLD_PASSWORD");
+
+    private static final AtomicInteger FILES = new AtomicInteger();
+
+    private final RfcTransport transport;
+
+    private final File file;
+
+    private final long startNanos = System.nanoTime();
+
+    private final Set<String> described = ConcurrentHashMap.newKeySet();
+
+    /**
+     * null after close or write error, guarded by this
+     */
+    private Writer writer;
+
+    private volatile boolean recording = true;
+
+    /**
+     * Start recording of calls over given transport to new file in given directory.
+     */
+    public RecordingRfcTransport(RfcTransport transport, File directory) throws IOException {
+        this.transport = transport;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory " + directory.getAbsolutePath());
+        }
+        String destination = transport.getDestinationName() == null ? "" : transport.getDestinationName().replaceAll("[^A-Za-z0-9_.-]", "_");
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        this.file = new File(directory, "rfc-" + destination + "-" + time + "-" + FILES.incrementAndGet() + ".rfc.gz");
+        // sync flush after each call, so the file is readable also if the connector is not disposed
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(file), 65536, true), StandardCharsets.UTF_8));
+        write(HEADER + "\t" + VERSION + "\t" + escape(transport.getDestinationName()) + "\t" + System.currentTimeMillis() + "\n");
+        LOG.info("Recording RFC calls to {0}", file.getAbsolutePath());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String getDestinationName() {
+        return transport.getDestinationName();
+    }
+
+    @Override
+    public JCoFunction getFunction(String name) throws JCoException {
+        JCoFunction function = transport.getFunction(name);
+        if (function != null && recording && described.add(name)) {
+            write("F\t" + name + "\t" + describe(function.getImportParameterList()) + "\t"
+                    + describe(function.getExportParameterList()) + "\t" + describe(function.getTableParameterList()) + "\n");
+        }
+        return function;
+    }
+
+    @Override
+    public void execute(JCoFunction function) throws JCoException {
+        if (!recording) {
+            transport.execute(function);
+            return;
+        }
+        String request = request(function);
+        long start = System.nanoTime();
+        try {
+            transport.execute(function);
+        } catch (JCoException e) {
+            long duration = System.nanoTime() - start;
+            record(function, start, duration, request, "!\t" + e.getGroup() + "\t" + escape(e.getKey()) + "\t"
+                    + escape(e.getMessageNumber()) + "\t" + escape(e.getMessage()));
+            throw e;
+        }
+        long duration = System.nanoTime() - start;
+        record(function, start, duration, request, "<" + response(function));
+    }
+
+    private void record(JCoFunction function, long start, long duration, String request, String response) {
+        write("C\t" + function.getName() + "\t" + TimeUnit.NANOSECONDS.toMicros(start - startNanos) + "\t"
+                + TimeUnit.NANOSECONDS.toMicros(duration) + "\t" + escape(Thread.currentThread().getName()) + "\n"
+                + ">" + request + "\n" + response + "\n");
+    }
+
+    private synchronized void write(String lines) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(lines);
+            writer.flush();
+        } catch (IOException e) {
+            LOG.warn(e, "Recording of RFC calls to {0} stopped", file.getAbsolutePath());
+            recording = false;
+            closeQuietly();
+        }
+    }
+
+    @Override
+    public void ping() throws JCoException {
+        transport.ping();
+    }
+
+    @Override
+    public boolean isValid() {
+        return transport.isValid();
+    }
+
+    @Override
+    public void begin() {
+        transport.begin();
+    }
+
+    @Override
+    public void end() throws JCoException {
+        transport.end();
+    }
+
+    @Override
+    public boolean isStateful() {
+        return transport.isStateful();
+    }
+
+    @Override
+    public synchronized void close() {
+        recording = false;
+        closeQuietly();
+        transport.close();
+    }
+
+    private void closeQuietly() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.warn(e, "Unable to close {0}", file.getAbsolutePath());
+            }
+            writer = null;
+        }
+    }
+
+    // --- format
+
+    /**
+     * @return request of the call, import and table parameters, with masked passwords
+     */
+    static String request(JCoFunction function) {
+        StringBuilder line = new StringBuilder();
+        values(line, "I.", function.getImportParameterList());
+        values(line, "T.", function.getTableParameterList());
+        return line.toString();
+    }
+
+    /**
+     * @return response of the call, export and table parameters, with masked passwords
+     */
+    static String response(JCoFunction function) {
+        StringBuilder line = new StringBuilder();
+        values(line, "E.", function.getExportParameterList());
+        values(line, "T.", function.getTableParameterList());
+        return line.toString();
+    }
+
+    private static void values(StringBuilder line, String prefix, JCoRecord record) {
+        if (record == null) {
+            return;
+        }
+        for (JCoField field : record) {
+            String path = prefix + field.getName();
+            if (field.isTable()) {
+                JCoTable table = field.getTable();
+                int rows = table.getNumRows();
+                if (rows > 0) {
+                    line.append('\t').append(path).append("#=").append(rows);
+                    // don't move the row cursor used by the connector
+                    int current = table.getRow();
+                    for (int row = 0; row < rows; row++) {
+                        table.setRow(row);
+                        values(line, path + "." + row + ".", table);
+                    }
+                    table.setRow(current);
+                }
+            } else if (field.isStructure()) {
+                values(line, path + ".", field.getStructure());
+            } else {
+                String value = field.getString();
+                if (value != null && !isInitial(field.getType(), value)) {
+                    line.append('\t').append(path).append('=')
+                            .append(MASKED_FIELDS.contains(field.getName()) ? MASK : escape(value));
+                }
+            }
+        }
+    }
+
+    private static boolean isInitial(int type, String value) {
+        switch (type) {
+            case JCoMetaData.TYPE_DATE:
+                return value.isEmpty() || "0000-00-00".equals(value) || "00000000".equals(value);
+            case JCoMetaData.TYPE_TIME:
+                return value.isEmpty() || "00:00:00".equals(value) || "000000".equals(value);
+            case JCoMetaData.TYPE_NUM:
+            case JCoMetaData.TYPE_INT:
+            case JCoMetaData.TYPE_BCD:
+                return value.matches("0*(\\.0*)?");
+            default:
+                return value.isEmpty();
+        }
+    }
+
+    /**
+     * @return fields of parameter list as NAME:type:length, structures and tables as NAME:type:RECORD(fields),
+     * separated by comma, - if the function has no such list
+     */
+    static String describe(JCoMetaData meta) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < meta.getFieldCount(); i++) {
+            if (i > 0) {
+                description.append(',');
+            }
+            description.append(meta.getName(i)).append(':').append(meta.getType(i)).append(':');
+            if (meta.isStructure(i) || meta.isTable(i)) {
+                JCoMetaData record = meta.getRecordMetaData(i);
+                description.append(record.getName()).append('(').append(describe(record)).append(')');
+            } else {
+                description.append(meta.getLength(i));
+            }
+        }
+        return description.toString();
+    }
+
+    private static String describe(JCoParameterList list) {
+        return list == null ? "-" : describe(list.getMetaData());
+    }
+
+    static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+}
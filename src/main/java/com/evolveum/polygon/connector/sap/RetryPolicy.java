@@ -0,0 +1,144 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoException;
+import org.identityconnectors.common.logging.Log;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retry of RFC calls failed because of transient errors, so one lost connection doesn't abort whole reconciliation
+ * or LiveSync. A call is retried only when all is true:
+ * <ul>
+ *     <li>the error is transient by JCoException group: communication, timeout, resource (no free work process or
+ *     connection) or system failure (connection closed by SAP), not logon failure, ABAP exception, ...</li>
+ *     <li>the function is idempotent, it only reads: {@link RfcFunctionClass#READ} and {@link RfcFunctionClass#TABLE}.
+ *     Writes and password functions are never retried, after lost response the connector can't prove that SAP didn't
+ *     execute them (and login check counts failed logons).</li>
+ *     <li>the call is not in a stateful session, which is lost with the connection</li>
+ *     <li>the call has attempts left and the operation has retries left in its budget</li>
+ * </ul>
+ * Delay before the next attempt doubles with each attempt up to maximum, with random jitter (50-100 % of the delay),
+ * so calls failed at once don't come back at once.
+ */
+public class RetryPolicy {
+
+    private static final Log LOG = Log.getLog(RetryPolicy.class);
+
+    private final int maxAttempts;
+
+    private final long backoffMillis;
+
+    private final long maxBackoffMillis;
+
+    private final int budget;
+
+    /**
+     * Retries left in one ConnId operation.
+     */
+    public static class Budget {
+
+        // < 0 = not limited
+        private final AtomicInteger remaining;
+
+        private Budget(int retries) {
+            this.remaining = new AtomicInteger(retries);
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int actual = remaining.get();
+                if (actual < 0) {
+                    return true;
+                }
+                if (actual == 0) {
+                    return false;
+                }
+                if (remaining.compareAndSet(actual, actual - 1)) {
+                    if (actual == 1) {
+                        LOG.warn("Retry budget of the operation is exhausted, next failed RFC calls are not retried");
+                    }
+                    return true;
+                }
+            }
+        }
+
+        public int getRemaining() {
+            return remaining.get();
+        }
+    }
+
+    /**
+     * @param maxAttempts      maximum attempts of one call, 1 = not retried
+     * @param backoffMillis    delay before the second attempt
+     * @param maxBackoffMillis maximum delay between attempts
+     * @param budget           maximum retries in one operation, 0 = not limited
+     */
+    public RetryPolicy(int maxAttempts, long backoffMillis, long maxBackoffMillis, int budget) {
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = Math.max(backoffMillis, maxBackoffMillis);
+        this.budget = budget;
+    }
+
+    /**
+     * @return new budget of one ConnId operation
+     */
+    public Budget newBudget() {
+        return new Budget(budget <= 0 ? -1 : budget);
+    }
+
+    /**
+     * @param attempt  number of failed attempt, from 1
+     * @param stateful true if the call is in stateful session
+     * @param budget   budget of the operation, null if the call is not in an operation
+     * @return true if the call can be executed again, retry is taken from the budget
+     */
+    public boolean shouldRetry(String functionName, JCoException e, int attempt, boolean stateful, Budget budget) {
+        return attempt < maxAttempts && isTransient(e) && isIdempotent(functionName) && !stateful
+                && (budget == null || budget.tryAcquire());
+    }
+
+    /**
+     * @param attempt number of failed attempt, from 1
+     * @return delay before the next attempt, in milliseconds
+     */
+    public long backoffMillis(int attempt) {
+        long delay = backoffMillis << Math.min(attempt - 1, 30);
+        if (delay <= 0 || delay > maxBackoffMillis) {
+            delay = maxBackoffMillis;
+        }
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    static boolean isTransient(JCoException e) {
+        switch (e.getGroup()) {
+            case JCoException.JCO_ERROR_COMMUNICATION:
+            case JCoException.JCO_ERROR_TIMEOUT:
+            case JCoException.JCO_ERROR_RESOURCE:
+            case JCoException.JCO_ERROR_SYSTEM_FAILURE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static boolean isIdempotent(String functionName) {
+        RfcFunctionClass functionClass = RfcFunctionClass.of(functionName);
+        return functionClass == RfcFunctionClass.READ || functionClass == RfcFunctionClass.TABLE;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "maxAttempts=" + maxAttempts +
+                ", backoff=" + backoffMillis +
+                ", maxBackoff=" + maxBackoffMillis +
+                ", budget=" + budget +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package com.evolveum.polygon.connector.sap;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event of one RFC call, recorded in {@link RfcExecutor}.
+ * <br/>
+ * Duration of the event is the call itself, time spent waiting in rate and concurrency limiters is in waitMillis.
+ * Rows are counted only when the event is recorded.
+ */
+@Name("com.evolveum.polygon.connector.sap.RfcCall")
+@Label("SAP RFC Call")
+@Category({"Evolveum", "SAP Connector"})
+@Description("RFC function executed in SAP")
+@StackTrace(false)
+public class RfcCallEvent extends Event {
+
+    @Label("Function")
+    String function;
+
+    @Label("Destination")
+    String destination;
+
+    @Label("Priority")
+    String priority;
+
+    @Label("Rows")
+    @Description("Rows in all table parameters after the call")
+    int rows;
+
+    @Label("Wait Time (ms)")
+    @Description("Time spent waiting in rate and concurrency limiters before the call")
+    long waitMillis;
+
+    @Label("Outcome")
+    @Description("OK, or JCoException group of the failure")
+    String outcome;
+}
@@ -0,0 +1,328 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoException;
+import com.sap.conn.jco.JCoFunction;
+import com.sap.conn.jco.JCoMetaData;
+import com.sap.conn.jco.JCoParameterList;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes all RFC calls to one SAP destination, shared by all connector instances using it.
+ * Rate of calls of each {@link RfcFunctionClass} is limited by {@link RateLimiter} when set in rfcRateLimits,
+ * then concurrent calls are limited by {@link AdaptiveLimiter}, when rfcMaxConcurrency is set, with part of the limit
+ * reserved for interactive calls. Calls, errors by JCoException group and latency histogram are recorded
+ * for each function, and each call is recorded as JFR {@link RfcCallEvent}.
+ * Metrics are registered in platform MBean server as com.evolveum.polygon.connector.sap:type=Destination,name=...
+ */
+public class RfcExecutor implements DestinationMetricsMXBean {
+
+    private static final Log LOG = Log.getLog(RfcExecutor.class);
+
+    private static final Map<String, RfcExecutor> EXECUTORS = new ConcurrentHashMap<>();
+
+    // pseudo function with time of converting RFC results to connector objects
+    public static final String CONVERSION = "#CONVERSION";
+
+    private final String destinationName;
+
+    private volatile AdaptiveLimiter limiter;
+
+    private final Map<String, RfcFunctionMetrics> functionMetrics = new ConcurrentHashMap<>();
+
+    private volatile Map<RfcFunctionClass, RateLimiter> rateLimiters = Collections.emptyMap();
+
+    // configured rates of rateLimiters
+    private volatile Map<RfcFunctionClass, Double> rates = Collections.emptyMap();
+
+    // configured values of limiter, -1 = not configured yet
+    private volatile int maxConcurrency = -1;
+
+    private volatile int interactiveReservedPercent = -1;
+
+    // RFC calls of partitioned reconciliations, shared by all connectors of the destination
+    private volatile Semaphore reconciliationPermits;
+
+    private volatile int reconciliationThreads = -1;
+
+    // running calls when limiter is not used
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private RfcExecutor(String destinationName) {
+        this.destinationName = destinationName;
+    }
+
+    /**
+     * Called when a connector is initialized, RFC calls use the returned executor without reconfiguration.
+     *
+     * @param maxConcurrency maximum of concurrent calls, 0 = not limited
+     * @return executor of destination, configured to given maximum
+     */
+    public static RfcExecutor get(String destinationName, Integer maxConcurrency, Integer interactiveReservedPercent,
+                                  Map<RfcFunctionClass, Double> rates) {
+        RfcExecutor executor = EXECUTORS.computeIfAbsent(destinationName, name -> {
+            RfcExecutor created = new RfcExecutor(name);
+            created.register();
+            return created;
+        });
+        executor.configure(maxConcurrency == null ? 0 : maxConcurrency,
+                interactiveReservedPercent == null ? 0 : interactiveReservedPercent);
+        executor.configureRates(rates);
+        return executor;
+    }
+
+    private void configureRates(Map<RfcFunctionClass, Double> rates) {
+        // connectors of the destination usually have the same configuration, lock only when it's changed
+        if (rates.equals(this.rates)) {
+            return;
+        }
+        synchronized (this) {
+            if (!rates.equals(this.rates)) {
+                applyRates(rates);
+            }
+        }
+    }
+
+    private void applyRates(Map<RfcFunctionClass, Double> rates) {
+        Map<RfcFunctionClass, RateLimiter> created = new EnumMap<>(RfcFunctionClass.class);
+        for (Map.Entry<RfcFunctionClass, Double> rate : rates.entrySet()) {
+            created.put(rate.getKey(), new RateLimiter(rate.getValue()));
+        }
+        LOG.info("RFC rate limits of destination {0}: {1}", destinationName, rates);
+        this.rateLimiters = created;
+        Map<RfcFunctionClass, Double> configured = new EnumMap<>(RfcFunctionClass.class);
+        configured.putAll(rates);
+        this.rates = configured;
+    }
+
+    private void configure(int maxConcurrency, int interactiveReservedPercent) {
+        if (maxConcurrency == this.maxConcurrency && interactiveReservedPercent == this.interactiveReservedPercent) {
+            return;
+        }
+        synchronized (this) {
+            if (maxConcurrency != this.maxConcurrency || interactiveReservedPercent != this.interactiveReservedPercent) {
+                applyLimits(maxConcurrency, interactiveReservedPercent);
+                this.maxConcurrency = maxConcurrency;
+                this.interactiveReservedPercent = interactiveReservedPercent;
+            }
+        }
+    }
+
+    private void applyLimits(int maxConcurrency, int interactiveReservedPercent) {
+        AdaptiveLimiter actual = limiter;
+        if (maxConcurrency <= 0) {
+            limiter = null;
+        } else if (actual == null) {
+            limiter = new AdaptiveLimiter(maxConcurrency, interactiveReservedPercent);
+        } else {
+            if (actual.getMaxLimit() != maxConcurrency) {
+                actual.setMaxLimit(maxConcurrency);
+            }
+            if (actual.getReservedPercent() != interactiveReservedPercent) {
+                actual.setReservedPercent(interactiveReservedPercent);
+            }
+        }
+    }
+
+    /**
+     * @param threads maximum of RFC calls of all partitioned reconciliations of the destination
+     * @return permits shared by partitioned reconciliations, recreated when the maximum is changed
+     */
+    public Semaphore getReconciliationPermits(int threads) {
+        if (threads != reconciliationThreads) {
+            synchronized (this) {
+                if (threads != reconciliationThreads) {
+                    LOG.info("RFC calls of partitioned reconciliations of destination {0}: {1}", destinationName, threads);
+                    reconciliationPermits = new Semaphore(threads);
+                    reconciliationThreads = threads;
+                }
+            }
+        }
+        return reconciliationPermits;
+    }
+
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.evolveum.polygon.connector.sap:type=Destination,name=" + ObjectName.quote(destinationName));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException | SecurityException e) {
+            LOG.warn(e, "Can't register metrics of destination {0} in JMX", destinationName);
+        }
+    }
+
+    public void execute(JCoFunction function, RfcTransport transport, RfcPriority priority) throws JCoException {
+        long requested = System.nanoTime();
+        RateLimiter rateLimiter = rateLimiters.get(RfcFunctionClass.of(function.getName()));
+        if (rateLimiter != null) {
+            try {
+                rateLimiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectorIOException("Interrupted while waiting to call " + function.getName(), e);
+            }
+        }
+
+        AdaptiveLimiter actual = limiter;
+        if (actual != null) {
+            try {
+                actual.acquire(priority);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectorIOException("Interrupted while waiting to call " + function.getName(), e);
+            }
+        } else {
+            inFlight.incrementAndGet();
+        }
+        long start = System.nanoTime();
+        long latency = -1;
+        boolean overload = false;
+        String error = null;
+        RfcCallEvent event = new RfcCallEvent();
+        event.begin();
+        try {
+            transport.execute(function);
+            latency = System.nanoTime() - start;
+        } catch (JCoException e) {
+            error = RfcFunctionMetrics.errorGroup(e);
+            overload = isOverload(e);
+            if (overload && actual != null) {
+                LOG.warn("SAP overloaded in {0}: {1}, concurrency limit decreased", function.getName(), e.getMessage());
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            error = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            getMetrics(function.getName()).record(System.nanoTime() - start, error);
+            commit(event, function, priority, start - requested, error);
+            if (actual != null) {
+                actual.release(priority, function.getName(), latency, overload);
+            } else {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private void commit(RfcCallEvent event, JCoFunction function, RfcPriority priority, long waitNanos, String error) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.function = function.getName();
+            event.destination = destinationName;
+            event.priority = priority.name();
+            event.waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+            event.outcome = error == null ? ConnectorOperationEvent.OK : error;
+            event.rows = error == null ? countRows(function) : 0;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return count of rows in all table parameters of the function
+     */
+    static int countRows(JCoFunction function) {
+        JCoParameterList tables = function.getTableParameterList();
+        if (tables == null) {
+            return 0;
+        }
+        int rows = 0;
+        JCoMetaData metaData = tables.getMetaData();
+        for (int i = 0; i < metaData.getFieldCount(); i++) {
+            if (metaData.isTable(i)) {
+                rows += tables.getTable(i).getNumRows();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param name function name or name of connector step (for example {@link #CONVERSION})
+     */
+    public RfcFunctionMetrics getMetrics(String name) {
+        return functionMetrics.computeIfAbsent(name, RfcFunctionMetrics::new);
+    }
+
+    /**
+     * @return true if SAP failed because of missing resources (work processes, memory, ...)
+     */
+    static boolean isOverload(JCoException e) {
+        return e.getGroup() == JCoException.JCO_ERROR_RESOURCE || e.getGroup() == JCoException.JCO_ERROR_SYSTEM_FAILURE;
+    }
+
+    @Override
+    public String getDestinationName() {
+        return destinationName;
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        AdaptiveLimiter actual = limiter;
+        return actual == null ? 0 : actual.getLimit();
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        AdaptiveLimiter actual = limiter;
+        return actual == null ? 0 : actual.getMaxLimit();
+    }
+
+    @Override
+    public int getBulkInFlight() {
+        AdaptiveLimiter actual = limiter;
+        return actual == null ? 0 : actual.getBulkInFlight();
+    }
+
+    @Override
+    public int getInteractiveWaiting() {
+        AdaptiveLimiter actual = limiter;
+        return actual == null ? 0 : actual.getInteractiveWaiting();
+    }
+
+    @Override
+    public Map<String, Long> getThrottleWaitMillis() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<RfcFunctionClass, RateLimiter> entry : rateLimiters.entrySet()) {
+            result.put(entry.getKey().name(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().getWaitNanos()));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getThrottledCalls() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<RfcFunctionClass, RateLimiter> entry : rateLimiters.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue().getThrottled());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, RfcFunctionStats> getFunctionStats() {
+        Map<String, RfcFunctionStats> result = new TreeMap<>();
+        for (RfcFunctionMetrics metrics : functionMetrics.values()) {
+            result.put(metrics.getName(), metrics.toStats());
+        }
+        return result;
+    }
+
+    @Override
+    public int getInFlight() {
+        AdaptiveLimiter actual = limiter;
+        return actual == null ? inFlight.get() : actual.getInFlight();
+    }
+}
@@ -0,0 +1,27 @@
+package com.evolveum.polygon.connector.sap;
+
+/**
+ * Class of called RFC function, each class can have its own rate limit.
+ */
+public enum RfcFunctionClass {
+
+    READ,
+    WRITE,
+    PASSWORD,
+    TABLE;
+
+    public static RfcFunctionClass of(String functionName) {
+        if (functionName.contains("PASSWORD") || "SUSR_LOGIN_CHECK_RFC".equals(functionName)) {
+            return PASSWORD;
+        }
+        if (functionName.startsWith("RFC_") && functionName.contains("TABLE")) {
+            return TABLE;
+        }
+        if (functionName.startsWith("BAPI_USER_") && !functionName.startsWith("BAPI_USER_GET")
+                || functionName.startsWith("BAPI_TRANSACTION_")) {
+            // create, change, delete, lock, unlock, assign, commit, rollback
+            return WRITE;
+        }
+        return READ;
+    }
+}
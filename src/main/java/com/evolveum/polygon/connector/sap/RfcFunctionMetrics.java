@@ -0,0 +1,95 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoException;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls, errors and latency of one RFC function (or connector step like conversion) for one SAP destination.
+ */
+public class RfcFunctionMetrics {
+
+    private final String name;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private final LongAdder retries = new LongAdder();
+
+    public RfcFunctionMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param error error group, null if call was successful
+     */
+    public void record(long nanos, String error) {
+        latency.record(nanos);
+        if (error != null) {
+            errors.computeIfAbsent(error, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Failed call will be executed again, see {@link RetryPolicy}.
+     */
+    public void retried() {
+        retries.increment();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return name of JCoException group
+     */
+    public static String errorGroup(JCoException e) {
+        switch (e.getGroup()) {
+            case JCoException.JCO_ERROR_COMMUNICATION:
+                return "COMMUNICATION";
+            case JCoException.JCO_ERROR_LOGON_FAILURE:
+                return "LOGON_FAILURE";
+            case JCoException.JCO_ERROR_SYSTEM_FAILURE:
+                return "SYSTEM_FAILURE";
+            case JCoException.JCO_ERROR_RESOURCE:
+                return "RESOURCE";
+            case JCoException.JCO_ERROR_ABAP_EXCEPTION:
+                return "ABAP_EXCEPTION";
+            case JCoException.JCO_ERROR_TIMEOUT:
+                return "TIMEOUT";
+            case JCoException.JCO_ERROR_CANCELLED:
+                return "CANCELLED";
+            default:
+                return "GROUP_" + e.getGroup();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return actual state for JMX
+     */
+    public RfcFunctionStats toStats() {
+        Map<String, Long> errorCounts = new TreeMap<>();
+        long errorCount = 0;
+        for (Map.Entry<String, LongAdder> entry : errors.entrySet()) {
+            long count = entry.getValue().sum();
+            errorCounts.put(entry.getKey(), count);
+            errorCount += count;
+        }
+        return new RfcFunctionStats(name, latency.getCount(), errorCount, errorCounts, retries.sum(), latency.getMeanMillis(),
+                latency.getPercentileMillis(50), latency.getPercentileMillis(90), latency.getPercentileMillis(99),
+                latency.getMaxMillis());
+    }
+}
@@ -0,0 +1,92 @@
+package com.evolveum.polygon.connector.sap;
+
+import java.util.Map;
+
+/**
+ * Snapshot of {@link RfcFunctionMetrics}, shown in JMX as composite data.
+ */
+public class RfcFunctionStats {
+
+    private final String name;
+    private final long calls;
+    private final long errors;
+    private final Map<String, Long> errorsByGroup;
+    private final long retries;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p90Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    public RfcFunctionStats(String name, long calls, long errors, Map<String, Long> errorsByGroup, long retries,
+                            double meanMillis, double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+        this.name = name;
+        this.calls = calls;
+        this.errors = errors;
+        this.errorsByGroup = errorsByGroup;
+        this.retries = retries;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p90Millis = p90Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public Map<String, Long> getErrorsByGroup() {
+        return errorsByGroup;
+    }
+
+    /**
+     * @return count of failed calls executed again
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP90Millis() {
+        return p90Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RfcFunctionStats{" +
+                "name='" + name + '\'' +
+                ", calls=" + calls +
+                ", errors=" + errorsByGroup +
+                ", retries=" + retries +
+                ", mean=" + meanMillis +
+                ", p50=" + p50Millis +
+                ", p90=" + p90Millis +
+                ", p99=" + p99Millis +
+                ", max=" + maxMillis +
+                '}';
+    }
+}
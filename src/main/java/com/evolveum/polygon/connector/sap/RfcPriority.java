@@ -0,0 +1,17 @@
+package com.evolveum.polygon.connector.sap;
+
+/**
+ * Priority class of RFC calls, bulk calls can't use permits reserved for interactive ones.
+ */
+public enum RfcPriority {
+
+    /**
+     * operations with one user (get, create, update, delete, password change, ...), mostly started from GUI
+     */
+    INTERACTIVE,
+
+    /**
+     * search of more objects and LiveSync (reconciliation, import, ...)
+     */
+    BULK
+}
@@ -0,0 +1,43 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoException;
+import com.sap.conn.jco.JCoFunction;
+
+/**
+ * Connection to SAP used by {@link SapConnector} for all RFC calls.
+ * <br/>
+ * Production implementation is {@link JCoRfcTransport} over JCo destination, other implementations (simulated SAP
+ * in tests, ...) are given to the connector in its constructor instead of creating the JCo destination.
+ * Implementations must be thread safe, functions are executed also from worker threads of parallel reads.
+ */
+public interface RfcTransport {
+
+    String getDestinationName();
+
+    /**
+     * @return new function with metadata from SAP repository, null if the function does not exist
+     */
+    JCoFunction getFunction(String name) throws JCoException;
+
+    void execute(JCoFunction function) throws JCoException;
+
+    void ping() throws JCoException;
+
+    boolean isValid();
+
+    /**
+     * Start stateful session, next calls of the actual thread are executed in the same SAP session
+     * (needed for BAPI_TRANSACTION_COMMIT).
+     */
+    void begin();
+
+    void end() throws JCoException;
+
+    boolean isStateful();
+
+    /**
+     * Release resources of the transport when the connector is disposed, JCo destinations are managed by JCo.
+     */
+    default void close() {
+    }
+}
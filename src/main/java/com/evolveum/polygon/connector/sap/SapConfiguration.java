@@ -267,6 +267,112 @@ public class SapConfiguration extends AbstractConfiguration {
 	 */
 	private boolean considerGlobalLock = false;
 
+    /**
+     * directory where connector keeps his local state, for example snapshots of tables used in LiveSync of table object classes
+     */
+    private String stateDirectory = null;
+
+    /**
+     * number of rows read from SAP table in one RFC_GET_TABLE_ENTRIES call in LiveSync of table object classes, 0 = all rows at once
+     */
+    private Integer tableReadChunkSize = 0;
+
+    /**
+     * table with last modifications of users (BNAME, MODDA, MODTI columns), read in one RFC_READ_TABLE call in LiveSync to skip not changed users, null = disabled
+     */
+    private String syncPrefilterTable = null;
+
+    /**
+     * maximum number of changed users processed in one LiveSync call, next call continues from token, 0 = unlimited;
+     * details are read only for the batch if the time of change is known from syncPrefilterTable or role assignments
+     */
+    private Integer syncBatchSize = 0;
+
+    /**
+     * number of threads reading user details in LiveSync, should not exceed poolCapacity/peakLimit
+     */
+    private Integer syncThreads = 1;
+
+    /**
+     * minimal interval in minutes between full listings of usernames to detect deleted users in LiveSync, 0 = disabled
+     */
+    private Integer deleteDetectionInterval = 0;
+
+    /**
+     * number of users with remembered content fingerprint in LiveSync, not changed users are not reported, 0 = disabled
+     */
+    private Integer syncFingerprintCacheSize = 0;
+
+    /**
+     * add read only CONTENT_FINGERPRINT attribute with hash of all other attributes to account
+     */
+    private Boolean contentFingerprint = false;
+
+    /**
+     * interval in minutes to measure SAP server clock offset used in LiveSync tokens, 0 = local time is used
+     */
+    private Integer serverClockRefreshInterval = 0;
+
+    /**
+     * detect also changes of role assignments (AGR_USERS) in LiveSync, which are not visible in LASTMODIFIED of user
+     */
+    private Boolean syncRoleAssignments = false;
+
+    /**
+     * first usernames of partitions in full read of users, read in parallel, empty = not partitioned
+     */
+    private String[] reconciliationPartitions = new String[0];
+
+    /**
+     * maximum number of parallel RFC calls in partitioned full read of users
+     */
+    private Integer reconciliationThreads = 1;
+
+    /**
+     * number of read users between saving checkpoints of full read of users, 0 = disabled
+     */
+    private Integer checkpointInterval = 0;
+
+    /**
+     * maximum of concurrent RFC calls to destination from all connector instances, adapted to SAP load, 0 = not limited
+     */
+    private Integer rfcMaxConcurrency = 0;
+
+    /**
+     * percent of RFC concurrency limit reserved for interactive calls (get, create, update, ...), not usable by search and LiveSync
+     */
+    private Integer interactiveReservedPercent = 25;
+
+    /**
+     * maximum RFC calls per second for function classes READ, WRITE, PASSWORD, TABLE in format CLASS=rate, shared for destination
+     */
+    private String[] rfcRateLimits = new String[0];
+
+    /**
+     * directory where all RFC calls are recorded for offline replay, null = not recorded
+     */
+    private String rfcRecordingDirectory = null;
+
+    /**
+     * maximum attempts of read RFC call failed because of transient error, 1 = not retried
+     */
+    private Integer rfcRetryAttempts = 3;
+
+    /**
+     * delay before the second attempt of failed RFC call in milliseconds, doubled for each next attempt
+     */
+    private Integer rfcRetryBackoff = 200;
+
+    /**
+     * maximum delay between attempts of failed RFC call in milliseconds
+     */
+    private Integer rfcRetryMaxBackoff = 10000;
+
+    /**
+     * maximum retries of RFC calls in one operation, 0 = not limited
+     */
+    private Integer rfcRetryBudget = 100;
+
     @Override
     public void validate() {
         if (isBlank(host)) {
@@ -290,6 +396,50 @@ public class SapConfiguration extends AbstractConfiguration {
         checkParameterNames();
         
         parseBaseAccountQuery();
+
+        parseRfcRateLimits();
+    }
+
+    /**
+     * @return permitted RFC calls per second for each function class from rfcRateLimits
+     */
+    public Map<RfcFunctionClass, Double> parseRfcRateLimits() {
+        Map<RfcFunctionClass, Double> rates = new EnumMap<>(RfcFunctionClass.class);
+        if (rfcRateLimits == null) {
+            return rates;
+        }
+        for (String rateLimit : rfcRateLimits) {
+            if (isBlank(rateLimit)) {
+                continue;
+            }
+            String[] parts = rateLimit.split("=");
+            try {
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("expected CLASS=rate");
+                }
+                double rate = Double.parseDouble(parts[1].trim());
+                if (rate <= 0) {
+                    throw new IllegalArgumentException("rate must be positive");
+                }
+                rates.put(RfcFunctionClass.valueOf(parts[0].trim().toUpperCase()), rate);
+            } catch (RuntimeException e) {
+                throw new ConfigurationException("Parameter rfcRateLimits is not in the form CLASS=rate, where CLASS is one of "
+                        + Arrays.toString(RfcFunctionClass.values()) + " and rate is positive number - " + rateLimit, e);
+            }
+        }
+        return rates;
+    }
+
+    public RetryPolicy parseRfcRetryPolicy() {
+        int attempts = rfcRetryAttempts == null ? 1 : rfcRetryAttempts;
+        int backoff = rfcRetryBackoff == null ? 0 : rfcRetryBackoff;
+        int maxBackoff = rfcRetryMaxBackoff == null ? backoff : rfcRetryMaxBackoff;
+        int budget = rfcRetryBudget == null ? 0 : rfcRetryBudget;
+        if (attempts < 1 || backoff < 0 || maxBackoff < 0 || budget < 0) {
+            throw new ConfigurationException("Parameter rfcRetryAttempts must be at least 1, rfcRetryBackoff, rfcRetryMaxBackoff and "
+                    + "rfcRetryBudget must not be negative - " + attempts + ", " + backoff + ", " + maxBackoff + ", " + budget);
+        }
+        return new RetryPolicy(attempts, backoff, maxBackoff, budget);
     }
 
     public SapFilter parseBaseAccountQuery() {
@@ -445,6 +595,27 @@ public class SapConfiguration extends AbstractConfiguration {
                 ", pwdChangeErrorIsFatal=" + pwdChangeErrorIsFatal +
                 ", subTables=" + Arrays.toString(subTables) +
                 ", subTablesMetadata=" + subTablesMetadata +
+                ", stateDirectory='" + stateDirectory + '\'' +
+                ", tableReadChunkSize=" + tableReadChunkSize +
+                ", syncPrefilterTable='" + syncPrefilterTable + '\'' +
+                ", syncBatchSize=" + syncBatchSize +
+                ", syncThreads=" + syncThreads +
+                ", deleteDetectionInterval=" + deleteDetectionInterval +
+                ", syncFingerprintCacheSize=" + syncFingerprintCacheSize +
+                ", contentFingerprint=" + contentFingerprint +
+                ", serverClockRefreshInterval=" + serverClockRefreshInterval +
+                ", syncRoleAssignments=" + syncRoleAssignments +
+                ", reconciliationPartitions=" + Arrays.toString(reconciliationPartitions) +
+                ", reconciliationThreads=" + reconciliationThreads +
+                ", checkpointInterval=" + checkpointInterval +
+                ", rfcMaxConcurrency=" + rfcMaxConcurrency +
+                ", interactiveReservedPercent=" + interactiveReservedPercent +
+                ", rfcRateLimits=" + Arrays.toString(rfcRateLimits) +
+                ", rfcRecordingDirectory='" + rfcRecordingDirectory + '\'' +
+                ", rfcRetryAttempts=" + rfcRetryAttempts +
+                ", rfcRetryBackoff=" + rfcRetryBackoff +
+                ", rfcRetryMaxBackoff=" + rfcRetryMaxBackoff +
+                ", rfcRetryBudget=" + rfcRetryBudget +
                 '}';
     }
 
@@ -855,6 +1026,216 @@ public class SapConfiguration extends AbstractConfiguration {
         this.subTables = subTables;
     }
 
+    @ConfigurationProperty(order = 40, displayMessageKey = "sap.config.stateDirectory",
+            helpMessageKey = "sap.config.stateDirectory.help")
+    public String getStateDirectory() {
+        return stateDirectory;
+    }
+
+    public void setStateDirectory(String stateDirectory) {
+        this.stateDirectory = stateDirectory;
+    }
+
+    @ConfigurationProperty(order = 41, displayMessageKey = "sap.config.tableReadChunkSize",
+            helpMessageKey = "sap.config.tableReadChunkSize.help")
+    public Integer getTableReadChunkSize() {
+        return tableReadChunkSize;
+    }
+
+    public void setTableReadChunkSize(Integer tableReadChunkSize) {
+        this.tableReadChunkSize = tableReadChunkSize;
+    }
+
+    @ConfigurationProperty(order = 42, displayMessageKey = "sap.config.syncPrefilterTable",
+            helpMessageKey = "sap.config.syncPrefilterTable.help")
+    public String getSyncPrefilterTable() {
+        return syncPrefilterTable;
+    }
+
+    public void setSyncPrefilterTable(String syncPrefilterTable) {
+        this.syncPrefilterTable = syncPrefilterTable;
+    }
+
+    @ConfigurationProperty(order = 43, displayMessageKey = "sap.config.syncBatchSize",
+            helpMessageKey = "sap.config.syncBatchSize.help")
+    public Integer getSyncBatchSize() {
+        return syncBatchSize;
+    }
+
+    public void setSyncBatchSize(Integer syncBatchSize) {
+        this.syncBatchSize = syncBatchSize;
+    }
+
+    @ConfigurationProperty(order = 44, displayMessageKey = "sap.config.syncThreads",
+            helpMessageKey = "sap.config.syncThreads.help")
+    public Integer getSyncThreads() {
+        return syncThreads;
+    }
+
+    public void setSyncThreads(Integer syncThreads) {
+        this.syncThreads = syncThreads;
+    }
+
+    @ConfigurationProperty(order = 45, displayMessageKey = "sap.config.deleteDetectionInterval",
+            helpMessageKey = "sap.config.deleteDetectionInterval.help")
+    public Integer getDeleteDetectionInterval() {
+        return deleteDetectionInterval;
+    }
+
+    public void setDeleteDetectionInterval(Integer deleteDetectionInterval) {
+        this.deleteDetectionInterval = deleteDetectionInterval;
+    }
+
+    @ConfigurationProperty(order = 46, displayMessageKey = "sap.config.syncFingerprintCacheSize",
+            helpMessageKey = "sap.config.syncFingerprintCacheSize.help")
+    public Integer getSyncFingerprintCacheSize() {
+        return syncFingerprintCacheSize;
+    }
+
+    public void setSyncFingerprintCacheSize(Integer syncFingerprintCacheSize) {
+        this.syncFingerprintCacheSize = syncFingerprintCacheSize;
+    }
+
+    @ConfigurationProperty(order = 47, displayMessageKey = "sap.config.contentFingerprint",
+            helpMessageKey = "sap.config.contentFingerprint.help")
+    public Boolean getContentFingerprint() {
+        return contentFingerprint;
+    }
+
+    public void setContentFingerprint(Boolean contentFingerprint) {
+        this.contentFingerprint = contentFingerprint;
+    }
+
+    @ConfigurationProperty(order = 48, displayMessageKey = "sap.config.serverClockRefreshInterval",
+            helpMessageKey = "sap.config.serverClockRefreshInterval.help")
+    public Integer getServerClockRefreshInterval() {
+        return serverClockRefreshInterval;
+    }
+
+    public void setServerClockRefreshInterval(Integer serverClockRefreshInterval) {
+        this.serverClockRefreshInterval = serverClockRefreshInterval;
+    }
+
+    @ConfigurationProperty(order = 49, displayMessageKey = "sap.config.syncRoleAssignments",
+            helpMessageKey = "sap.config.syncRoleAssignments.help")
+    public Boolean getSyncRoleAssignments() {
+        return syncRoleAssignments;
+    }
+
+    public void setSyncRoleAssignments(Boolean syncRoleAssignments) {
+        this.syncRoleAssignments = syncRoleAssignments;
+    }
+
+    @ConfigurationProperty(order = 50, displayMessageKey = "sap.config.reconciliationPartitions",
+            helpMessageKey = "sap.config.reconciliationPartitions.help")
+    public String[] getReconciliationPartitions() {
+        return reconciliationPartitions;
+    }
+
+    public void setReconciliationPartitions(String[] reconciliationPartitions) {
+        this.reconciliationPartitions = reconciliationPartitions;
+    }
+
+    @ConfigurationProperty(order = 51, displayMessageKey = "sap.config.reconciliationThreads",
+            helpMessageKey = "sap.config.reconciliationThreads.help")
+    public Integer getReconciliationThreads() {
+        return reconciliationThreads;
+    }
+
+    public void setReconciliationThreads(Integer reconciliationThreads) {
+        this.reconciliationThreads = reconciliationThreads;
+    }
+
+    @ConfigurationProperty(order = 52, displayMessageKey = "sap.config.checkpointInterval",
+            helpMessageKey = "sap.config.checkpointInterval.help")
+    public Integer getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(Integer checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    @ConfigurationProperty(order = 53, displayMessageKey = "sap.config.rfcMaxConcurrency",
+            helpMessageKey = "sap.config.rfcMaxConcurrency.help")
+    public Integer getRfcMaxConcurrency() {
+        return rfcMaxConcurrency;
+    }
+
+    public void setRfcMaxConcurrency(Integer rfcMaxConcurrency) {
+        this.rfcMaxConcurrency = rfcMaxConcurrency;
+    }
+
+    @ConfigurationProperty(order = 54, displayMessageKey = "sap.config.interactiveReservedPercent",
+            helpMessageKey = "sap.config.interactiveReservedPercent.help")
+    public Integer getInteractiveReservedPercent() {
+        return interactiveReservedPercent;
+    }
+
+    public void setInteractiveReservedPercent(Integer interactiveReservedPercent) {
+        this.interactiveReservedPercent = interactiveReservedPercent;
+    }
+
+    @ConfigurationProperty(order = 55, displayMessageKey = "sap.config.rfcRateLimits",
+            helpMessageKey = "sap.config.rfcRateLimits.help")
+    public String[] getRfcRateLimits() {
+        return rfcRateLimits;
+    }
+
+    public void setRfcRateLimits(String[] rfcRateLimits) {
+        this.rfcRateLimits = rfcRateLimits;
+    }
+
+    @ConfigurationProperty(order = 56, displayMessageKey = "sap.config.rfcRecordingDirectory",
+            helpMessageKey = "sap.config.rfcRecordingDirectory.help")
+    public String getRfcRecordingDirectory() {
+        return rfcRecordingDirectory;
+    }
+
+    public void setRfcRecordingDirectory(String rfcRecordingDirectory) {
+        this.rfcRecordingDirectory = rfcRecordingDirectory;
+    }
+
+    @ConfigurationProperty(order = 57, displayMessageKey = "sap.config.rfcRetryAttempts",
+            helpMessageKey = "sap.config.rfcRetryAttempts.help")
+    public Integer getRfcRetryAttempts() {
+        return rfcRetryAttempts;
+    }
+
+    public void setRfcRetryAttempts(Integer rfcRetryAttempts) {
+        this.rfcRetryAttempts = rfcRetryAttempts;
+    }
+
+    @ConfigurationProperty(order = 58, displayMessageKey = "sap.config.rfcRetryBackoff",
+            helpMessageKey = "sap.config.rfcRetryBackoff.help")
+    public Integer getRfcRetryBackoff() {
+        return rfcRetryBackoff;
+    }
+
+    public void setRfcRetryBackoff(Integer rfcRetryBackoff) {
+        this.rfcRetryBackoff = rfcRetryBackoff;
+    }
+
+    @ConfigurationProperty(order = 59, displayMessageKey = "sap.config.rfcRetryMaxBackoff",
+            helpMessageKey = "sap.config.rfcRetryMaxBackoff.help")
+    public Integer getRfcRetryMaxBackoff() {
+        return rfcRetryMaxBackoff;
+    }
+
+    public void setRfcRetryMaxBackoff(Integer rfcRetryMaxBackoff) {
+        this.rfcRetryMaxBackoff = rfcRetryMaxBackoff;
+    }
+
+    @ConfigurationProperty(order = 60, displayMessageKey = "sap.config.rfcRetryBudget",
+            helpMessageKey = "sap.config.rfcRetryBudget.help")
+    public Integer getRfcRetryBudget() {
+        return rfcRetryBudget;
+    }
+
+    public void setRfcRetryBudget(Integer rfcRetryBudget) {
+        this.rfcRetryBudget = rfcRetryBudget;
+    }
+
     private String getPlainPassword() {
         final StringBuilder sb = new StringBuilder();
         if (password != null) {
@@ -27,6 +27,7 @@ import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.ConnectorClass;
 import org.identityconnectors.framework.spi.PoolableConnector;
+import org.identityconnectors.framework.spi.SyncTokenResultsHandler;
 import org.identityconnectors.framework.spi.operations.*;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -43,8 +44,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 @ConnectorClass(displayNameKey = "sap.connector.display", configurationClass = SapConfiguration.class)
 public class SapConnector implements PoolableConnector, TestOp, SchemaOp, SearchOp<SapFilter>, CreateOp, DeleteOp, UpdateOp,
@@ -142,20 +149,67 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
     //USER_LOGIN_INFO prefix
     private static final String USER_LOGIN_INFO = "USER_LOGIN_INFO";
 
-    public static final SimpleDateFormat SAP_DF = new SimpleDateFormat("yyyy-MM-dd");
-    public static final SimpleDateFormat DATE_TIME = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    // hash of all other attributes of account
+    public static final String CONTENT_FINGERPRINT = "CONTENT_FINGERPRINT";
+
+    // operation option (Boolean) to continue full read of users after the last user stored in checkpoint
+    public static final String OPTION_RESUME_FROM_CHECKPOINT = "resumeFromCheckpoint";
+
+    // thread safe, shared by concurrent operations of pooled instances
+    public static final DateTimeFormatter SAP_DF = DateTimeFormatter.ofPattern("uuuu-MM-dd");
+    public static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss");
 
     private static final String SELECT = "X";
 
+    // actual date and time of SAP application server
+    private static final String SERVER_TIME_FUNCTION = "MSS_GET_SY_DATE_TIME";
+
+    // first read objects logged on OK level in each operation, after them only every n-th
+    private static final int OBJECT_LOG_FIRST = 10;
+    private static final int OBJECT_LOG_EVERY = 100;
+
+    // bulk table reading with selected columns and WHERE condition, used optionally in LiveSync
+    private static final String READ_TABLE_FUNCTION = "RFC_READ_TABLE";
+    private static final String READ_TABLE_DELIMITER = "|";
+    // thread safe, shared by concurrent syncs of pooled instances
+    private static final DateTimeFormatter SAP_DATE = DateTimeFormatter.ofPattern("uuuuMMdd");
+    private static final DateTimeFormatter SAP_TIMESTAMP = DateTimeFormatter.ofPattern("uuuuMMddHHmmss");
+
     private SapConfiguration configuration;
-    private JCoDestination destination;
+    // priority of RFC calls of actual operation, also used in its worker threads
+    private volatile RfcPriority priority = RfcPriority.INTERACTIVE;
+
+    // summary of actual operation, also updated from its worker threads
+    private volatile OperationSummary operationSummary;
+
+    // retries left in actual operation, null outside of operation
+    private volatile RetryPolicy.Budget retryBudget;
+
+    private OperationSummary lastOperationSummary;
+
+    // log of each read object, sampled for each operation
+    private volatile LazyLog.Sampler objectLog = newObjectLog();
+    private RfcTransport transport;
     private Map<String, Integer> sapAttributesLength = new HashMap<String, Integer>();
     private Map<String, String> sapAttributesType = new HashMap<String, String>();
 
 	private SapFilter baseAccountQuery;
+	// executor of the destination, configured in init
+	private RfcExecutor rfcExecutor;
+	private RetryPolicy rfcRetryPolicy = new RetryPolicy(1, 0, 0, 0);
 
     private Transformer xmlTransformer;
 
+    public SapConnector() {
+    }
+
+    /**
+     * Connector calling SAP over given transport instead of JCo destination from configuration (simulated SAP, ...).
+     */
+    SapConnector(RfcTransport transport) {
+        this.transport = transport;
+    }
+
     @Override
     public Configuration getConfiguration() {
         return configuration;
@@ -166,6 +220,39 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         this.configuration = (SapConfiguration) configuration;
         LOG.info("Initialization start, configuration: {0}", this.configuration.toString());
 
+        // set read only parameters from gui connector configuration
+        readOnlyParams =  this.configuration.getReadOnlyParams();
+        
+        baseAccountQuery = this.configuration.parseBaseAccountQuery();
+        rfcExecutor = RfcExecutor.get(this.configuration.getFinalDestinationName(), this.configuration.getRfcMaxConcurrency(),
+                this.configuration.getInteractiveReservedPercent(), this.configuration.parseRfcRateLimits());
+        rfcRetryPolicy = this.configuration.parseRfcRetryPolicy();
+
+        // create destination & ping it
+        try {
+            if (this.transport == null) {
+                this.transport = new JCoRfcTransport(createDestination());
+            }
+            if (StringUtil.isNotBlank(this.configuration.getRfcRecordingDirectory())) {
+                this.transport = new RecordingRfcTransport(this.transport, new File(this.configuration.getRfcRecordingDirectory()));
+            }
+            this.transport.ping();
+        } catch (JCoException e) {
+            throw new ConnectorIOException(e.getMessage(), e);
+        } catch (IOException e) {
+            throw new ConnectorIOException("Unable to record RFC calls: " + e.getMessage(), e);
+        }
+
+        // validate & initialize tables
+        configuration.validate();
+        // read schema
+        schema();
+
+        LOG.info("Initialization finished");
+    }
+
+
+    private JCoDestination createDestination() throws JCoException {
         CustomDestinationDataProvider myProvider = CustomDestinationDataProvider.getInstance();
 
         //register the provider with the JCo environment;
@@ -189,40 +276,22 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         if (destProps == null || !destProps.equals(props)){
             myProvider.setDestinationProperties(destinationName, props);
         }
-        // set read only parameters from gui connector configuration
-        readOnlyParams =  this.configuration.getReadOnlyParams();
-        
-        baseAccountQuery = this.configuration.parseBaseAccountQuery();
 
         if (this.configuration.SNC_MODE_ON.equals(this.configuration.getSncMode())) {
             createDestinationDataFile(destinationName, props);
         }
 
-        // create destination & ping it
-        try {
-            this.destination = JCoDestinationManager.getDestination(destinationName);
-            this.destination.ping();
-        } catch (JCoException e) {
-            throw new ConnectorIOException(e.getMessage(), e);
-        }
-
-        // validate & initialize tables
-        configuration.validate();
-        // read schema
-        schema();
-
-        LOG.info("Initialization finished");
+        return JCoDestinationManager.getDestination(destinationName);
     }
 
-
     @Override
     public void checkAlive() {
-        if (this.destination == null || !this.destination.isValid()) {
+        if (this.transport == null || !this.transport.isValid()) {
             LOG.ok("check alive: FAILED");
             throw new ConnectorException("Connection check failed");
         }
         try {
-            this.destination.ping();
+            this.transport.ping();
         } catch (JCoException e) {
             LOG.ok("connection ping FAILED: "+e);
             throw new ConnectorException("Connection ping failed", e);
@@ -268,13 +337,16 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
 
     @Override
     public void dispose() {
+        if (this.transport != null) {
+            this.transport.close();
+        }
         this.configuration = null;
-        if ((this.destination != null) && (JCoContext.isStateful(this.destination))) {
+        if ((this.transport != null) && (this.transport.isStateful())) {
             if (this.configuration.SNC_MODE_ON.equals(this.configuration.getSncMode())) {
-                deleteDestinationDataFile(this.destination.getDestinationName());
+                deleteDestinationDataFile(this.transport.getDestinationName());
             }
             try {
-                JCoContext.end(this.destination);
+                this.transport.end();
             } catch (JCoException jcoe) {
                 throw new ConnectorIOException(jcoe.getMessage(), jcoe);
             }
@@ -284,24 +356,33 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
     @Override
     public void test() {
         try {
-            this.destination.ping();
+            this.transport.ping();
             if (configuration.getTestBapiFunctionPermission()) {
                 List<String> notFoundFunctions = new LinkedList<String>();
                 for (String function : BAPI_FUNCTION_LIST) {
                     if (!configuration.getUseTransaction() && function.contains("_TRANSACTION_")) {
                         continue;
                     }
-                    JCoFunction jcoFunc = this.destination.getRepository().getFunction(function);
+                    JCoFunction jcoFunc = this.transport.getFunction(function);
                     if (jcoFunc == null)
                         notFoundFunctions.add(function);
                 }
+                // optional functions
+                if (isServerClockEnabled()
+                        && this.transport.getFunction(SERVER_TIME_FUNCTION) == null) {
+                    notFoundFunctions.add(SERVER_TIME_FUNCTION);
+                }
+                if ((StringUtil.isNotBlank(configuration.getSyncPrefilterTable()) || configuration.getSyncRoleAssignments())
+                        && this.transport.getFunction(READ_TABLE_FUNCTION) == null) {
+                    notFoundFunctions.add(READ_TABLE_FUNCTION);
+                }
                 if (notFoundFunctions.size() > 0) {
                     throw new ConfigurationException("these BAPI functions are not accessible: " + notFoundFunctions);
                 }
                 // testing creation of transaction
                 if (configuration.getUseTransaction()) {
-                    JCoContext.begin(destination);
-                    JCoContext.end(destination);
+                    transport.begin();
+                    transport.end();
                 }
             }
         } catch (JCoException e) {
@@ -380,6 +461,9 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             objClassBuilder.addAttributeInfo(createAttributeInfo(null, USER_LOGIN_INFO + SEPARATOR + "LOCK_STATUS", String.class, readOnly));
             objClassBuilder.addAttributeInfo(createAttributeInfo(null, USER_LOGIN_INFO + SEPARATOR + "PASSWORD_STATUS", String.class, readOnly));
         }
+        if (this.configuration.getContentFingerprint()) {
+            objClassBuilder.addAttributeInfo(createAttributeInfo(null, CONTENT_FINGERPRINT, String.class, true));
+        }
 
         builder.defineObjectClass(objClassBuilder.build());
     }
@@ -452,7 +536,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
     }
 
     private void getSchemaFromBapiFunction(String bapiFunction, String[] parameterList, ObjectClassInfoBuilder objClassBuilder, boolean readOnly) throws JCoException, ClassNotFoundException {
-        JCoFunction function = destination.getRepository().getFunction(bapiFunction);
+        JCoFunction function = transport.getFunction(bapiFunction);
         if (function == null)
             throw new RuntimeException(bapiFunction + " not found in SAP.");
 
@@ -527,6 +611,28 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
 
     @Override
     public void executeQuery(ObjectClass objectClass, SapFilter query, ResultsHandler handler, OperationOptions options) {
+        // get of one object by key (account, profile or table row) is interactive, other searches are bulk reads
+        priority = isFindByKey(objectClass, query) ? RfcPriority.INTERACTIVE : RfcPriority.BULK;
+        OperationSummary summary = startOperation("executeQuery", objectClass);
+        try {
+            executeObjectQuery(objectClass, query, summary.wrapSearch(handler), options);
+        } catch (RuntimeException e) {
+            summary.failed(e);
+            throw e;
+        } finally {
+            priority = RfcPriority.INTERACTIVE;
+            finishOperation(summary);
+        }
+    }
+
+    private static boolean isFindByKey(ObjectClass objectClass, SapFilter query) {
+        if (query == null) {
+            return false;
+        }
+        return objectClass.is(ObjectClass.ACCOUNT_NAME) ? query.byNameEquals() != null : query.getBasicByNameEquals() != null;
+    }
+
+    private void executeObjectQuery(ObjectClass objectClass, SapFilter query, ResultsHandler handler, OperationOptions options) {
         LOG.info("executeQuery: {0}, options: {1}, objectClass: {2}", query, options, objectClass);
 
         if (objectClass.is(ObjectClass.ACCOUNT_NAME)) {
@@ -535,31 +641,39 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
 
         } else if (objectClass.is(PROFILE_NAME)) {
 
-            executeProfileQuery(query, handler);
+            executeProfileQuery(query, handler, options);
 
         } else {
-            String found = null;
-            for (String tableName : configuration.getTableAliases().keySet()) {
-                String tableAlias = configuration.getTableAliases().get(tableName);
-                if (objectClass.is(tableAlias)) {
-                    found = tableName;
-                }
-            }
+            String found = findTableName(objectClass);
 
             if (found == null) {
                 throw new UnsupportedOperationException("Unsupported object class " + objectClass + ", expected: " + configuration.getTableMetadatas());
             }
 
-            executeTableQuery(found, query, handler);
+            executeTableQuery(found, query, handler, options);
         }
 
     }
 
-    private void executeProfileQuery(SapFilter query, ResultsHandler handler) {
+    /**
+     * @return SAP table name for table object class, or null if object class is not a table
+     */
+    private String findTableName(ObjectClass objectClass) {
+        String found = null;
+        for (String tableName : configuration.getTableAliases().keySet()) {
+            String tableAlias = configuration.getTableAliases().get(tableName);
+            if (objectClass.is(tableAlias)) {
+                found = tableName;
+            }
+        }
+        return found;
+    }
+
+    private void executeProfileQuery(SapFilter query, ResultsHandler handler, OperationOptions options) {
         try {
             // find all or find by key
 
-            JCoFunction function = destination.getRepository().getFunction("BAPI_HELPVALUES_GET");
+            JCoFunction function = transport.getFunction("BAPI_HELPVALUES_GET");
             if (function == null)
                 throw new RuntimeException("BAPI_HELPVALUES_GET not found in SAP.");
 
@@ -568,13 +682,14 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             function.getImportParameterList().setValue("PARAMETER", "Profiles");
             function.getImportParameterList().setValue("FIELD", BAPIPROF);
 
-            function.execute(destination);
+            execute(function);
 
             JCoTable entries = function.getTableParameterList().getTable("VALUES_FOR_FIELD");
 
+            LOG.ok("Number of entries in input: {0}, filter: {1}", entries.getNumRows(), query != null ? query.getBasicByNameEquals() : "(empty)");
 
+            List<String> profiles = new ArrayList<>(entries.getNumRows());
             entries.firstRow();
-            LOG.ok("Number of entries in input: {0}, filter: {1}", entries.getNumRows(), query != null ? query.getBasicByNameEquals() : "(empty)");
             if (entries.getNumRows() > 0) {
                 do {
                     String profile = entries.getString("VALUES");
@@ -582,34 +697,52 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                     if (query != null && query.getBasicByNameEquals() != null && !profile.equalsIgnoreCase(query.getBasicByNameEquals())) {
                         // TODO: case sensitive or not?
                         // not matched, ignore this
+                        filtered();
                         continue;
                     }
-
-                    ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
-                    builder.setUid(profile);
-                    builder.setName(profile);
-
-                    ObjectClass objectClass = new ObjectClass(PROFILE_NAME);
-                    builder.setObjectClass(objectClass);
-
-                    ConnectorObject build = builder.build();
-                    LOG.ok("ConnectorObject: {0}", build);
-                    handler.handle(build);
+                    profiles.add(profile);
                 } while (entries.nextRow());
             }
+
+            // stable order for paging
+            if (SearchPage.isPagedSearch(options)) {
+                Collections.sort(profiles);
+            }
+            SearchPage page = SearchPage.of(profiles, options);
+
+            ObjectClass objectClass = new ObjectClass(PROFILE_NAME);
+            String lastProfile = null;
+            int handledObjects = 0;
+            for (String profile : profiles.subList(page.getFrom(), page.getTo())) {
+                ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+                builder.setUid(profile);
+                builder.setName(profile);
+                builder.setObjectClass(objectClass);
+
+                ConnectorObject build = builder.build();
+                objectLog.ok("ConnectorObject: {0}", build);
+                lastProfile = profile;
+                handledObjects++;
+                if (!handler.handle(build)) {
+                    break;
+                }
+            }
+
+            page.complete(handler, lastProfile, handledObjects, profiles.size());
         } catch (JCoException e) {
             throw new ConnectorIOException(e.getMessage(), e);
         }
     }
 
-    private void executeTableQuery(String tableName, SapFilter query, ResultsHandler handler) {
+    private void executeTableQuery(String tableName, SapFilter query, ResultsHandler handler, OperationOptions options) {
         int numRows = 0;
         boolean isFindByKey = query != null && query.getBasicByNameEquals() != null;
+        boolean hasInMemoryFilter = query != null && query.getInMemoryFilter() != null;
 
         try {
             // find all or find by key
 
-            JCoFunction function = destination.getRepository().getFunction("RFC_GET_TABLE_ENTRIES");
+            JCoFunction function = transport.getFunction("RFC_GET_TABLE_ENTRIES");
             if (function == null)
                 throw new RuntimeException("RFC_GET_TABLE_ENTRIES not found in SAP.");
 
@@ -618,119 +751,190 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             // find by key
             if (isFindByKey) {
                 function.getImportParameterList().setValue("GEN_KEY", query.getBasicByNameEquals()); // this search does not use EQUALS operator but rather something similar to startsWith, also see support 9749
-                LOG.ok("query by Key: " + query.getBasicByNameEquals() + " on table: " + tableName);
+                LOG.ok("query by Key: {0} on table: {1}", query.getBasicByNameEquals(), tableName);
             }
             // else find all
-            function.execute(destination);
+            execute(function);
 
             JCoTable entries = function.getTableParameterList().getTable("ENTRIES");
 
-            LOG.info("Entries: " + function.getExportParameterList().getValue("NUMBER_OF_ENTRIES"));
+            int numberOfEntries = function.getExportParameterList().getInt("NUMBER_OF_ENTRIES");
+            LOG.info("Entries: " + numberOfEntries);
 
             numRows = entries.getNumRows();
-            entries.firstRow();
 
-            if (numRows > 0) {
-                boolean shouldContinue = true;
-                int handledObjects = 0;
-                do {
-                    String value = entries.getString("WA");
-                    int index = 0;
+            // first only keys of all rows, objects (and sub-table queries) are created only for the requested page
+            String[] rowKeys = new String[numRows];
+            List<Integer> matchedRows = new ArrayList<>(numRows);
+            int emptyKeys = 0;
+            for (int row = 0; row < numRows; row++) {
+                entries.setRow(row);
+                String value = entries.getString("WA");
+                String key = getTableRowKey(tableName, value);
+                if (StringUtil.isEmpty(key)) {
+                    LOG.warn("ignoring empty key: " + key);
+                    emptyKeys++;
+                    continue;
+                }
+
+                if (isFindByKey && !key.equalsIgnoreCase(query.getBasicByNameEquals())) {
+                    // If a specific key is searched and the current row is not the searched one, skip the sub-table queries
+                    filtered();
+                    continue;
+                }
 
-                    ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
-                    List<String> keys = new LinkedList<String>();
+                if (hasInMemoryFilter &&
+                    !query.getInMemoryFilter().accept(buildTableObject(tableName, key, value, new HashMap<>()).build())) {
+                    // If an in-memory filter is specified, it has to match. Otherwise the current object should not be returned,
+                    filtered();
+                    continue;
+                }
 
-                    Map<String, String> rootValues = new LinkedHashMap<>();
+                rowKeys[row] = key;
+                matchedRows.add(row);
+            }
 
-                    for (Map.Entry<String, Integer> entry : configuration.getTableMetadatas().get(tableName).entrySet()) {
-                        String column = entry.getKey();
-                        Integer length = entry.getValue();
+            // stable order for paging
+            if (SearchPage.isPagedSearch(options)) {
+                matchedRows.sort(Comparator.comparing(row -> rowKeys[row]));
+            }
+            List<String> sortedKeys = new ArrayList<>(matchedRows.size());
+            for (Integer row : matchedRows) {
+                sortedKeys.add(rowKeys[row]);
+            }
+            SearchPage page = SearchPage.of(sortedKeys, options);
+
+            String lastKey = null;
+            int handledObjects = 0;
+            for (Integer row : matchedRows.subList(page.getFrom(), page.getTo())) {
+                entries.setRow(row);
+                String key = rowKeys[row];
+
+                Map<String, String> rootValues = new LinkedHashMap<>();
+                long start = System.nanoTime();
+                ConnectorObjectBuilder builder = buildTableObject(tableName, key, entries.getString("WA"), rootValues);
+                OperationSummary summary = operationSummary;
+                if (summary != null) {
+                    summary.conversion(System.nanoTime() - start);
+                }
 
-                        int maxIndex = Math.min(index + length, value.length());
-                        String columnValue = value.substring(index, maxIndex).trim();
+                addSubTableAttributes(builder, tableName, key, rootValues);
 
-                        rootValues.put(column, columnValue);
+                ConnectorObject build = builder.build();
+                objectLog.ok("ConnectorObject: {0}", build);
 
-                        // ignore columns, what is selected as :IGNORE
-                        if (!configuration.getTableIgnores().get(tableName).contains(column)) {
-                            addAttr(builder, column, columnValue);
-                        }
-                        if (configuration.getTableKeys().get(tableName).contains(column)) {
-                            keys.add(columnValue);
-                        }
+                lastKey = key;
+                handledObjects++;
+                // Only continue the processing, if the caller requests more ConnectorObjects
+                if (!handler.handle(build)) {
+                    break;
+                }
+            }
+            LOG.ok("Finished reading {0} objects of {1} query results, page: {2}", handledObjects, numRows, page);
 
-                        index += length;
-                    }
+            // total is taken from SAP if the connector did not filter rows (and SAP returned it),
+            // without rows ignored for empty key, which are never returned
+            int total = !isFindByKey && !hasInMemoryFilter && numberOfEntries > 0
+                    ? Math.max(matchedRows.size(), numberOfEntries - emptyKeys) : matchedRows.size();
+            page.complete(handler, lastKey, handledObjects, total);
+        } catch (JCoException e) {
+            //there is no other way of checking this
+            if("TABLE_EMPTY".equals(e.getKey()))
+                return;
+            throw new ConnectorIOException(e.getMessage(), e);
+        }
+    }
 
-                    StringBuilder concatenatedKey = new StringBuilder();
-                    for (String key : keys) {
-                        if (concatenatedKey.length() != 0) {
-                            concatenatedKey.append(":");
-                        }
-                        concatenatedKey.append(key);
-                    }
-                    if (StringUtil.isEmpty(concatenatedKey.toString())) {
-                        LOG.warn("ignoring empty key: " + concatenatedKey);
-                        continue;
-                    }
+    /**
+     * Concatenated value of all key columns from one table row (WA).
+     */
+    String getTableRowKey(String tableName, String value) {
+        StringBuilder concatenatedKey = new StringBuilder();
+        List<String> keyColumns = configuration.getTableKeys().get(tableName);
+        int index = 0;
+        for (Map.Entry<String, Integer> entry : configuration.getTableMetadatas().get(tableName).entrySet()) {
+            String column = entry.getKey();
+            Integer length = entry.getValue();
+
+            if (keyColumns.contains(column)) {
+                int minIndex = Math.min(index, value.length());
+                int maxIndex = Math.min(index + length, value.length());
+                if (concatenatedKey.length() != 0) {
+                    concatenatedKey.append(":");
+                }
+                concatenatedKey.append(value.substring(minIndex, maxIndex).trim());
+            }
 
-                    if (isFindByKey && !concatenatedKey.toString().equalsIgnoreCase(query.getBasicByNameEquals())) {
-                        // If a specific key is searched and the current row is not the searched one, skip the sub-table queries
-                        continue;
-                    }
+            index += length;
+        }
+        return concatenatedKey.toString();
+    }
 
-                    builder.setUid(concatenatedKey.toString());
-                    builder.setName(concatenatedKey.toString());
+    /**
+     * Parse all columns from one table row (WA) to connector object without sub-tables.
+     *
+     * @param rootValues filled with all column values, used to match sub-table rows
+     */
+    ConnectorObjectBuilder buildTableObject(String tableName, String key, String value, Map<String, String> rootValues) {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        int index = 0;
 
-                    ObjectClass objectClass = new ObjectClass(configuration.getTableAliases().get(tableName));
-                    builder.setObjectClass(objectClass);
+        for (Map.Entry<String, Integer> entry : configuration.getTableMetadatas().get(tableName).entrySet()) {
+            String column = entry.getKey();
+            Integer length = entry.getValue();
 
-                    if (query != null &&
-                        query.getInMemoryFilter() != null &&
-                        !query.getInMemoryFilter().accept(builder.build())) {
-                        // If an in-memory filter is specified, it has to match. Otherwise the current object should not be returned,
-                        continue;
-                    }
+            int minIndex = Math.min(index, value.length());
+            int maxIndex = Math.min(index + length, value.length());
+            String columnValue = value.substring(minIndex, maxIndex).trim();
 
-                    if (configuration.getSubTablesMetadata().containsKey(tableName)) {
-                        for (SubTableMetadata subTables : configuration.getSubTablesMetadata().get(tableName)) {
-                            try {
-                                builder.addAttribute(subTables.getVirtualColumnName(),
-                                                     executeTableSubQuery(concatenatedKey.toString(), subTables,
-                                                                          rootValues));
-                            } catch (JCoException e) {
-                                if ("TABLE_EMPTY".equals(e.getKey())) {
-                                    // Workaround to handle empty results
-                                    builder.addAttribute(subTables.getVirtualColumnName(), new ArrayList<>());
-                                } else {
-                                    throw new ConnectorIOException(
-                                            "Error during sub-table query for " + subTables.getTableName() + ": " +
-                                            e.getMessage(), e);
-                                }
-                            }
-                        }
-                    }
+            rootValues.put(column, columnValue);
 
-                    ConnectorObject build = builder.build();
-                    LOG.ok("ConnectorObject: {0}", build);
+            // ignore columns, what is selected as :IGNORE
+            if (!configuration.getTableIgnores().get(tableName).contains(column)) {
+                addAttr(builder, column, columnValue);
+            }
 
-                    // Only continue the processing, if the caller requests more ConnectorObjects
-                    shouldContinue = handler.handle(build);
-                    handledObjects++;
+            index += length;
+        }
 
-                } while (entries.nextRow() && shouldContinue);
-                LOG.ok("Finished reading {0} objects of {1} query results", handledObjects, numRows);
+        builder.setUid(key);
+        builder.setName(key);
+        builder.setObjectClass(new ObjectClass(configuration.getTableAliases().get(tableName)));
+
+        return builder;
+    }
+
+    private void addSubTableAttributes(ConnectorObjectBuilder builder, String tableName, String key, Map<String, String> rootValues) {
+        builder.addAttributes(getSubTableAttributes(tableName, key, rootValues));
+    }
+
+    /**
+     * @return attributes with values from sub-tables of table row, empty if table has no sub-tables
+     */
+    private List<Attribute> getSubTableAttributes(String tableName, String key, Map<String, String> rootValues) {
+        List<Attribute> attributes = new ArrayList<>();
+        if (configuration.getSubTablesMetadata().containsKey(tableName)) {
+            for (SubTableMetadata subTables : configuration.getSubTablesMetadata().get(tableName)) {
+                try {
+                    attributes.add(AttributeBuilder.build(subTables.getVirtualColumnName(),
+                                         executeTableSubQuery(key, subTables, rootValues)));
+                } catch (JCoException e) {
+                    if ("TABLE_EMPTY".equals(e.getKey())) {
+                        // Workaround to handle empty results
+                        attributes.add(AttributeBuilder.build(subTables.getVirtualColumnName(), new ArrayList<>()));
+                    } else {
+                        throw new ConnectorIOException(
+                                "Error during sub-table query for " + subTables.getTableName() + ": " +
+                                e.getMessage(), e);
+                    }
+                }
             }
-        } catch (JCoException e) {
-            //there is no other way of checking this
-            if("TABLE_EMPTY".equals(e.getKey()))
-                return;
-            throw new ConnectorIOException(e.getMessage(), e);
         }
+        return attributes;
     }
 
     private List<String> executeTableSubQuery(String queryKey, SubTableMetadata metadata, Map<String, String> rootValues) throws JCoException {
-        JCoFunction function = destination.getRepository().getFunction("RFC_GET_TABLE_ENTRIES");
+        JCoFunction function = transport.getFunction("RFC_GET_TABLE_ENTRIES");
         if (function == null) {
             throw new RuntimeException("RFC_GET_TABLE_ENTRIES not found in SAP.");
         }
@@ -738,12 +942,12 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         // this search does not use EQUALS operator but rather something similar to startsWith, also see support 9749
         function.getImportParameterList().setValue("TABLE_NAME", metadata.getTableName());
         function.getImportParameterList().setValue("GEN_KEY", queryKey);
-        LOG.ok("sub-query by key: " + queryKey + " on table: " + metadata.getTableName());
+        LOG.ok("sub-query by key: {0} on table: {1}", queryKey, metadata.getTableName());
 
-        function.execute(destination);
+        execute(function);
 
         JCoTable entries = function.getTableParameterList().getTable("ENTRIES");
-        LOG.info("Entries: " + function.getExportParameterList().getValue("NUMBER_OF_ENTRIES"));
+        LOG.ok("Entries: {0}", function.getExportParameterList().getValue("NUMBER_OF_ENTRIES"));
 
         int numRows = entries.getNumRows();
         entries.firstRow();
@@ -827,7 +1031,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             // find by NAME (or UID - same as name)
             if (query != null && query.byNameEquals() != null) {
 
-                JCoFunction function = destination.getRepository().getFunction("BAPI_USER_GET_DETAIL");
+                JCoFunction function = transport.getFunction("BAPI_USER_GET_DETAIL");
                 function.getImportParameterList().setValue(USERNAME, query.byNameEquals());
                 executeFunction(function);
 
@@ -838,7 +1042,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
 
             } // find by name contains
             else if (query != null && query.byNameContains() != null) {
-                JCoFunction function = destination.getRepository().getFunction("BAPI_USER_GETLIST");
+                JCoFunction function = transport.getFunction("BAPI_USER_GETLIST");
                 JCoTable exp = function.getTableParameterList().getTable("SELECTION_EXP");
                 exp.appendRow();
                 exp.setValue("PARAMETER", USERNAME);
@@ -853,9 +1057,9 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                 if (userList.getNumRows() > 0) {
                     do {
                         if (++count % 10 == 0) {
-                            LOG.ok("processing " + count + "/" + userList.getNumRows());
+                            LOG.ok("processing {0}/{1}", count, userList.getNumRows());
                         }
-                        JCoFunction functionDetail = destination.getRepository().getFunction("BAPI_USER_GET_DETAIL");
+                        JCoFunction functionDetail = transport.getFunction("BAPI_USER_GET_DETAIL");
                         functionDetail.getImportParameterList().setValue(USERNAME, userList.getString(USERNAME));
 
                         executeFunction(functionDetail);
@@ -870,9 +1074,21 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                     } while (userList.nextRow());
                 }
 
+                // find all, partitioned by username
+            } else if (query == null && isPartitionedReconciliation() && !SearchPage.isPagedSearch(options)) {
+                ScanCheckpoint checkpoint = openScanCheckpoint(query);
+                String after = checkpoint != null && isResume(options) ? checkpoint.resume() : null;
+                boolean completed = false;
+                try {
+                    // checkpoint is kept when the handler stopped the read
+                    completed = executePartitionedAccountScan(handler, after, checkpoint);
+                } finally {
+                    finishScanCheckpoint(checkpoint, completed);
+                }
+
                 // find all or advanced filtering
             } else {
-                JCoFunction function = destination.getRepository().getFunction("BAPI_USER_GETLIST");
+                JCoFunction function = transport.getFunction("BAPI_USER_GETLIST");
 
                 final Integer pageSize = options == null ? null : options.getPageSize(); // 0 = return all
                 if (pageSize != null && pageSize > 0) {
@@ -883,7 +1099,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                     function.getImportParameterList().setValue("MAX_ROWS", pagedResultsOffset + pageSize);
                     
                     prepareFilters(function, addBaseToAccountQuery(baseAccountQuery, query));
-                    LOG.ok("SELECTION_EXP: " + function.getTableParameterList().getTable("SELECTION_EXP").toXML());
+                    LOG.ok("SELECTION_EXP: {0}", LazyLog.xml(function.getTableParameterList().getTable("SELECTION_EXP")));
                     executeFunction(function);
                     JCoTable userList = function.getTableParameterList().getTable("USERLIST");
                     LOG.info("Number of users to read details: " + pageSize + ", offset: " + pagedResultsOffset + ", returned from SAP: " + userList.getNumRows());
@@ -902,10 +1118,10 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                             }
 
                             if (handled % 10 == 0) {
-                                LOG.ok("processing " + handled + "/" + pageSize);
+                                LOG.ok("processing {0}/{1}", handled, pageSize);
                             }
 
-                            JCoFunction functionDetail = destination.getRepository().getFunction("BAPI_USER_GET_DETAIL");
+                            JCoFunction functionDetail = transport.getFunction("BAPI_USER_GET_DETAIL");
                             functionDetail.getImportParameterList().setValue(USERNAME, userList.getString(USERNAME));
 
                             executeFunction(functionDetail);
@@ -924,32 +1140,63 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
 
                 } else {
                     // not paged search
-                    prepareFilters(function, addBaseToAccountQuery(baseAccountQuery, query));
-                    LOG.ok("SELECTION_EXP: " + function.getTableParameterList().getTable("SELECTION_EXP").toXML());
+                    ScanCheckpoint checkpoint = openScanCheckpoint(query);
+                    String after = checkpoint != null && isResume(options) ? checkpoint.resume() : null;
+                    SapFilter filter = addBaseToAccountQuery(baseAccountQuery, query);
+                    if (after != null && query == null) {
+                        // don't list already read users
+                        filter = addBaseToAccountQuery(baseAccountQuery,
+                                new SapFilter(SapFilter.OPERATOR_GREATER_THAN, USERNAME, after));
+                    }
+                    prepareFilters(function, filter);
+                    LOG.ok("SELECTION_EXP: {0}", LazyLog.xml(function.getTableParameterList().getTable("SELECTION_EXP")));
                     executeFunction(function);
                     JCoTable userList = function.getTableParameterList().getTable("USERLIST");
-                    LOG.info("Number of users to read details: " + userList.getNumRows());
-                    int count = 0;
+                    List<String> userNames = new ArrayList<>(userList.getNumRows());
+                    userList.firstRow();
                     if (userList.getNumRows() > 0) {
                         do {
+                            String userName = userList.getString(USERNAME);
+                            if (after == null || userName.compareTo(after) > 0) {
+                                userNames.add(userName);
+                            }
+                        } while (userList.nextRow());
+                    }
+                    if (checkpoint != null) {
+                        // checkpoint needs the same order in resumed read
+                        Collections.sort(userNames);
+                    }
+                    LOG.info("Number of users to read details: " + userNames.size());
+                    int count = 0;
+                    boolean completed = false;
+                    try {
+                        boolean stopped = false;
+                        for (String userName : userNames) {
                             if (++count % 10 == 0) {
-                                LOG.ok("processing " + count + "/" + userList.getNumRows());
+                                LOG.ok("processing {0}/{1}", count, userNames.size());
                             }
-                            JCoFunction functionDetail = destination.getRepository().getFunction("BAPI_USER_GET_DETAIL");
-                            functionDetail.getImportParameterList().setValue(USERNAME, userList.getString(USERNAME));
+                            JCoFunction functionDetail = transport.getFunction("BAPI_USER_GET_DETAIL");
+                            functionDetail.getImportParameterList().setValue(USERNAME, userName);
 
                             executeFunction(functionDetail);
 
-                            JCoFunction userLoginInfoFunc = runUserLoginInfoFunction(userList.getString(USERNAME));
+                            JCoFunction userLoginInfoFunc = runUserLoginInfoFunction(userName);
 
                             ConnectorObject connectorObject = convertUserToConnectorObject(functionDetail, userLoginInfoFunc);
                             boolean finish = !handler.handle(connectorObject);
                             if (finish) {
                                 LOG.ok("finishing read");
+                                stopped = true;
                                 break;
                             }
-
-                        } while (userList.nextRow());
+                            if (checkpoint != null) {
+                                checkpoint.delivered(userName);
+                            }
+                        }
+                        // checkpoint is kept when the handler stopped the read
+                        completed = !stopped;
+                    } finally {
+                        finishScanCheckpoint(checkpoint, completed);
                     }
                 }
             }
@@ -963,7 +1210,136 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         }
     }
     
-    private SapFilter addBaseToAccountQuery(SapFilter baseQuery, SapFilter accountQuery) {
+    /**
+     * @return checkpoint of full read of users with given query, null if checkpoints are disabled
+     */
+    private ScanCheckpoint openScanCheckpoint(SapFilter query) {
+        Integer interval = configuration.getCheckpointInterval();
+        if (interval == null || interval <= 0) {
+            return null;
+        }
+        String scan = "query=" + query + ", baseAccountQuery=" + baseAccountQuery;
+        File file = getStateFile("USERS-" + ContentFingerprint.toHex(TableSnapshot.hash(scan)) + ".checkpoint",
+                "store checkpoints of reading users");
+        return new ScanCheckpoint(file, scan, interval);
+    }
+
+    private boolean isResume(OperationOptions options) {
+        return options != null && Boolean.TRUE.equals(options.getOptions().get(OPTION_RESUME_FROM_CHECKPOINT));
+    }
+
+    private void finishScanCheckpoint(ScanCheckpoint checkpoint, boolean completed) throws IOException {
+        if (checkpoint == null) {
+            return;
+        }
+        if (completed) {
+            checkpoint.complete();
+        } else {
+            checkpoint.saveQuietly();
+        }
+    }
+
+    private boolean isPartitionedReconciliation() {
+        String[] partitions = configuration.getReconciliationPartitions();
+        return partitions != null && partitions.length > 0 && !(partitions.length == 1 && StringUtil.isBlank(partitions[0]));
+    }
+
+    /**
+     * Read all users partitioned by username ranges (reconciliationPartitions). Partitions are listed and their users
+     * read in parallel, but at most reconciliationThreads RFC calls of all partitioned reads of the destination run at once.
+     * Users are handed over sorted by username.
+     *
+     * @param after username of the last already handled user, scan continues after it, null to read all
+     * @param checkpoint where to store last handled user, may be null
+     * @return false if handler stopped processing
+     */
+    private boolean executePartitionedAccountScan(ResultsHandler handler, String after, ScanCheckpoint checkpoint) throws Exception {
+        List<UserPartition> partitions = new ArrayList<>();
+        for (UserPartition partition : UserPartition.of(configuration.getReconciliationPartitions())) {
+            if (after == null || !partition.isBeforeOrAt(after)) {
+                partitions.add(partition);
+            }
+        }
+        int threads = configuration.getReconciliationThreads() == null ? 1 : Math.max(1, configuration.getReconciliationThreads());
+        Semaphore rfcPermits = rfcExecutor.getReconciliationPermits(threads);
+        LOG.info("Partitioned read of users after {0}, partitions: {1}, threads: {2}", after, partitions, threads);
+
+        int[] total = {0};
+        try (OrderedFetcher listing = new OrderedFetcher(Math.min(threads, partitions.size()), "sap-recon-list");
+             OrderedFetcher details = new OrderedFetcher(threads, "sap-recon-read")) {
+            return listing.run(partitions, partition -> {
+                rfcPermits.acquire();
+                try {
+                    return new AbstractMap.SimpleEntry<>(partition, listPartition(partition, after));
+                } finally {
+                    rfcPermits.release();
+                }
+            }, listed -> {
+                UserPartition partition = listed.getKey();
+                List<String> userNames = listed.getValue();
+                LOG.info("Partition {0}: reading {1} users", partition, userNames.size());
+                int[] count = {0};
+                String[] last = {null};
+                boolean finished = details.run(userNames, userName -> {
+                    rfcPermits.acquire();
+                    try {
+                        JCoFunction functionDetail = transport.getFunction("BAPI_USER_GET_DETAIL");
+                        functionDetail.getImportParameterList().setValue(USERNAME, userName);
+                        executeFunction(functionDetail);
+
+                        JCoFunction userLoginInfoFunc = runUserLoginInfoFunction(userName);
+
+                        return convertUserToConnectorObject(functionDetail, userLoginInfoFunc);
+                    } finally {
+                        rfcPermits.release();
+                    }
+                }, connectorObject -> {
+                    if (!handler.handle(connectorObject)) {
+                        return false;
+                    }
+                    last[0] = connectorObject.getName().getNameValue();
+                    if (checkpoint != null) {
+                        checkpoint.delivered(last[0]);
+                    }
+                    if (++count[0] % 100 == 0) {
+                        LOG.ok("Partition {0}: processed {1}/{2}, last user: {3}", partition, count[0], userNames.size(), last[0]);
+                    }
+                    return true;
+                });
+                total[0] += count[0];
+                LOG.info("Partition {0}: {1} {2} of {3} users, last user: {4}, total: {5}",
+                        partition, finished ? "finished" : "stopped after", count[0], userNames.size(), last[0], total[0]);
+                return finished;
+            });
+        }
+    }
+
+    /**
+     * @return sorted usernames of partition (also with baseAccountQuery), only after given username if not null
+     */
+    private List<String> listPartition(UserPartition partition, String after) throws JCoException {
+        JCoFunction function = transport.getFunction("BAPI_USER_GETLIST");
+        if (function == null)
+            throw new RuntimeException("BAPI_USER_GETLIST not found in SAP.");
+        prepareFilters(function, addBaseToAccountQuery(baseAccountQuery, partition.toFilter(after)));
+        executeFunction(function);
+
+        List<String> userNames = new ArrayList<>();
+        JCoTable userList = function.getTableParameterList().getTable("USERLIST");
+        userList.firstRow();
+        if (userList.getNumRows() > 0) {
+            do {
+                String userName = userList.getString(USERNAME);
+                if (partition.contains(userName) && (after == null || userName.compareTo(after) > 0)) {
+                    userNames.add(userName);
+                }
+            } while (userList.nextRow());
+        }
+        Collections.sort(userNames);
+        return userNames;
+    }
+
+    SapFilter addBaseToAccountQuery(SapFilter baseQuery, SapFilter accountQuery) {
     	if (accountQuery == null) {
     		return baseQuery;
     	} else if(baseQuery == null) {
@@ -1001,7 +1377,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
     	}
     }
 
-    private void prepareFilters(JCoFunction function, SapFilter query) {
+    void prepareFilters(JCoFunction function, SapFilter query) {
 
         if (query == null) {
             return; // empty filter
@@ -1025,6 +1401,9 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                 exp.setValue("FIELD", query.getField());
             }
             exp.setValue("LOW", query.getValue());
+            if (query.getHighValue() != null) {
+                exp.setValue("HIGH", query.getHighValue());
+            }
         }
     }
 
@@ -1033,7 +1412,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             return null;
         }
 
-        JCoFunction function = destination.getRepository().getFunction("SUSR_GET_ADMIN_USER_LOGIN_INFO");
+        JCoFunction function = transport.getFunction("SUSR_GET_ADMIN_USER_LOGIN_INFO");
         function.getImportParameterList().setValue("USERID", userName);
 
         executeFunction(function);
@@ -1041,13 +1420,94 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         return function;
     }
 
+    /**
+     * All RFC calls go over this method. Reading calls failed because of transient error are retried,
+     * see {@link RetryPolicy}.
+     */
+    private void execute(JCoFunction function) throws JCoException {
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                rfcExecutor.execute(function, transport, priority);
+                return;
+            } catch (JCoException e) {
+                if (!rfcRetryPolicy.shouldRetry(function.getName(), e, attempt, transport.isStateful(), retryBudget)) {
+                    throw e;
+                }
+                retry(function, e, attempt);
+            } finally {
+                OperationSummary summary = operationSummary;
+                if (summary != null) {
+                    summary.rfc(function.getName(), System.nanoTime() - start, RfcExecutor.countRows(function));
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait before the next attempt of failed call.
+     */
+    private void retry(JCoFunction function, JCoException e, int attempt) {
+        long backoff = rfcRetryPolicy.backoffMillis(attempt);
+        LOG.warn("RFC call {0} failed in attempt {1} of {2}, retrying in {3} ms: {4}", function.getName(), attempt,
+                rfcRetryPolicy.getMaxAttempts(), backoff, e.toString());
+        rfcExecutor.getMetrics(function.getName()).retried();
+        OperationSummary summary = operationSummary;
+        if (summary != null) {
+            summary.retry(function.getName());
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(backoff);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrupted while waiting to retry " + function.getName(), ie);
+        }
+    }
+
+    /**
+     * Object read from SAP was not handed over.
+     */
+    private void filtered() {
+        OperationSummary summary = operationSummary;
+        if (summary != null) {
+            summary.filtered();
+        }
+    }
+
+    private OperationSummary startOperation(String operation, ObjectClass objectClass) {
+        OperationSummary summary = new OperationSummary(operation, objectClass, configuration.getFinalDestinationName());
+        operationSummary = summary;
+        retryBudget = rfcRetryPolicy.newBudget();
+        objectLog = newObjectLog();
+        return summary;
+    }
+
+    private static LazyLog.Sampler newObjectLog() {
+        return new LazyLog.Sampler(LOG, OBJECT_LOG_FIRST, OBJECT_LOG_EVERY);
+    }
+
+    private void finishOperation(OperationSummary summary) {
+        summary.finish();
+        operationSummary = null;
+        retryBudget = null;
+        lastOperationSummary = summary;
+        LOG.info("Operation summary: {0}", summary);
+    }
+
+    /**
+     * @return summary of the last finished executeQuery, create, update, delete or sync, null if there was none
+     */
+    public OperationSummary getLastOperationSummary() {
+        return lastOperationSummary;
+    }
+
     private List<String> executeFunction(JCoFunction function) throws JCoException {
-        function.execute(destination);
+        execute(function);
 
         return parseReturnMessages(function);
     }
 
-    private void getDataFromBapiFunction(JCoFunction function, String[] parameterList, ConnectorObjectBuilder builder) throws JCoException {
+    private void getDataFromBapiFunction(JCoFunction function, String[] parameterList, Map<String, Attribute> attributes) throws JCoException {
         List<String> parameters = null;
         JCoParameterList epl = function.getExportParameterList();
         if (parameterList == null) {
@@ -1069,15 +1529,15 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                 if (initialized) // maybe not null? (not :()
                 {
                     if ("java.lang.String".equals(className)) {
-                        addAttr(builder, attrName, structure.getString(name));
+                        addAttr(attributes, attrName, structure.getString(name));
                     } else if ("java.util.Date".equals(className)) {
-                        addAttr(builder, attrName, structure.getDate(name));
+                        addAttr(attributes, attrName, structure.getDate(name));
                     } else if ("java.math.BigDecimal".equals(className)) {
-                        addAttr(builder, attrName, structure.getBigDecimal(name));
+                        addAttr(attributes, attrName, structure.getBigDecimal(name));
                     } else if ("byte[]".equals(className)) {
-                        addAttr(builder, attrName, structure.getByteArray(name));
+                        addAttr(attributes, attrName, structure.getByteArray(name));
                     } else {
-                        addAttr(builder, attrName, structure.getString(name));
+                        addAttr(attributes, attrName, structure.getString(name));
                         LOG.warn("TODO: implement better className: " + className + " for attribute: " + attrName);
                     }
                 }
@@ -1085,41 +1545,49 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         }
     }
     
-    private ConnectorObject convertUserToConnectorObject(JCoFunction function, JCoFunction userLoginInfoFunc) throws JCoException, TransformerException, ParserConfigurationException {
+    ConnectorObject convertUserToConnectorObject(JCoFunction function, JCoFunction userLoginInfoFunc) throws JCoException, TransformerException, ParserConfigurationException {
+        long start = System.nanoTime();
         String userName = function.getImportParameterList().getString(USERNAME);
 
-        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
-        builder.setUid(userName);
-        builder.setName(userName);
+        // attributes by name as in ConnectorObjectBuilder, so the fingerprint can be computed before the object is built
+        Map<String, Attribute> attributes = new LinkedHashMap<>();
+        attributes.put(Uid.NAME, new Uid(userName));
+        attributes.put(Name.NAME, new Name(userName));
 
-        getDataFromBapiFunction(function, READ_WRITE_PARAMETERS, builder);
-        getDataFromBapiFunction(function, readOnlyParams, builder);
+        getDataFromBapiFunction(function, READ_WRITE_PARAMETERS, attributes);
+        getDataFromBapiFunction(function, readOnlyParams, attributes);
 
         JCoStructure islocked = function.getExportParameterList().getStructure("ISLOCKED");
         boolean considerGlobalLock = configuration.getConsiderGlobalLock();
         Boolean enabled = isAccountEnabled(islocked, considerGlobalLock); 
         
-        addAttr(builder, OperationalAttributes.ENABLE_NAME, enabled);
+        addAttr(attributes, OperationalAttributes.ENABLE_NAME, enabled);
         // we don't have BAPI method to unlock only this
         Boolean lock_out = "L".equals(islocked.getString("WRNG_LOGON")); // U - unlocked, L - locked
-        addAttr(builder, OperationalAttributes.LOCK_OUT_NAME, lock_out);
+        addAttr(attributes, OperationalAttributes.LOCK_OUT_NAME, lock_out);
 
         JCoStructure logonData = function.getExportParameterList().getStructure("LOGONDATA");
         Date gltgv = logonData.getDate(GLTGV);
-        addAttr(builder, OperationalAttributes.ENABLE_DATE_NAME, gltgv == null ? null : gltgv.getTime());
+        addAttr(attributes, OperationalAttributes.ENABLE_DATE_NAME, gltgv == null ? null : gltgv.getTime());
         Date gltgb = logonData.getDate(GLTGB);
-        addAttr(builder, OperationalAttributes.DISABLE_DATE_NAME, gltgb == null ? null : gltgb.getTime());
+        addAttr(attributes, OperationalAttributes.DISABLE_DATE_NAME, gltgb == null ? null : gltgb.getTime());
 
         // tables and his id's
+        long xmlLength = 0;
         for (String tableName : configuration.getTableParameterNames()) {
             Table table = new Table(function.getTableParameterList().getTable(tableName));
             if(configuration.getHideIndirectActivitygroups() && ACTIVITYGROUPS.equals(tableName)){
                 table.getValues().removeIf(entry -> StringUtil.isNotBlank(entry.getByAttribute("ORG_FLAG")));
             }
-            builder.addAttribute(AttributeBuilder.build(tableName, table.getXmls()));
+            List<String> xmls = table.getXmls();
+            for (String xml : xmls) {
+                xmlLength += xml.length();
+            }
+            attributes.put(tableName, AttributeBuilder.build(tableName, xmls));
             if (TABLETYPE_PARAMETER_KEYS.containsKey(tableName)) {
                 String attribute = TABLETYPE_PARAMETER_KEYS.get(tableName);
-                builder.addAttribute(AttributeBuilder.build(tableName + SEPARATOR + TABLETYPE_PARAMETER_KEYS.get(tableName), table.getIds(attribute)));
+                String idsName = tableName + SEPARATOR + attribute;
+                attributes.put(idsName, AttributeBuilder.build(idsName, table.getIds(attribute)));
             }
         }
 
@@ -1127,15 +1595,26 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             JCoParameterList epl = userLoginInfoFunc.getExportParameterList();
 
             Date lastLogonDate = epl.getDate("LAST_LOGON_DATE");
-            addAttr(builder, USER_LOGIN_INFO + SEPARATOR + "LAST_LOGON_DATE", lastLogonDate == null ? null : lastLogonDate.getTime());
-            addAttr(builder, USER_LOGIN_INFO + SEPARATOR + "LOCK_STATUS", epl.getString("LOCK_STATUS"));
-            addAttr(builder, USER_LOGIN_INFO + SEPARATOR + "PASSWORD_STATUS", epl.getString("PASSWORD_STATUS"));
+            addAttr(attributes, USER_LOGIN_INFO + SEPARATOR + "LAST_LOGON_DATE", lastLogonDate == null ? null : lastLogonDate.getTime());
+            addAttr(attributes, USER_LOGIN_INFO + SEPARATOR + "LOCK_STATUS", epl.getString("LOCK_STATUS"));
+            addAttr(attributes, USER_LOGIN_INFO + SEPARATOR + "PASSWORD_STATUS", epl.getString("PASSWORD_STATUS"));
         }
 
-        ConnectorObject connectorObject = builder.build();
+        if (configuration.getContentFingerprint()) {
+            long fingerprint = ContentFingerprint.of(attributes.values(), CONTENT_FINGERPRINT);
+            attributes.put(CONTENT_FINGERPRINT, AttributeBuilder.build(CONTENT_FINGERPRINT, ContentFingerprint.toHex(fingerprint)));
+        }
+        ConnectorObject connectorObject = new ConnectorObjectBuilder().addAttributes(attributes.values()).build();
 
-        LOG.ok("convertUserToConnectorObject, user: {0}, connectorObject: {1}",
+        objectLog.ok("convertUserToConnectorObject, user: {0}, connectorObject: {1}",
                 userName, connectorObject);
+        long conversion = System.nanoTime() - start;
+        rfcExecutor.getMetrics(RfcExecutor.CONVERSION).record(conversion, null);
+        OperationSummary summary = operationSummary;
+        if (summary != null) {
+            summary.conversion(conversion);
+            summary.xml(xmlLength);
+        }
 
         return connectorObject;
     }
@@ -1203,11 +1682,25 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             }
         }
 
-        LOG.ok("Return messages: " + ret + " for function: " + function.getName());
+        LOG.ok("Return messages: {0} for function: {1}", ret, function.getName());
         return ret;
     }
 
     private <T> void addAttr(ConnectorObjectBuilder builder, String attrName, T attrVal) {
+        Attribute attribute = toAttr(attrName, attrVal);
+        if (attribute != null) {
+            builder.addAttribute(attribute);
+        }
+    }
+
+    private <T> void addAttr(Map<String, Attribute> attributes, String attrName, T attrVal) {
+        Attribute attribute = toAttr(attrName, attrVal);
+        if (attribute != null) {
+            attributes.put(attrName, attribute);
+        }
+    }
+
+    private <T> Attribute toAttr(String attrName, T attrVal) {
         // null value or "" (empty string) we don't return
         boolean isNull = false;
         if (attrVal == null) {
@@ -1216,25 +1709,40 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             isNull = true;
         }
 
-        if (!isNull) {
-            if (attrVal instanceof Date) {
-                builder.addAttribute(attrName, ((Date) attrVal).getTime());
-            } else if (attrVal instanceof byte[]) {
-                builder.addAttribute(attrName, ((byte[]) attrVal));
-            } else {
-                builder.addAttribute(attrName, attrVal);
-            }
+        if (isNull) {
+            return null;
+        }
+        if (attrVal instanceof Date) {
+            return AttributeBuilder.build(attrName, ((Date) attrVal).getTime());
+        } else if (attrVal instanceof byte[]) {
+            return AttributeBuilder.build(attrName, ((byte[]) attrVal));
+        } else {
+            return AttributeBuilder.build(attrName, attrVal);
         }
     }
 
 
     @Override
     public Uid create(ObjectClass objectClass, Set<Attribute> attributes, OperationOptions options) {
+        OperationSummary summary = startOperation("create", objectClass);
+        try {
+            Uid result = createObject(objectClass, attributes, options);
+            summary.delivered();
+            return result;
+        } catch (RuntimeException e) {
+            summary.failed(e);
+            throw e;
+        } finally {
+            finishOperation(summary);
+        }
+    }
+
+    private Uid createObject(ObjectClass objectClass, Set<Attribute> attributes, OperationOptions options) {
         if (objectClass.is(ObjectClass.ACCOUNT_NAME)) {    // __ACCOUNT__
             boolean needRollback = false;
             try {
                 if (configuration.getUseTransaction()) {
-                    JCoContext.begin(destination);
+                    transport.begin();
                 }
 
                 Uid uid = createUser(attributes);
@@ -1266,7 +1774,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                         LOG.warn(e, e.toString());
                     }
                     try {
-                        JCoContext.end(destination);
+                        transport.end();
                     } catch (JCoException e) {
                         LOG.warn(e, e.toString());
                     }
@@ -1281,7 +1789,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             TransformerException {
         LOG.info("createUser attributes: {0}", attributes);
 
-        JCoFunction function = destination.getRepository().getFunction("BAPI_USER_CREATE1");
+        JCoFunction function = transport.getFunction("BAPI_USER_CREATE1");
         if (function == null)
             throw new RuntimeException("BAPI_USER_CREATE1 not found in SAP.");
 
@@ -1304,7 +1812,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         handlePassword(function, attributes, userName, false, true);
 
         String savedUserName = function.getImportParameterList().getString(USERNAME);
-        LOG.info("Saved UserName: {0}, importParameterList: {1}, importParameterList: {2}", savedUserName, function.getImportParameterList().toXML(), function.getTableParameterList().toXML());
+        LOG.info("Saved UserName: {0}, importParameterList: {1}, importParameterList: {2}", savedUserName, LazyLog.xml(function.getImportParameterList()), LazyLog.xml(function.getTableParameterList()));
 
         // assign ACTIVITYGROUPS if needed
         assignActivityGroups(attributes, userName);
@@ -1366,7 +1874,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                 executeFunction(function);
 
                 // and in next step, temp password we change to needed password
-                JCoFunction changePassFunction = destination.getRepository().getFunction("SUSR_USER_CHANGE_PASSWORD_RFC");
+                JCoFunction changePassFunction = transport.getFunction("SUSR_USER_CHANGE_PASSWORD_RFC");
                 if (changePassFunction == null)
                     throw new RuntimeException("SUSR_USER_CHANGE_PASSWORD_RFC not found in SAP.");
 
@@ -1383,7 +1891,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                     } else if (e.getGroup() == 126 && "190".equalsIgnoreCase(e.getMessageNumber())) {
                         LOG.warn("User " + userName + " is locked after too many failed logins, try to unlocking");
                         // try unlock user
-                        JCoFunction functionUnlock = destination.getRepository().getFunction("BAPI_USER_UNLOCK");
+                        JCoFunction functionUnlock = transport.getFunction("BAPI_USER_UNLOCK");
                         if (functionUnlock == null)
                             throw new RuntimeException("BAPI_USER_UNLOCK not found in SAP.");
 
@@ -1430,7 +1938,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
     }
 
     private void transactionCommit() throws JCoException {
-        JCoFunction function = destination.getRepository().getFunction("BAPI_TRANSACTION_COMMIT");
+        JCoFunction function = transport.getFunction("BAPI_TRANSACTION_COMMIT");
         if (function == null)
             throw new RuntimeException("BAPI_TRANSACTION_COMMIT not found in SAP.");
 
@@ -1440,7 +1948,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
     }
 
     private void transactionRollback() throws JCoException {
-        JCoFunction function = destination.getRepository().getFunction("BAPI_TRANSACTION_ROLLBACK");
+        JCoFunction function = transport.getFunction("BAPI_TRANSACTION_ROLLBACK");
         if (function == null)
             throw new RuntimeException("BAPI_TRANSACTION_ROLLBACK not found in SAP.");
 
@@ -1455,7 +1963,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         if (enableDate != null || disableDate != null) {
             JCoStructure logonStructure = importParameterList.getStructure("LOGONDATA");
             if (enableDate != null) {
-                logonStructure.setValue(GLTGV, SAP_DF.format(new Date(enableDate)));
+                logonStructure.setValue(GLTGV, formatDate(SAP_DF, new Date(enableDate)));
                 if (select) {
                     JCoStructure logonStructureX = importParameterList.getStructure("LOGONDATAX");
                     logonStructureX.setValue(GLTGV, SELECT);
@@ -1463,7 +1971,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                 }
             }
             if (disableDate != null) {
-                logonStructure.setValue(GLTGB, SAP_DF.format(new Date(disableDate)));
+                logonStructure.setValue(GLTGB, formatDate(SAP_DF, new Date(disableDate)));
                 if (select) {
                     JCoStructure logonStructureX = importParameterList.getStructure("LOGONDATAX");
                     logonStructureX.setValue(GLTGB, SELECT);
@@ -1662,11 +2170,24 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
 
     @Override
     public void delete(ObjectClass objectClass, Uid uid, OperationOptions operationOptions) {
+        OperationSummary summary = startOperation("delete", objectClass);
+        try {
+            deleteObject(objectClass, uid, operationOptions);
+            summary.delivered();
+        } catch (RuntimeException e) {
+            summary.failed(e);
+            throw e;
+        } finally {
+            finishOperation(summary);
+        }
+    }
+
+    private void deleteObject(ObjectClass objectClass, Uid uid, OperationOptions operationOptions) {
         if (objectClass.is(ObjectClass.ACCOUNT_NAME)) {
             try {
                 LOG.info("delete user, Uid: {0}", uid);
 
-                JCoFunction function = destination.getRepository().getFunction("BAPI_USER_DELETE");
+                JCoFunction function = transport.getFunction("BAPI_USER_DELETE");
                 function.getImportParameterList().setValue(USERNAME, uid.getUidValue());
                 executeFunction(function);
 
@@ -1680,11 +2201,25 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
 
     @Override
     public Uid update(ObjectClass objectClass, Uid uid, Set<Attribute> attributes, OperationOptions operationOptions) {
+        OperationSummary summary = startOperation("update", objectClass);
+        try {
+            Uid result = updateObject(objectClass, uid, attributes, operationOptions);
+            summary.delivered();
+            return result;
+        } catch (RuntimeException e) {
+            summary.failed(e);
+            throw e;
+        } finally {
+            finishOperation(summary);
+        }
+    }
+
+    private Uid updateObject(ObjectClass objectClass, Uid uid, Set<Attribute> attributes, OperationOptions operationOptions) {
         if (objectClass.is(ObjectClass.ACCOUNT_NAME)) {
             boolean needRollback = false;
             try {
                 if (configuration.getUseTransaction()) {
-                    JCoContext.begin(destination);
+                    transport.begin();
                 }
 
                 Uid retUid = updateUser(uid, attributes);
@@ -1716,7 +2251,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                         LOG.warn(e, e.toString());
                     }
                     try {
-                        JCoContext.end(destination);
+                        transport.end();
                     } catch (JCoException e) {
                         LOG.warn(e, e.toString());
                     }
@@ -1731,7 +2266,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             throws JCoException, ClassNotFoundException, TransformerException {
         LOG.info("updateUser {0} attributes: {1}", uid, attributes);
 
-        JCoFunction function = destination.getRepository().getFunction("BAPI_USER_CHANGE");
+        JCoFunction function = transport.getFunction("BAPI_USER_CHANGE");
         if (function == null)
             throw new RuntimeException("BAPI_USER_CHANGE not found in SAP.");
 
@@ -1760,7 +2295,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         boolean updateNeededPassword = handlePassword(function, attributes, userName, true, updateNeededCustom || updateNeededGeneric || updateNeededTable);
 
         String changedUserName = function.getImportParameterList().getString(USERNAME);
-        LOG.info("Changed? {0}, UserName: {1}, importParameterList: {2}, tableParameterList: {3}", (updateNeededCustom || updateNeededGeneric || updateNeededTable || updateNeededPassword), changedUserName, function.getImportParameterList().toXML(), function.getTableParameterList().toXML());
+        LOG.info("Changed? {0}, UserName: {1}, importParameterList: {2}, tableParameterList: {3}", (updateNeededCustom || updateNeededGeneric || updateNeededTable || updateNeededPassword), changedUserName, LazyLog.xml(function.getImportParameterList()), LazyLog.xml(function.getTableParameterList()));
 
         // assign ACTIVITYGROUPS if needed
         assignActivityGroups(attributes, userName);
@@ -1793,7 +2328,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
                 enableOrDisableUser(true, userName);
             } else if (enable == null) {
                 // we need to read administrative status, enable account to unlock it and if old status was disabled, disable it
-                JCoFunction function = destination.getRepository().getFunction("BAPI_USER_GET_DETAIL");
+                JCoFunction function = transport.getFunction("BAPI_USER_GET_DETAIL");
                 function.getImportParameterList().setValue(USERNAME, userName);
                 executeFunction(function);
 
@@ -1817,7 +2352,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
 
     private void enableOrDisableUser(boolean enable, String userName) throws JCoException {
         String functionName = enable ? "BAPI_USER_UNLOCK" : "BAPI_USER_LOCK";
-        JCoFunction functionLock = destination.getRepository().getFunction(functionName);
+        JCoFunction functionLock = transport.getFunction(functionName);
         if (functionLock == null)
             throw new RuntimeException(functionName + " not found in SAP.");
 
@@ -1842,7 +2377,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         //load current activitygroups from sap to avoid resetting roles if merge config is enabled
         Optional<Table> tableOldActivitygroups = Optional.empty();
         if(configuration.getMergeAgrNameWithExistingAcitivitygroupsValue() == Boolean.TRUE){
-            JCoFunction functionDetail = destination.getRepository().getFunction("BAPI_USER_GET_DETAIL");
+            JCoFunction functionDetail = transport.getFunction("BAPI_USER_GET_DETAIL");
             if (functionDetail == null)
                 throw new RuntimeException("BAPI_USER_GET_DETAIL not found in SAP.");
 
@@ -1851,7 +2386,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
             tableOldActivitygroups = Optional.of(new Table(functionDetail.getTableParameterList().getTable(ACTIVITYGROUPS)));
         }
 
-        JCoFunction functionAssign = destination.getRepository().getFunction("BAPI_USER_ACTGROUPS_ASSIGN");
+        JCoFunction functionAssign = transport.getFunction("BAPI_USER_ACTGROUPS_ASSIGN");
         if (functionAssign == null)
             throw new RuntimeException("BAPI_USER_ACTGROUPS_ASSIGN not found in SAP.");
 
@@ -1889,7 +2424,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         }
 
         executeFunction(functionAssign);
-        LOG.info("ACTGROUPS_ASSIGN modify {0}, TPL: {1}", activityGroups.isUpdate(), functionAssign.getTableParameterList().toXML());
+        LOG.info("ACTGROUPS_ASSIGN modify {0}, TPL: {1}", activityGroups.isUpdate(), LazyLog.xml(functionAssign.getTableParameterList()));
     }
     private String applyDeltaToItemAttribute(Item newItem,Optional<Item> oldItem, String attributeName){
         //if the item is an xml string it can provide all the values
@@ -1908,7 +2443,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         } catch (Exception e) {
             throw new InvalidAttributeValueException("Not parsable PROFILES in attributes " + attributes + ", " + e, e);
         }
-        JCoFunction functionAssign = destination.getRepository().getFunction("BAPI_USER_PROFILES_ASSIGN");
+        JCoFunction functionAssign = transport.getFunction("BAPI_USER_PROFILES_ASSIGN");
         if (functionAssign == null)
             throw new RuntimeException("BAPI_USER_PROFILES_ASSIGN not found in SAP.");
 
@@ -1937,35 +2472,277 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         if (profiles.isUpdate()) {
             executeFunction(functionAssign);
         }
-        LOG.info("PROFILES_ASSIGN modify {0}, TPL: {1}", profiles.isUpdate(), functionAssign.getTableParameterList().toXML());
+        LOG.info("PROFILES_ASSIGN modify {0}, TPL: {1}", profiles.isUpdate(), LazyLog.xml(functionAssign.getTableParameterList()));
     }
 
     @Override
     public void sync(ObjectClass objectClass, SyncToken syncToken, SyncResultsHandler syncResultsHandler, OperationOptions operationOptions) {
+        priority = RfcPriority.BULK;
+        OperationSummary summary = startOperation("sync", objectClass);
+        try {
+            syncObjects(objectClass, syncToken, summary.wrapSync(syncResultsHandler), operationOptions);
+        } catch (RuntimeException e) {
+            summary.failed(e);
+            throw e;
+        } finally {
+            priority = RfcPriority.INTERACTIVE;
+            finishOperation(summary);
+        }
+    }
+
+    private void syncObjects(ObjectClass objectClass, SyncToken syncToken, SyncResultsHandler syncResultsHandler, OperationOptions operationOptions) {
         if (objectClass.is(ObjectClass.ACCOUNT_NAME)) {    // __ACCOUNT__
             try {
                 syncUser(syncToken, syncResultsHandler, operationOptions);
             } catch (Exception e) {
                 throw new ConnectorIOException(e.getMessage(), e);
+            } finally {
+                saveFingerprintCache();
+            }
+        } else if (findTableName(objectClass) != null) {
+            try {
+                syncTable(findTableName(objectClass), syncToken, syncResultsHandler);
+            } catch (ConnectorException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ConnectorIOException(e.getMessage(), e);
             }
         } else {
             throw new UnsupportedOperationException("Unsupported object class " + objectClass);
         }
     }
 
-    private void syncUser(SyncToken token, SyncResultsHandler handler, OperationOptions options) throws JCoException, ParseException, TransformerException, ParserConfigurationException {
-        LOG.info("syncUser, token: {0}, options: {1}", token, options);
-        Date fromToken = null;
+    /**
+     * LiveSync of table object class, actual table content is compared with local snapshot of row hashes.
+     * Sync token is generation of the snapshot.
+     */
+    private void syncTable(String tableName, SyncToken token, SyncResultsHandler handler) throws JCoException, IOException {
+        LOG.info("syncTable: {0}, token: {1}", tableName, token);
+        Long fromGeneration = null;
         if (token != null) {
             Object fromTokenValue = token.getValue();
             if (fromTokenValue instanceof Long) {
-                fromToken = new Date((Long) fromTokenValue);
+                fromGeneration = (Long) fromTokenValue;
             } else {
                 LOG.warn("Synchronization token is not long, ignoring");
             }
         }
 
-        JCoFunction function = destination.getRepository().getFunction("BAPI_USER_GETLIST");
+        ObjectClass objectClass = new ObjectClass(configuration.getTableAliases().get(tableName));
+        File file = getTableSnapshotFile(tableName);
+        synchronized (TableSnapshot.lock(file)) {
+            try (TableSnapshot snapshot = TableSnapshot.open(file, fromGeneration)) {
+                Set<String> actualKeys = new HashSet<>();
+                int[] changed = {0, 0, 0}; // created, updated, deleted
+
+                boolean finished = readTableRows(tableName, value -> {
+                    String key = getTableRowKey(tableName, value);
+                    if (StringUtil.isEmpty(key) || !actualKeys.add(key)) {
+                        return true;
+                    }
+                    List<Attribute> subTableAttributes = new ArrayList<>();
+                    long hash = hashTableRow(tableName, key, value, subTableAttributes);
+                    Long oldHash = snapshot.getHash(key);
+                    if (oldHash != null && oldHash == hash) {
+                        return true;
+                    }
+
+                    ConnectorObjectBuilder builder = buildTableObject(tableName, key, value, new HashMap<>());
+                    builder.addAttributes(subTableAttributes);
+
+                    SyncDeltaBuilder deltaBuilder = new SyncDeltaBuilder();
+                    deltaBuilder.setToken(new SyncToken(snapshot.getGeneration() + 1));
+                    deltaBuilder.setDeltaType(oldHash == null ? SyncDeltaType.CREATE : SyncDeltaType.UPDATE);
+                    deltaBuilder.setObject(builder.build());
+                    deltaBuilder.setUid(new Uid(key));
+                    if (!handler.handle(deltaBuilder.build())) {
+                        return false;
+                    }
+                    changed[oldHash == null ? 0 : 1]++;
+                    try {
+                        snapshot.put(key, hash);
+                    } catch (IOException e) {
+                        throw new ConnectorIOException("Can't write table snapshot " + file + ": " + e, e);
+                    }
+                    return true;
+                });
+
+                if (finished) {
+                    List<String> deletedKeys = new ArrayList<>();
+                    for (String key : snapshot.getKeys()) {
+                        if (!actualKeys.contains(key)) {
+                            deletedKeys.add(key);
+                        }
+                    }
+                    for (String key : deletedKeys) {
+                        SyncDeltaBuilder deltaBuilder = new SyncDeltaBuilder();
+                        deltaBuilder.setToken(new SyncToken(snapshot.getGeneration() + 1));
+                        deltaBuilder.setDeltaType(SyncDeltaType.DELETE);
+                        deltaBuilder.setObjectClass(objectClass);
+                        deltaBuilder.setUid(new Uid(key));
+                        if (!handler.handle(deltaBuilder.build())) {
+                            finished = false;
+                            break;
+                        }
+                        changed[2]++;
+                        snapshot.remove(key);
+                    }
+                }
+
+                if (finished && handler instanceof SyncTokenResultsHandler) {
+                    ((SyncTokenResultsHandler) handler).handleResult(new SyncToken(snapshot.getGeneration()));
+                }
+                snapshot.compactIfNeeded();
+
+                LOG.info("{0} row(s) created, {1} updated, {2} deleted in table {3}, snapshot: {4}",
+                        changed[0], changed[1], changed[2], tableName, snapshot);
+            }
+        }
+    }
+
+    /**
+     * Hash of table row in snapshot, with content of its sub-tables, so their changes are also synchronized.
+     * Sub-tables are read for each row, as in search.
+     *
+     * @param subTableAttributes filled with sub-table attributes of the row
+     */
+    private long hashTableRow(String tableName, String key, String value, List<Attribute> subTableAttributes) {
+        long hash = TableSnapshot.hash(value);
+        if (!configuration.getSubTablesMetadata().containsKey(tableName)) {
+            return hash;
+        }
+        Map<String, String> rootValues = new LinkedHashMap<>();
+        buildTableObject(tableName, key, value, rootValues);
+        subTableAttributes.addAll(getSubTableAttributes(tableName, key, rootValues));
+        return hash * 31 + ContentFingerprint.of(subTableAttributes, null);
+    }
+
+    private SyncToken getLatestTableSyncToken(String tableName) throws JCoException, IOException {
+        Map<String, Long> state = new HashMap<>();
+        readTableRows(tableName, value -> {
+            String key = getTableRowKey(tableName, value);
+            if (!StringUtil.isEmpty(key) && !state.containsKey(key)) {
+                state.put(key, hashTableRow(tableName, key, value, new ArrayList<>()));
+            }
+            return true;
+        });
+
+        File file = getTableSnapshotFile(tableName);
+        long generation;
+        synchronized (TableSnapshot.lock(file)) {
+            generation = TableSnapshot.reset(file, state);
+        }
+        SyncToken syncToken = new SyncToken(generation);
+        LOG.info("returning SyncToken: {0} for table {1} with {2} rows", syncToken, tableName, state.size());
+        return syncToken;
+    }
+
+    private File getTableSnapshotFile(String tableName) {
+        return getStateFile(tableName + ".snapshot", "LiveSync table " + tableName);
+    }
+
+    /**
+     * File in stateDirectory, specific for this destination.
+     *
+     * @param usage what needs the file, used in error message
+     */
+    private File getStateFile(String name, String usage) {
+        if (StringUtil.isBlank(configuration.getStateDirectory())) {
+            throw new ConfigurationException("stateDirectory is not set, it's needed to " + usage);
+        }
+        String fileName = configuration.getFinalDestinationName() + "-" + name;
+        return new File(configuration.getStateDirectory(), fileName.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+    private interface TableRowHandler {
+        /**
+         * @param value whole table row (WA)
+         * @return false to stop reading
+         */
+        boolean handle(String value);
+    }
+
+    /**
+     * Read all rows of table, optionally in chunks of tableReadChunkSize rows.
+     *
+     * @return true if all rows was read, false if handler stopped reading
+     */
+    private boolean readTableRows(String tableName, TableRowHandler handler) throws JCoException {
+        int chunkSize = configuration.getTableReadChunkSize() == null ? 0 : configuration.getTableReadChunkSize();
+        String fromKey = null;
+        while (true) {
+            JCoFunction function = transport.getFunction("RFC_GET_TABLE_ENTRIES");
+            if (function == null)
+                throw new RuntimeException("RFC_GET_TABLE_ENTRIES not found in SAP.");
+
+            function.getImportParameterList().setValue("TABLE_NAME", tableName);
+            if (chunkSize > 0) {
+                // FROM_KEY is inclusive, first row is the last row from previous chunk
+                function.getImportParameterList().setValue("MAX_ENTRIES", fromKey == null ? chunkSize : chunkSize + 1);
+            }
+            if (fromKey != null) {
+                function.getImportParameterList().setValue("FROM_KEY", fromKey);
+            }
+
+            try {
+                execute(function);
+            } catch (JCoException e) {
+                if ("TABLE_EMPTY".equals(e.getKey())) {
+                    return true;
+                }
+                throw e;
+            }
+
+            JCoTable entries = function.getTableParameterList().getTable("ENTRIES");
+            int numRows = entries.getNumRows();
+            LOG.ok("Read {0} rows from table {1}, from key: {2}", numRows, tableName, fromKey);
+
+            String lastKey = null;
+            for (int row = 0; row < numRows; row++) {
+                entries.setRow(row);
+                String value = entries.getString("WA");
+                lastKey = getTableRawKey(tableName, value);
+                if (row == 0 && fromKey != null && fromKey.equals(lastKey)) {
+                    continue;
+                }
+                if (!handler.handle(value)) {
+                    return false;
+                }
+            }
+
+            if (chunkSize <= 0 || numRows < (fromKey == null ? chunkSize : chunkSize + 1) || lastKey == null || lastKey.equals(fromKey)) {
+                return true;
+            }
+            fromKey = lastKey;
+        }
+    }
+
+    /**
+     * Raw key of table row as is used in FROM_KEY - all columns up to the last KEY column, without client (MANDT).
+     */
+    private String getTableRawKey(String tableName, String value) {
+        List<String> keyColumns = configuration.getTableKeys().get(tableName);
+        int start = -1;
+        int end = 0;
+        int index = 0;
+        for (Map.Entry<String, Integer> entry : configuration.getTableMetadatas().get(tableName).entrySet()) {
+            if (start < 0) {
+                start = "MANDT".equals(entry.getKey()) ? entry.getValue() : 0;
+            }
+            index += entry.getValue();
+            if (keyColumns.contains(entry.getKey())) {
+                end = index;
+            }
+        }
+        return value.substring(Math.min(start, value.length()), Math.min(end, value.length()));
+    }
+
+    private void syncUser(SyncToken token, SyncResultsHandler handler, OperationOptions options) throws Exception {
+        LOG.info("syncUser, token: {0}, options: {1}", token, options);
+        SyncPosition fromPosition = SyncPosition.fromToken(token);
+        Date fromToken = fromPosition == null ? null : new Date(fromPosition.getTimestamp());
+
+        JCoFunction function = transport.getFunction("BAPI_USER_GETLIST");
         if (function == null)
             throw new RuntimeException("BAPI_USER_GETLIST not found in SAP.");
 
@@ -1975,69 +2752,529 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
         exp.setValue("PARAMETER", "LASTMODIFIED");
         exp.setValue("OPTION", "GE");
         exp.setValue("FIELD", "MODDATE");
-        exp.setValue("LOW", SAP_DF.format(fromToken));
+        exp.setValue("LOW", formatDate(SAP_DF, fromToken));
 
         executeFunction(function);
 
         JCoTable userList = function.getTableParameterList().getTable("USERLIST");
-        LOG.info("Number of users to read details: " + userList.getNumRows());
-        int count = 0;
-        int changed = 0;
+        LOG.info("Number of users changed from day {0}: {1}", formatDate(SAP_DF, fromToken), userList.getNumRows());
+
+        // username -> last modification, null if not known yet (must be read over BAPI_USER_GET_DETAIL)
+        Map<String, Date> candidates = new LinkedHashMap<>();
+        userList.firstRow();
         if (userList.getNumRows() > 0) {
             do {
-                if (++count % 10 == 0) {
-                    LOG.ok("syncAccount: processing {0}. of {1} users, changed: {2}", count, userList.getNumRows(), changed);
-                }
-                String userName = userList.getString(USERNAME);
-                JCoFunction functionDetail = destination.getRepository().getFunction("BAPI_USER_GET_DETAIL");
-                functionDetail.getImportParameterList().setValue(USERNAME, userName);
+                candidates.put(userList.getString(USERNAME), null);
+            } while (userList.nextRow());
+        }
+
+        if (StringUtil.isNotBlank(configuration.getSyncPrefilterTable()) && !candidates.isEmpty()) {
+            prefilterSyncCandidates(candidates, fromPosition);
+        }
+
+        // username -> time of role assignment change, these users are changed also without newer LASTMODIFIED
+        Map<String, Long> roleChanges = Collections.emptyMap();
+        if (configuration.getSyncRoleAssignments()) {
+            roleChanges = readRoleAssignmentChanges(fromToken);
+            for (String userName : roleChanges.keySet()) {
+                candidates.putIfAbsent(userName, null);
+            }
+        }
+        Map<String, Long> finalRoleChanges = roleChanges;
 
+        // changes not processed yet, ordered by (last modification, username), only first syncBatchSize of them are kept
+        int batchSize = configuration.getSyncBatchSize() == null ? 0 : configuration.getSyncBatchSize();
+        TreeMap<SyncPosition, JCoFunction> batch = new TreeMap<>();
+        FingerprintCache fingerprints = getFingerprintCache();
+        int[] counts = new int[3]; // read, changed, not changed content
+        SyncPosition[] lastPosition = {fromPosition};
+        OrderedFetcher.Fetch<String, JCoFunction> readDetail = userName -> {
+            JCoFunction functionDetail = transport.getFunction("BAPI_USER_GET_DETAIL");
+            functionDetail.getImportParameterList().setValue(USERNAME, userName);
+            try {
                 executeFunction(functionDetail);
+            } catch (UnknownUidException e) {
+                // deleted in the meantime (or only role assignment of not existing user is left)
+                LOG.ok("syncAccount: user {0} not found, skipping", userName);
+                return null;
+            }
+            return functionDetail;
+        };
+        OrderedFetcher.Consumer<JCoFunction> collectChange = functionDetail -> {
+            if (++counts[0] % 10 == 0) {
+                LOG.ok("syncAccount: reading {0}. of {1} users, changed: {2}", counts[0], candidates.size(), counts[1]);
+            }
+            if (functionDetail == null) {
+                return true;
+            }
+            String userName = functionDetail.getImportParameterList().getString(USERNAME);
+            JCoStructure lastmodifiedStructure = functionDetail.getExportParameterList().getStructure("LASTMODIFIED");
+            String modDate = lastmodifiedStructure.getString("MODDATE");
+            String modTime = lastmodifiedStructure.getString("MODTIME");
+            // check not only date in filter, but also time and username of last processed change in the same second
+            long modification = parseTimestamp(DATE_TIME, modDate + " " + modTime);
+            boolean changed = fromPosition == null || fromPosition.isBefore(modification, userName);
+            Long roleChange = finalRoleChanges.get(userName);
+            if (roleChange != null && (fromPosition == null || fromPosition.isBefore(roleChange, userName))) {
+                // one delta for both changes, on position of the later one
+                modification = changed ? Math.max(modification, roleChange) : roleChange;
+                changed = true;
+            }
+            if (changed) {
+                counts[1]++;
+                batch.put(new SyncPosition(modification, userName), functionDetail);
+                if (batchSize > 0 && batch.size() > batchSize) {
+                    batch.pollLastEntry();
+                }
+            }
+            return true;
+        };
+
+        // with batch size, candidates with known time of change (from prefilter table or role assignments) are read
+        // in this order, only so many as needed for the batch; candidates without it are always read
+        List<SyncPosition> known = new ArrayList<>();
+        List<String> toRead = new ArrayList<>();
+        for (Map.Entry<String, Date> candidate : candidates.entrySet()) {
+            Long change = estimateSyncChange(candidate.getKey(), candidate.getValue(), roleChanges);
+            if (batchSize > 0 && change != null) {
+                known.add(new SyncPosition(change, candidate.getKey()));
+            } else {
+                toRead.add(candidate.getKey());
+            }
+        }
+        Collections.sort(known);
+
+        boolean finished;
+        try (OrderedFetcher fetcher = new OrderedFetcher(getSyncThreads(), "sap-sync")) {
+            int nextKnown = 0;
+            SyncPosition horizon;
+            while (true) {
+                int end = Math.min(known.size(), nextKnown + batchSize);
+                for (SyncPosition position : known.subList(nextKnown, end)) {
+                    toRead.add(position.getUserName());
+                }
+                nextKnown = end;
+                // known time is not after the real change, so users not read yet are changed after horizon
+                horizon = nextKnown < known.size() ? known.get(nextKnown) : null;
+                fetcher.run(toRead, readDetail, collectChange);
+                toRead.clear();
+                if (horizon == null || !batch.isEmpty() && batch.firstKey().compareTo(horizon) < 0) {
+                    break;
+                }
+            }
+            if (horizon != null) {
+                // processed next time, after changes of users not read yet
+                batch.tailMap(horizon, true).clear();
+            }
+            LOG.ok("syncAccount: read {0} of {1} candidates, {2} with known time of change",
+                    counts[0], candidates.size(), known.size());
+
+            // login info and conversion also in parallel, but deltas are handled in token order
+            finished = fetcher.run(batch.entrySet(), change -> {
+                SyncPosition position = change.getKey();
+                String userName = position.getUserName();
+
+                JCoFunction userLoginInfoFunc = runUserLoginInfoFunction(userName);
+
+                ConnectorObject connectorObject = convertUserToConnectorObject(change.getValue(), userLoginInfoFunc);
+
+                SyncDeltaBuilder deltaBuilder = new SyncDeltaBuilder();
+                deltaBuilder.setToken(position.toToken());
+
+                // all users are updated or created, we can differentiate create from update over
+                // user.getCreateDate().after(fromToken), but it's not necessary to do this
+                SyncDeltaType deltaType = SyncDeltaType.CREATE_OR_UPDATE;
+
+                deltaBuilder.setObject(connectorObject);
+                deltaBuilder.setUid(new Uid(userName));
+
+                deltaBuilder.setDeltaType(deltaType);
+                return deltaBuilder.build();
+            }, delta -> {
+                String userName = delta.getUid().getUidValue();
+                long fingerprint = fingerprints == null ? 0 : ContentFingerprint.of(delta.getObject(), CONTENT_FINGERPRINT);
+                if (fingerprints != null && fingerprints.isUnchanged(userName, fingerprint)) {
+                    // LASTMODIFIED changed, but no attribute we read (logon counters, background jobs, ...)
+                    LOG.ok("syncAccount: user {0} not changed, skipping", userName);
+                    counts[2]++;
+                    filtered();
+                } else {
+                    if (!handler.handle(delta)) {
+                        return false;
+                    }
+                    if (fingerprints != null) {
+                        fingerprints.put(userName, fingerprint);
+                    }
+                }
+                lastPosition[0] = SyncPosition.fromToken(delta.getToken());
+                return true;
+            });
+        }
 
-                JCoStructure lastmodifiedStructure = functionDetail.getExportParameterList().getStructure("LASTMODIFIED");
-                String modDate = lastmodifiedStructure.getString("MODDATE");
-                String modTime = lastmodifiedStructure.getString("MODTIME");
-                // check not only date in filter, but also time and procee only changed after MODDATE and MODTIME
-                Date lastModification = DATE_TIME.parse(modDate + " " + modTime);
-                if (lastModification.after(fromToken)) {
-                    changed++;
+        if (!finished || !syncDeletedUsers(handler, lastPosition[0])) {
+            LOG.info("syncAccount stopped by handler after {0}", lastPosition[0]);
+            return;
+        }
 
-                    JCoFunction userLoginInfoFunc = runUserLoginInfoFunction(userName);
+        if (lastPosition[0] != null && handler instanceof SyncTokenResultsHandler) {
+            ((SyncTokenResultsHandler) handler).handleResult(lastPosition[0].toToken());
+        }
 
-                    ConnectorObject connectorObject = convertUserToConnectorObject(functionDetail, userLoginInfoFunc);
+        LOG.info("{0} user(s) changed in SAP from {1}, processed: {2}, last position: {3}",
+                counts[1], fromPosition, batch.size(), lastPosition[0]);
+        if (fingerprints != null) {
+            LOG.info("{0} user(s) skipped without change of content, skipped since start: {1}",
+                    counts[2], fingerprints.getSuppressed());
+        }
+    }
 
-                    SyncDeltaBuilder deltaBuilder = new SyncDeltaBuilder();
-                    SyncToken deltaToken = new SyncToken(lastModification.getTime());
-                    deltaBuilder.setToken(deltaToken);
+    /**
+     * @param prefiltered last modification from syncPrefilterTable, null if not known
+     * @return the latest known time of change of sync candidate, not after its real change, null if not known
+     */
+    private static Long estimateSyncChange(String userName, Date prefiltered, Map<String, Long> roleChanges) {
+        Long roleChange = roleChanges.get(userName);
+        if (prefiltered == null) {
+            return roleChange;
+        }
+        return roleChange == null ? prefiltered.getTime() : Math.max(prefiltered.getTime(), roleChange);
+    }
+
+    /**
+     * @return fingerprints of synchronized users, null if suppressing of not changed users is disabled
+     */
+    private FingerprintCache getFingerprintCache() {
+        Integer size = configuration.getSyncFingerprintCacheSize();
+        if (size == null || size <= 0) {
+            return null;
+        }
+        File file = StringUtil.isBlank(configuration.getStateDirectory()) ? null
+                : getStateFile("USERS.fingerprints.gz", "store LiveSync fingerprints");
+        return FingerprintCache.get(configuration.getFinalDestinationName(), size, file);
+    }
 
-                    // all users are updated or created, we can differentiate create from update over
-                    // user.getCreateDate().after(fromToken), but it's not necessary to do this
-                    SyncDeltaType deltaType = SyncDeltaType.CREATE_OR_UPDATE;
+    /**
+     * Store fingerprints changed in sync, so not changed users are suppressed also after restart.
+     */
+    private void saveFingerprintCache() {
+        FingerprintCache fingerprints = getFingerprintCache();
+        if (fingerprints == null) {
+            return;
+        }
+        try {
+            fingerprints.save();
+        } catch (IOException e) {
+            LOG.warn(e, "Can't store LiveSync fingerprints, they are kept only in memory: {0}", e.getMessage());
+        }
+    }
+
+    private boolean isServerClockEnabled() {
+        return configuration.getServerClockRefreshInterval() != null && configuration.getServerClockRefreshInterval() > 0;
+    }
+
+    /**
+     * @return SAP server time (not after the actual one) if serverClockRefreshInterval is set, otherwise local time
+     */
+    private long getServerTime() throws JCoException {
+        if (!isServerClockEnabled()) {
+            return System.currentTimeMillis();
+        }
+        ServerClock clock = ServerClock.get(configuration.getFinalDestinationName());
+        synchronized (clock) {
+            if (clock.isExpired(configuration.getServerClockRefreshInterval() * 60000L)) {
+                JCoFunction function = transport.getFunction(SERVER_TIME_FUNCTION);
+                if (function == null)
+                    throw new RuntimeException(SERVER_TIME_FUNCTION + " not found in SAP.");
+                long callStart = System.currentTimeMillis();
+                execute(function);
+                long callEnd = System.currentTimeMillis();
+
+                JCoParameterList epl = function.getExportParameterList();
+                // in the same format as MODDATE and MODTIME in syncUser
+                String serverTime = epl.getString("SAPDATE") + " " + epl.getString("SAPTIME");
+                try {
+                    clock.update(callStart, callEnd, parseTimestamp(DATE_TIME, serverTime));
+                } catch (ParseException e) {
+                    throw new ConnectorIOException("Unexpected SAP server time " + serverTime + ": " + e.getMessage(), e);
+                }
+                LOG.info("SAP server clock measured: {0}", clock);
+            }
+        }
+        return clock.safeNow();
+    }
+
+    private boolean isDeleteDetectionEnabled() {
+        return configuration.getDeleteDetectionInterval() != null && configuration.getDeleteDetectionInterval() > 0;
+    }
 
-                    deltaBuilder.setObject(connectorObject);
-                    deltaBuilder.setUid(new Uid(userName));
+    private File getUserNameSnapshotFile() {
+        return getStateFile("USERS.names.gz", "detect deleted users in LiveSync");
+    }
 
-                    deltaBuilder.setDeltaType(deltaType);
+    /**
+     * Detect deleted users, when the last full listing of usernames is older than deleteDetectionInterval.
+     * Usernames missing in the actual listing are reported as DELETE with the actual position as token.
+     * New listing is stored only when all deletes were handled, so interrupted sync reports them again.
+     *
+     * @return false if handler stopped processing
+     */
+    private boolean syncDeletedUsers(SyncResultsHandler handler, SyncPosition position) throws JCoException, IOException {
+        if (!isDeleteDetectionEnabled() || position == null) {
+            return true;
+        }
+        File file = getUserNameSnapshotFile();
+        synchronized (UserNameSnapshot.lock(file)) {
+            UserNameSnapshot previous = UserNameSnapshot.read(file);
+            long now = System.currentTimeMillis();
+            if (previous != null && now - previous.getListedAt() < configuration.getDeleteDetectionInterval() * 60000L) {
+                LOG.ok("Skipping detection of deleted users, last listing: {0}", new Date(previous.getListedAt()));
+                return true;
+            }
 
-                    handler.handle(deltaBuilder.build());
+            UserNameSnapshot actual = listUserNames(now);
+            if (previous == null) {
+                LOG.info("No previous listing of usernames in {0}, deleted users are detected from now on", file);
+                actual.write(file);
+                return true;
+            }
+
+            List<String> removed = previous.getRemoved(actual);
+            LOG.info("Deleted users detected: {0} (previous listing: {1}, actual: {2})",
+                    removed.size(), previous, actual);
+            for (String userName : removed) {
+                SyncDeltaBuilder deltaBuilder = new SyncDeltaBuilder();
+                deltaBuilder.setToken(position.toToken());
+                deltaBuilder.setUid(new Uid(userName));
+                deltaBuilder.setDeltaType(SyncDeltaType.DELETE);
+                deltaBuilder.setObjectClass(ObjectClass.ACCOUNT);
+                if (!handler.handle(deltaBuilder.build())) {
+                    return false;
+                }
+                if (getFingerprintCache() != null) {
+                    getFingerprintCache().remove(userName);
                 }
+            }
+            actual.write(file);
+            return true;
+        }
+    }
+
+    /**
+     * Usernames of all users (also with baseAccountQuery) without reading the details.
+     */
+    private UserNameSnapshot listUserNames(long now) throws JCoException {
+        JCoFunction function = transport.getFunction("BAPI_USER_GETLIST");
+        if (function == null)
+            throw new RuntimeException("BAPI_USER_GETLIST not found in SAP.");
+        prepareFilters(function, baseAccountQuery);
+        executeFunction(function);
+
+        SortedSet<String> userNames = new TreeSet<>();
+        JCoTable userList = function.getTableParameterList().getTable("USERLIST");
+        userList.firstRow();
+        if (userList.getNumRows() > 0) {
+            do {
+                userNames.add(userList.getString(USERNAME));
             } while (userList.nextRow());
         }
+        return new UserNameSnapshot(now, userNames);
+    }
+
+    private int getSyncThreads() {
+        return configuration.getSyncThreads() == null ? 1 : configuration.getSyncThreads();
+    }
+
+    /**
+     * Remove sync candidates, which are not changed after token, without calling BAPI_USER_GET_DETAIL for each of them.
+     * Date and time of last modifications is read for all candidates in one RFC_READ_TABLE call from syncPrefilterTable
+     * (BNAME, MODDA, MODTI columns, for example USH02). Candidates without any row in this table stay and are
+     * checked over BAPI_USER_GET_DETAIL as before.
+     */
+    private void prefilterSyncCandidates(Map<String, Date> candidates, SyncPosition fromPosition) throws JCoException, ParseException {
+        Date fromToken = new Date(fromPosition.getTimestamp());
+        String table = configuration.getSyncPrefilterTable();
+        int rows = readTableColumns(table, new String[]{"BNAME", "MODDA", "MODTI"},
+                Collections.singletonList("MODDA GE '" + formatSapDate(fromToken) + "'"), columns -> {
+                    String userName = columns[0];
+                    if (!candidates.containsKey(userName)) {
+                        return;
+                    }
+                    Date modification = new Date(parseSapTimestamp(columns[1] + columns[2]));
+                    Date known = candidates.get(userName);
+                    if (known == null || modification.after(known)) {
+                        candidates.put(userName, modification);
+                    }
+                });
+
+        int before = candidates.size();
+        // users changed in the same second are not processed yet if they are after the username of token
+        candidates.entrySet().removeIf(candidate -> candidate.getValue() != null
+                && !fromPosition.isBefore(candidate.getValue().getTime(), candidate.getKey()));
+        LOG.info("Prefilter over {0} rows of {1}: {2} of {3} candidates are not changed after {4}",
+                rows, table, before - candidates.size(), before, fromToken);
+    }
+
+    /**
+     * Users with role assignment (AGR_USERS) changed or becoming valid or invalid since token day,
+     * also if it's not visible in LASTMODIFIED of user.
+     *
+     * @return username -> time of the last change of its role assignments
+     */
+    private Map<String, Long> readRoleAssignmentChanges(Date fromToken) throws JCoException, ParseException {
+        String from = formatSapDate(fromToken);
+        String today = formatSapDate(new Date(getServerTime()));
+        List<String> where = Arrays.asList(
+                "CHANGE_DAT GE '" + from + "'",
+                // assignment valid from this day on
+                "OR ( FROM_DAT GT '" + from + "' AND FROM_DAT LE '" + today + "' )",
+                // assignment not valid after this day
+                "OR ( TO_DAT GE '" + from + "' AND TO_DAT LT '" + today + "' )");
+
+        Map<String, Long> changes = new HashMap<>();
+        int rows = readTableColumns("AGR_USERS", new String[]{"UNAME", "FROM_DAT", "TO_DAT", "CHANGE_DAT", "CHANGE_TIM"},
+                where, columns -> {
+                    long change = 0;
+                    if (columns[3].compareTo(from) >= 0) {
+                        change = parseSapTimestamp(columns[3] + columns[4]);
+                    }
+                    if (columns[1].compareTo(from) > 0 && columns[1].compareTo(today) <= 0) {
+                        change = Math.max(change, parseSapDate(columns[1], 0));
+                    }
+                    if (columns[2].compareTo(from) >= 0 && columns[2].compareTo(today) < 0) {
+                        // invalid from the next day
+                        change = Math.max(change, parseSapDate(columns[2], 1));
+                    }
+                    changes.merge(columns[0], change, Math::max);
+                });
+
+        LOG.info("Role assignments changed from day {0}: {1}, users: {2}", from, rows, changes.size());
+        return changes;
+    }
+
+    private static String formatSapDate(Date date) {
+        return formatDate(SAP_DATE, date);
+    }
+
+    private static String formatDate(DateTimeFormatter format, Date date) {
+        return format.format(date.toInstant().atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * @param plusDays days added to the parsed date
+     * @return start of the day in default time zone, in epoch millis
+     */
+    private static long parseSapDate(String value, int plusDays) throws ParseException {
+        try {
+            return LocalDate.parse(value, SAP_DATE).plusDays(plusDays)
+                    .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new ParseException(e.getMessage(), e.getErrorIndex());
+        }
+    }
+
+    /**
+     * @return time in default time zone, in epoch millis
+     */
+    private static long parseSapTimestamp(String value) throws ParseException {
+        return parseTimestamp(SAP_TIMESTAMP, value);
+    }
+
+    /**
+     * @return time in default time zone, in epoch millis
+     */
+    private static long parseTimestamp(DateTimeFormatter format, String value) throws ParseException {
+        try {
+            return LocalDateTime.parse(value, format).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new ParseException(e.getMessage(), e.getErrorIndex());
+        }
+    }
+
+    private interface TableColumnsHandler {
+        /**
+         * @param columns trimmed values of selected columns
+         */
+        void handle(String[] columns) throws ParseException;
+    }
+
+    /**
+     * Read selected columns of table rows matching WHERE condition in one RFC_READ_TABLE call.
+     *
+     * @param where lines of WHERE condition, each one max. 72 characters
+     * @return number of read rows
+     */
+    private int readTableColumns(String table, String[] fieldNames, List<String> where, TableColumnsHandler handler) throws JCoException, ParseException {
+        JCoFunction function = transport.getFunction(READ_TABLE_FUNCTION);
+        if (function == null)
+            throw new RuntimeException(READ_TABLE_FUNCTION + " not found in SAP.");
 
-        LOG.info("{0} user(s) changed in SAP from date {1}", changed, fromToken);
+        function.getImportParameterList().setValue("QUERY_TABLE", table);
+        function.getImportParameterList().setValue("DELIMITER", READ_TABLE_DELIMITER);
+        JCoTable fields = function.getTableParameterList().getTable("FIELDS");
+        for (String field : fieldNames) {
+            fields.appendRow();
+            fields.setValue("FIELDNAME", field);
+        }
+        JCoTable options = function.getTableParameterList().getTable("OPTIONS");
+        for (String line : where) {
+            options.appendRow();
+            options.setValue("TEXT", line);
+        }
+
+        execute(function);
+
+        JCoTable data = function.getTableParameterList().getTable("DATA");
+        data.firstRow();
+        if (data.getNumRows() > 0) {
+            do {
+                String[] columns = data.getString("WA").split("\\" + READ_TABLE_DELIMITER, -1);
+                if (columns.length < fieldNames.length) {
+                    continue;
+                }
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = columns[i].trim();
+                }
+                handler.handle(columns);
+            } while (data.nextRow());
+        }
+        return data.getNumRows();
     }
 
     @Override
     public SyncToken getLatestSyncToken(ObjectClass objectClass) {
         if (objectClass.is(ObjectClass.ACCOUNT_NAME)) {    // __ACCOUNT__
 
-            // TODO better implementation?
             Calendar now = new GregorianCalendar();
+            try {
+                // LASTMODIFIED is in SAP server time
+                now.setTimeInMillis(getServerTime());
+            } catch (JCoException e) {
+                throw new ConnectorIOException(e.getMessage(), e);
+            }
             now.set(Calendar.MILLISECOND, 0); // we don't have milisecond precision from SAP in LASTMODIFIED
-            SyncToken syncToken = new SyncToken(now.getTime().getTime());
+            SyncToken syncToken = new SyncPosition(now.getTime().getTime(), null).toToken();
+            if (isDeleteDetectionEnabled()) {
+                // deleted users are detected from now on
+                File file = getUserNameSnapshotFile();
+                try {
+                    synchronized (UserNameSnapshot.lock(file)) {
+                        listUserNames(System.currentTimeMillis()).write(file);
+                    }
+                } catch (Exception e) {
+                    throw new ConnectorIOException(e.getMessage(), e);
+                }
+            }
             LOG.info("returning SyncToken: {0} ({1})", syncToken, now);
             return syncToken;
 
+        } else if (findTableName(objectClass) != null) {
+            try {
+                return getLatestTableSyncToken(findTableName(objectClass));
+            } catch (ConnectorException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ConnectorIOException(e.getMessage(), e);
+            }
         } else {
             throw new UnsupportedOperationException("Unsupported object class " + objectClass);
         }
@@ -2079,7 +3316,7 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
     private String generateTempPassword() {
         JCoFunction function = null;
         try {
-            function = destination.getRepository().getFunction("SUSR_GENERATE_PASSWORD");
+            function = transport.getFunction("SUSR_GENERATE_PASSWORD");
             executeFunction(function);
             String pwd = function.getExportParameterList().getString("PASSWORD");
             return pwd;
@@ -2090,14 +3327,14 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
     }
 
     private boolean isPasswordAlreadySet(String userName, String password) throws JCoException {
-        JCoFunction function = destination.getRepository().getFunction("SUSR_LOGIN_CHECK_RFC");
+        JCoFunction function = transport.getFunction("SUSR_LOGIN_CHECK_RFC");
         if (function == null)
             throw new RuntimeException("SUSR_LOGIN_CHECK_RFC not found in SAP.");
         function.getImportParameterList().setValue("BNAME", userName);
         function.getImportParameterList().setValue("PASSWORD", password);
 
         try {
-            function.execute(destination);
+            execute(function);
         } catch (JCoException e) {
             if (e.getGroup() == 126 && "152".equalsIgnoreCase(e.getMessageNumber())) {
                 // (126) WRONG_PASSWORD: WRONG_PASSWORD Message 152 of class 00 type E
@@ -2127,14 +3364,14 @@ public class SapConnector implements PoolableConnector, TestOp, SchemaOp, Search
     }
 
     private void validatePassword(String password) throws JCoException {
-        JCoFunction function = destination.getRepository().getFunction("PASSWORD_FORMAL_CHECK");
+        JCoFunction function = transport.getFunction("PASSWORD_FORMAL_CHECK");
         if (function == null)
             throw new RuntimeException("PASSWORD_FORMAL_CHECK not found in SAP.");
 
         function.getImportParameterList().getStructure("PASSWORD").setValue(BAPIPWD, password);
 
         try {
-            function.execute(destination);
+            execute(function);
         } catch (JCoException e) {
             if (e.getGroup() != 104) {
                 if (e.getGroup() != 123) {
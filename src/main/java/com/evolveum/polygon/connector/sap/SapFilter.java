@@ -31,7 +31,7 @@ public class SapFilter {
         https://www.consolut.com/en/s/sap-ides-access/d/s/doc/H-BAPIOPTION */
     public static final String OPERATOR_EQUAL = "EQ";
     public static final String OPERATOR_NOT_EQUAL = "NE";
-//    public static final String OPERATOR_BETWEEN = "BT";
+    public static final String OPERATOR_BETWEEN = "BT";
 //    public static final String OPERATOR_NOT_BETWEEN = "NB";
     public static final String OPERATOR_LESS_THAN = "LT";
     public static final String OPERATOR_LESS_EQUAL = "LE";
@@ -68,6 +68,10 @@ public class SapFilter {
      * Permitted LOW Values
      */
     private String value;
+    /**
+     * Permitted HIGH Values, only for BT
+     */
+    private String highValue;
 
     /**
      * logical operation, AND, OR,
@@ -214,6 +218,14 @@ public class SapFilter {
         this.value = value;
     }
 
+    public String getHighValue() {
+        return highValue;
+    }
+
+    public void setHighValue(String highValue) {
+        this.highValue = highValue;
+    }
+
     public String getLogicalOperation() {
         return logicalOperation;
     }
@@ -251,6 +263,7 @@ public class SapFilter {
                 ", field='" + field + '\'' +
                 ", option='" + option + '\'' +
                 ", value='" + value + '\'' +
+                (highValue != null ? ", highValue='" + highValue + '\'' : "") +
                 ", logicalOperation='" + logicalOperation + '\'' +
                 ", expressions=" + expressions +
                 ", arity=" + arity +
@@ -0,0 +1,131 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Last handed over username of a long full read of users, stored in a local file, so a failed read can be resumed.
+ * <br/>
+ * Users must be read sorted by username. Checkpoint is saved after each checkpointInterval users and when
+ * the read fails, and is deleted when the read finishes.
+ */
+public class ScanCheckpoint {
+
+    private static final Log LOG = Log.getLog(ScanCheckpoint.class);
+
+    private static final String SCAN = "scan";
+    private static final String LAST_USER_NAME = "lastUserName";
+    private static final String DELIVERED = "delivered";
+
+    private final File file;
+
+    private final String scan;
+
+    private final int interval;
+
+    private String lastUserName;
+
+    private long delivered;
+
+    private long saved;
+
+    /**
+     * @param scan description of the read (query, ...), checkpoint of other read is not resumed
+     * @param interval number of users between saves
+     */
+    public ScanCheckpoint(File file, String scan, int interval) {
+        this.file = file;
+        this.scan = scan;
+        this.interval = Math.max(1, interval);
+    }
+
+    /**
+     * Load the stored checkpoint to resume the read.
+     *
+     * @return last handed over username, null if there is no checkpoint of the same read
+     */
+    public String resume() throws IOException {
+        if (!file.exists()) {
+            LOG.info("No checkpoint {0} to resume, reading from start", file);
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        if (!scan.equals(properties.getProperty(SCAN))) {
+            LOG.warn("Checkpoint {0} is for other read: {1}, reading from start", file, properties.getProperty(SCAN));
+            return null;
+        }
+        lastUserName = properties.getProperty(LAST_USER_NAME);
+        delivered = Long.parseLong(properties.getProperty(DELIVERED, "0"));
+        saved = delivered;
+        LOG.info("Resuming read after user {0}, already read: {1}", lastUserName, delivered);
+        return lastUserName;
+    }
+
+    /**
+     * User was handed over.
+     */
+    public void delivered(String userName) throws IOException {
+        lastUserName = userName;
+        delivered++;
+        if (delivered - saved >= interval) {
+            save();
+        }
+    }
+
+    public void save() throws IOException {
+        if (lastUserName == null || delivered == saved) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty(SCAN, scan);
+        properties.setProperty(LAST_USER_NAME, lastUserName);
+        properties.setProperty(DELIVERED, Long.toString(delivered));
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Can't create directory " + parent);
+        }
+        File tmp = new File(parent, file.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            properties.store(writer, "SAP connector read checkpoint");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        saved = delivered;
+        LOG.ok("Checkpoint saved, last user: {0}, read: {1}", lastUserName, delivered);
+    }
+
+    /**
+     * Save checkpoint after failed read, error is only logged to keep original exception.
+     */
+    public void saveQuietly() {
+        try {
+            save();
+            LOG.info("Read failed, it can be resumed after user {0} from checkpoint {1}", lastUserName, file);
+        } catch (IOException e) {
+            LOG.warn(e, "Can't save checkpoint {0}", file);
+        }
+    }
+
+    /**
+     * Read finished, checkpoint is not needed anymore.
+     */
+    public void complete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    public String getLastUserName() {
+        return lastUserName;
+    }
+
+    public long getDelivered() {
+        return delivered;
+    }
+}
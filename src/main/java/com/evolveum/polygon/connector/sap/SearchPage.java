@@ -0,0 +1,109 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Window of a search result requested over paging {@link OperationOptions}.
+ * <br/>
+ * The result keys must be sorted, so that following pages are computed over the same row order.
+ * Two paging styles are supported:
+ * <ul>
+ *     <li>offset paging: pagedResultsOffset (same as for accounts, the number of skipped objects) and pageSize</li>
+ *     <li>cookie paging: the cookie is the key of the last returned object, next page starts right after it</li>
+ * </ul>
+ */
+public class SearchPage {
+
+    private final int from;
+    private final int to;
+    private final int total;
+    private final boolean paged;
+
+    private SearchPage(int from, int to, int total, boolean paged) {
+        this.from = from;
+        this.to = to;
+        this.total = total;
+        this.paged = paged;
+    }
+
+    /**
+     * @return true if paging was requested in options, so the result keys should be sorted
+     */
+    public static boolean isPagedSearch(OperationOptions options) {
+        return options != null && ((options.getPageSize() != null && options.getPageSize() > 0)
+                || options.getPagedResultsCookie() != null);
+    }
+
+    public static SearchPage of(List<String> sortedKeys, OperationOptions options) {
+        int total = sortedKeys.size();
+        if (!isPagedSearch(options)) {
+            return new SearchPage(0, total, total, false);
+        }
+
+        int from = 0;
+        String cookie = options.getPagedResultsCookie();
+        if (cookie != null) {
+            int index = Collections.binarySearch(sortedKeys, cookie);
+            // found - start after it, not found - start on insertion point
+            from = index >= 0 ? index + 1 : -(index + 1);
+        } else if (options.getPagedResultsOffset() != null) {
+            from = Math.min(total, Math.max(0, options.getPagedResultsOffset()));
+        }
+
+        int to = total;
+        Integer pageSize = options.getPageSize();
+        if (pageSize != null && pageSize > 0) {
+            to = (int) Math.min((long) from + pageSize, total);
+        }
+
+        return new SearchPage(from, to, total, true);
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public int getTo() {
+        return to;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public boolean isPaged() {
+        return paged;
+    }
+
+    /**
+     * Send paged search result to handler if it supports it.
+     *
+     * @param lastKey key of the last returned object, null if nothing was returned
+     * @param returned number of returned objects from this page
+     * @param total total number of objects (for example NUMBER_OF_ENTRIES from SAP)
+     */
+    public void complete(ResultsHandler handler, String lastKey, int returned, int total) {
+        if (!paged || !(handler instanceof SearchResultsHandler)) {
+            return;
+        }
+        int remaining = Math.max(0, total - from - returned);
+        String cookie = remaining > 0 ? lastKey : null;
+        ((SearchResultsHandler) handler).handleResult(new SearchResult(cookie, remaining));
+    }
+
+    @Override
+    public String toString() {
+        return "SearchPage{" +
+                "from=" + from +
+                ", to=" + to +
+                ", total=" + total +
+                ", paged=" + paged +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.evolveum.polygon.connector.sap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offset of SAP application server clock against local clock, one for each SAP destination.
+ * <br/>
+ * SAP returns its time in seconds, in the same way as MODDATE and MODTIME of users, so offset also covers
+ * different time zone of the server. Offset is measured as server time minus middle of the local call interval,
+ * the uncertainty is half of the call duration plus one second (server time precision).
+ */
+public class ServerClock {
+
+    private static final Map<String, ServerClock> CLOCKS = new ConcurrentHashMap<>();
+
+    private volatile long offset;
+
+    private volatile long uncertainty;
+
+    private volatile long measuredAt;
+
+    public static ServerClock get(String destinationName) {
+        return CLOCKS.computeIfAbsent(destinationName, name -> new ServerClock());
+    }
+
+    /**
+     * @return true if offset was not measured yet or is older than given interval
+     */
+    public boolean isExpired(long intervalMillis) {
+        return measuredAt == 0 || System.currentTimeMillis() - measuredAt >= intervalMillis;
+    }
+
+    /**
+     * @param callStart local time before the call
+     * @param callEnd local time after the call
+     * @param serverTime time returned by SAP in the call
+     */
+    public void update(long callStart, long callEnd, long serverTime) {
+        long duration = Math.max(0, callEnd - callStart);
+        this.offset = serverTime - (callStart + duration / 2);
+        this.uncertainty = duration / 2 + 1000;
+        this.measuredAt = callEnd;
+    }
+
+    /**
+     * @return actual SAP server time
+     */
+    public long now() {
+        return System.currentTimeMillis() + offset;
+    }
+
+    /**
+     * @return SAP server time, which is surely not after the actual one
+     */
+    public long safeNow() {
+        return now() - uncertainty;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getUncertainty() {
+        return uncertainty;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerClock{" +
+                "offset=" + offset +
+                ", uncertainty=" + uncertainty +
+                ", measuredAt=" + measuredAt +
+                '}';
+    }
+}
@@ -0,0 +1,113 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.SyncToken;
+
+/**
+ * Position in account LiveSync: last modification time and username of the last processed user.
+ * <br/>
+ * Users are processed in order of (last modification, username), so more users changed in the same second
+ * can be split to more sync calls. Position is stored in sync token as String "millis|USERNAME".
+ * Username is empty (null) if all users changed in this time were processed, this is also the case
+ * of old Long tokens (only time of last modification).
+ */
+public class SyncPosition implements Comparable<SyncPosition> {
+
+    private static final Log LOG = Log.getLog(SyncPosition.class);
+
+    private static final String SEPARATOR = "|";
+
+    private final long timestamp;
+
+    private final String userName;
+
+    public SyncPosition(long timestamp, String userName) {
+        this.timestamp = timestamp;
+        this.userName = userName == null || userName.isEmpty() ? null : userName;
+    }
+
+    /**
+     * @return position from sync token, null if token is empty or not supported
+     */
+    public static SyncPosition fromToken(SyncToken token) {
+        if (token == null || token.getValue() == null) {
+            return null;
+        }
+        Object value = token.getValue();
+        if (value instanceof Long) {
+            // token from older connector version
+            return new SyncPosition((Long) value, null);
+        }
+        if (value instanceof String) {
+            String text = (String) value;
+            int index = text.indexOf(SEPARATOR);
+            try {
+                if (index < 0) {
+                    return new SyncPosition(Long.parseLong(text), null);
+                }
+                return new SyncPosition(Long.parseLong(text.substring(0, index)), text.substring(index + 1));
+            } catch (NumberFormatException e) {
+                LOG.warn("Synchronization token {0} is not in format millis|USERNAME, ignoring", text);
+                return null;
+            }
+        }
+        LOG.warn("Synchronization token is not long or string, ignoring");
+        return null;
+    }
+
+    public SyncToken toToken() {
+        return new SyncToken(timestamp + SEPARATOR + (userName == null ? "" : userName));
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * @return true if change of user in given time was not processed yet
+     */
+    public boolean isBefore(long modification, String changedUserName) {
+        if (modification != timestamp) {
+            return modification > timestamp;
+        }
+        return userName != null && changedUserName.compareTo(userName) > 0;
+    }
+
+    @Override
+    public int compareTo(SyncPosition other) {
+        int result = Long.compare(timestamp, other.timestamp);
+        if (result != 0) {
+            return result;
+        }
+        if (userName == null || other.userName == null) {
+            // whole second is after each user changed in it
+            return userName == null ? (other.userName == null ? 0 : 1) : -1;
+        }
+        return userName.compareTo(other.userName);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SyncPosition that = (SyncPosition) o;
+        return timestamp == that.timestamp && (userName == null ? that.userName == null : userName.equals(that.userName));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(timestamp) + (userName == null ? 0 : userName.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return "SyncPosition{" +
+                "timestamp=" + timestamp +
+                ", userName='" + userName + '\'' +
+                '}';
+    }
+}
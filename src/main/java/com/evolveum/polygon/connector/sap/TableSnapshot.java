@@ -0,0 +1,298 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local snapshot of one SAP table used for LiveSync of table object classes, it contains only content hash of each row.
+ * <br/>
+ * Snapshot is stored in an append-only file:
+ * <ul>
+ *     <li>header with base generation and compacted state (key and hash of all rows)</li>
+ *     <li>followed by appended changes (put or remove of one row), each change increments the generation</li>
+ * </ul>
+ * Generation is used as sync token, so the snapshot can be reconstructed for each token newer than the last compaction,
+ * for older token the snapshot starts with empty state, so all rows are reported again.
+ */
+public class TableSnapshot implements Closeable {
+
+    private static final Log LOG = Log.getLog(TableSnapshot.class);
+
+    private static final int MAGIC = 0x53415054; // "SAPT"
+    private static final byte VERSION = 1;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    // compact file when appended changes exceed this count and also the size of the state
+    private static final int COMPACT_MIN_CHANGES = 1000;
+
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final File file;
+
+    private final Map<String, Long> hashes = new HashMap<>();
+
+    private long baseGeneration = 0;
+
+    private long generation = 0;
+
+    private DataOutputStream appender;
+
+    private TableSnapshot(File file) {
+        this.file = file;
+    }
+
+    /**
+     * lock object for one snapshot file, snapshot is not safe to use concurrently
+     */
+    public static Object lock(File file) {
+        return LOCKS.computeIfAbsent(file.getAbsolutePath(), path -> new Object());
+    }
+
+    /**
+     * Open snapshot in state of given generation.
+     *
+     * @param file snapshot file, if not exists, empty snapshot is created
+     * @param generation generation from sync token, null to start with empty state (all rows are new),
+     *                   also generation older than the last compaction can't be reconstructed and starts with empty state
+     */
+    public static TableSnapshot open(File file, Long generation) throws IOException {
+        TableSnapshot snapshot = new TableSnapshot(file);
+        if (file.exists()) {
+            snapshot.load(generation);
+        } else if (generation != null && generation > 0) {
+            LOG.warn("Snapshot {0} not found for generation {1}, all rows are handled as new", file, generation);
+        }
+        boolean compacted = generation != null && generation < snapshot.baseGeneration;
+        if (compacted) {
+            LOG.warn("Generation {0} is older than compacted snapshot {1} in {2}, all rows are handled as new",
+                    generation, snapshot.baseGeneration, file);
+        }
+        if ((generation == null || compacted) && !snapshot.hashes.isEmpty()) {
+            // start from empty state, but keep generation growing
+            snapshot.hashes.clear();
+            snapshot.rewrite();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Replace snapshot with actual state of table as a new generation.
+     *
+     * @return new generation
+     */
+    public static long reset(File file, Map<String, Long> state) throws IOException {
+        long generation = 0;
+        if (file.exists()) {
+            try (TableSnapshot old = new TableSnapshot(file)) {
+                old.load(null);
+                generation = old.generation;
+            }
+        }
+        TableSnapshot snapshot = new TableSnapshot(file);
+        snapshot.hashes.putAll(state);
+        snapshot.generation = generation + 1;
+        snapshot.rewrite();
+        return snapshot.generation;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of row content.
+     */
+    public static long hash(CharSequence value) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private void load(Long targetGeneration) throws IOException {
+        long validLength;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a table snapshot file: " + file);
+            }
+            baseGeneration = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                hashes.put(in.readUTF(), in.readLong());
+            }
+            generation = baseGeneration;
+            validLength = 4 + 1 + 8 + 4 + stateLength();
+
+            while (targetGeneration == null || generation < targetGeneration) {
+                long recordLength;
+                try {
+                    byte op = in.readByte();
+                    String key = in.readUTF();
+                    recordLength = 1 + utfLength(key);
+                    if (op == OP_PUT) {
+                        hashes.put(key, in.readLong());
+                        recordLength += 8;
+                    } else if (op == OP_REMOVE) {
+                        hashes.remove(key);
+                    } else {
+                        throw new IOException("Unknown operation " + op + " in snapshot " + file);
+                    }
+                } catch (EOFException e) {
+                    // end of file or not completely written last record
+                    break;
+                }
+                generation++;
+                validLength += recordLength;
+            }
+        }
+
+        if (targetGeneration != null && generation < targetGeneration) {
+            LOG.warn("Generation {0} not found in snapshot {1}, using last known generation {2}", targetGeneration, file, generation);
+        }
+
+        if (file.length() > validLength) {
+            // changes after the requested generation were not confirmed (or last record is not complete), forget them
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+    }
+
+    private long stateLength() {
+        long length = 0;
+        for (String key : hashes.keySet()) {
+            length += utfLength(key) + 8;
+        }
+        return length;
+    }
+
+    private static int utfLength(String value) {
+        int length = 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public Long getHash(String key) {
+        return hashes.get(key);
+    }
+
+    public Set<String> getKeys() {
+        return hashes.keySet();
+    }
+
+    public int size() {
+        return hashes.size();
+    }
+
+    /**
+     * Confirm new or changed row.
+     */
+    public void put(String key, long hash) throws IOException {
+        DataOutputStream out = getAppender();
+        out.writeByte(OP_PUT);
+        out.writeUTF(key);
+        out.writeLong(hash);
+        out.flush();
+        hashes.put(key, hash);
+        generation++;
+    }
+
+    /**
+     * Confirm deleted row.
+     */
+    public void remove(String key) throws IOException {
+        DataOutputStream out = getAppender();
+        out.writeByte(OP_REMOVE);
+        out.writeUTF(key);
+        out.flush();
+        hashes.remove(key);
+        generation++;
+    }
+
+    /**
+     * Compact appended changes to state, when there are too many of them.
+     */
+    public void compactIfNeeded() throws IOException {
+        long changes = generation - baseGeneration;
+        if (changes > COMPACT_MIN_CHANGES && changes > hashes.size()) {
+            LOG.ok("Compacting snapshot {0}, changes: {1}, rows: {2}", file, changes, hashes.size());
+            rewrite();
+        }
+    }
+
+    private DataOutputStream getAppender() throws IOException {
+        if (appender == null) {
+            if (!file.exists()) {
+                rewrite();
+            }
+            appender = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+        return appender;
+    }
+
+    private void rewrite() throws IOException {
+        closeAppender();
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Can't create directory " + parent);
+        }
+        File tmp = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(generation);
+            out.writeInt(hashes.size());
+            for (Map.Entry<String, Long> entry : hashes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        baseGeneration = generation;
+    }
+
+    private void closeAppender() throws IOException {
+        if (appender != null) {
+            appender.close();
+            appender = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeAppender();
+    }
+
+    @Override
+    public String toString() {
+        return "TableSnapshot{" +
+                "file=" + file +
+                ", baseGeneration=" + baseGeneration +
+                ", generation=" + generation +
+                ", rows=" + hashes.size() +
+                '}';
+    }
+}
@@ -0,0 +1,129 @@
+package com.evolveum.polygon.connector.sap;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sorted set of all usernames in SAP from the last full name listing, used to detect deleted users in LiveSync.
+ * <br/>
+ * Stored as a gzip compressed file: header with time of the listing and count, followed by sorted usernames,
+ * each one written as length of prefix shared with previous username and the rest of it.
+ */
+public class UserNameSnapshot {
+
+    private static final int MAGIC = 0x53415055; // "SAPU"
+    private static final byte VERSION = 1;
+
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final long listedAt;
+
+    private final SortedSet<String> userNames;
+
+    public UserNameSnapshot(long listedAt, SortedSet<String> userNames) {
+        this.listedAt = listedAt;
+        this.userNames = userNames;
+    }
+
+    /**
+     * lock object for one snapshot file, read and write of the file by concurrent syncs must not interleave
+     */
+    public static Object lock(File file) {
+        return LOCKS.computeIfAbsent(file.getAbsolutePath(), path -> new Object());
+    }
+
+    /**
+     * @return snapshot from file, null if file does not exist
+     */
+    public static UserNameSnapshot read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a username snapshot file: " + file);
+            }
+            long listedAt = in.readLong();
+            int count = in.readInt();
+            SortedSet<String> userNames = new TreeSet<>();
+            String previous = "";
+            for (int i = 0; i < count; i++) {
+                int shared = in.readUnsignedByte();
+                String userName = previous.substring(0, shared) + in.readUTF();
+                userNames.add(userName);
+                previous = userName;
+            }
+            return new UserNameSnapshot(listedAt, userNames);
+        }
+    }
+
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Can't create directory " + parent);
+        }
+        File tmp = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(listedAt);
+            out.writeInt(userNames.size());
+            String previous = "";
+            for (String userName : userNames) {
+                int shared = 0;
+                int max = Math.min(255, Math.min(previous.length(), userName.length()));
+                while (shared < max && previous.charAt(shared) == userName.charAt(shared)) {
+                    shared++;
+                }
+                out.writeByte(shared);
+                out.writeUTF(userName.substring(shared));
+                previous = userName;
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getListedAt() {
+        return listedAt;
+    }
+
+    public SortedSet<String> getUserNames() {
+        return userNames;
+    }
+
+    /**
+     * @return usernames from this snapshot, which are missing in newer one, in sorted order
+     */
+    public List<String> getRemoved(UserNameSnapshot newer) {
+        List<String> removed = new ArrayList<>();
+        Iterator<String> newIterator = newer.userNames.iterator();
+        String next = newIterator.hasNext() ? newIterator.next() : null;
+        for (String userName : userNames) {
+            while (next != null && next.compareTo(userName) < 0) {
+                next = newIterator.hasNext() ? newIterator.next() : null;
+            }
+            if (!userName.equals(next)) {
+                removed.add(userName);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return "UserNameSnapshot{" +
+                "listedAt=" + listedAt +
+                ", users=" + userNames.size() +
+                '}';
+    }
+}
@@ -0,0 +1,114 @@
+package com.evolveum.polygon.connector.sap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Range of usernames [from, to) read in one BAPI_USER_GETLIST call in partitioned full reconciliation.
+ * <br/>
+ * SAP doesn't allow to combine more conditions on USERNAME with AND, so the range is selected with one condition
+ * (LT, GE or BT including both ends) and usernames outside of it are skipped in {@link #contains(String)}.
+ */
+public class UserPartition {
+
+    private final String from;
+
+    private final String to;
+
+    /**
+     * @param from first username (inclusive), null for no lower bound
+     * @param to last username (exclusive), null for no upper bound
+     */
+    public UserPartition(String from, String to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @param boundaries first usernames of each partition except the first one, in any order
+     * @return partitions covering all usernames, sorted
+     */
+    public static List<UserPartition> of(String[] boundaries) {
+        TreeSet<String> sorted = new TreeSet<>();
+        if (boundaries != null) {
+            for (String boundary : boundaries) {
+                if (boundary != null && !boundary.trim().isEmpty()) {
+                    sorted.add(boundary.trim().toUpperCase());
+                }
+            }
+        }
+        List<UserPartition> partitions = new ArrayList<>();
+        String from = null;
+        for (String boundary : sorted) {
+            partitions.add(new UserPartition(from, boundary));
+            from = boundary;
+        }
+        partitions.add(new UserPartition(from, null));
+        return partitions;
+    }
+
+    /**
+     * @param after username of the last already read user, null to read whole partition
+     * @return condition for USERNAME in BAPI_USER_GETLIST, null if all usernames are selected
+     */
+    public SapFilter toFilter(String after) {
+        String low = from;
+        if (after != null && (low == null || after.compareTo(low) > 0)) {
+            low = after;
+        }
+        SapFilter filter;
+        if (low == null && to == null) {
+            return null;
+        } else if (low == null) {
+            filter = new SapFilter(SapFilter.OPERATOR_LESS_THAN, SapConnector.USERNAME, to);
+        } else if (to == null) {
+            filter = new SapFilter(SapFilter.OPERATOR_GREATER_EQUAL, SapConnector.USERNAME, low);
+        } else {
+            filter = new SapFilter(SapFilter.OPERATOR_BETWEEN, SapConnector.USERNAME, low);
+            filter.setHighValue(to);
+        }
+        return filter;
+    }
+
+    /**
+     * @return true if partition contains the username
+     */
+    public boolean contains(String userName) {
+        return (from == null || userName.compareTo(from) >= 0) && (to == null || userName.compareTo(to) < 0);
+    }
+
+    /**
+     * @return true if all usernames of this partition are not after the username
+     */
+    public boolean isBeforeOrAt(String userName) {
+        return to != null && to.compareTo(userName) <= 0;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + (from == null ? "" : from) + ", " + (to == null ? "" : to) + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UserPartition that = (UserPartition) o;
+        return Arrays.equals(new String[]{from, to}, new String[]{that.from, that.to});
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new String[]{from, to});
+    }
+}
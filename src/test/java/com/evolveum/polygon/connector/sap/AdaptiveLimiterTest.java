@@ -0,0 +1,106 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIMD limit of concurrent RFC calls, runs without SAP.
+ */
+public class AdaptiveLimiterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private void call(AdaptiveLimiter limiter, int concurrent, long latency, boolean overload) throws InterruptedException {
+        for (int i = 0; i < concurrent; i++) {
+            limiter.acquire(RfcPriority.INTERACTIVE);
+        }
+        for (int i = 0; i < concurrent; i++) {
+            limiter.release(RfcPriority.INTERACTIVE, "BAPI_USER_GET_DETAIL", latency, overload);
+        }
+    }
+
+    @Test
+    public void testIncreaseAndBackoff() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 0);
+        Assert.assertEquals(limiter.getLimit(), 5);
+
+        for (int i = 0; i < 100; i++) {
+            call(limiter, limiter.getLimit(), 20 * MS, false);
+        }
+        Assert.assertEquals(limiter.getLimit(), 10);
+        Assert.assertEquals(limiter.getInFlight(), 0);
+
+        // latency spike
+        call(limiter, 1, 500 * MS, false);
+        Assert.assertEquals(limiter.getLimit(), 8);
+
+        // resource failure
+        call(limiter, 1, -1, true);
+        Assert.assertEquals(limiter.getLimit(), 4);
+
+        for (int i = 0; i < 10; i++) {
+            call(limiter, 1, -1, true);
+        }
+        Assert.assertEquals(limiter.getLimit(), 1);
+    }
+
+    @Test
+    public void testNoIncreaseWhenNotUsed() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 0);
+        for (int i = 0; i < 100; i++) {
+            call(limiter, 1, 20 * MS, false);
+        }
+        Assert.assertEquals(limiter.getLimit(), 5);
+    }
+
+    @Test(timeOut = 5000)
+    public void testBlocksOverLimit() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 0);
+        limiter.acquire(RfcPriority.INTERACTIVE);
+        Thread waiting = new Thread(() -> {
+            try {
+                limiter.acquire(RfcPriority.INTERACTIVE);
+                limiter.release(RfcPriority.INTERACTIVE, "RFC_PING", MS, false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+        Thread.sleep(100);
+        Assert.assertTrue(waiting.isAlive());
+        limiter.release(RfcPriority.INTERACTIVE, "RFC_PING", MS, false);
+        waiting.join();
+        Assert.assertEquals(limiter.getInFlight(), 0);
+    }
+
+    @Test(timeOut = 5000)
+    public void testReservedForInteractive() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(8, 25); // limit 4, 1 reserved
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(RfcPriority.BULK);
+        }
+        Assert.assertEquals(limiter.getBulkInFlight(), 3);
+
+        Thread bulk = new Thread(() -> {
+            try {
+                limiter.acquire(RfcPriority.BULK);
+                limiter.release(RfcPriority.BULK, "BAPI_USER_GET_DETAIL", -1, false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        bulk.start();
+        Thread.sleep(100);
+        // fourth bulk call must wait, but interactive one can start immediately
+        Assert.assertTrue(bulk.isAlive());
+        limiter.acquire(RfcPriority.INTERACTIVE);
+        Assert.assertEquals(limiter.getInFlight(), 4);
+
+        limiter.release(RfcPriority.INTERACTIVE, "BAPI_USER_CHANGE", -1, false);
+        limiter.release(RfcPriority.BULK, "BAPI_USER_GET_DETAIL", -1, false);
+        bulk.join();
+        Assert.assertEquals(limiter.getBulkInFlight(), 2);
+    }
+}
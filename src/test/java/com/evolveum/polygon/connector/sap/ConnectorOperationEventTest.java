@@ -0,0 +1,48 @@
+package com.evolveum.polygon.connector.sap;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * JFR event of connector operation, runs without SAP.
+ */
+public class ConnectorOperationEventTest {
+
+    @Test
+    public void testRecorded() throws Exception {
+        Path file = Files.createTempFile("sap-connector", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ConnectorOperationEvent.class);
+            recording.start();
+
+            ConnectorOperationEvent event = ConnectorOperationEvent.start("executeQuery", ObjectClass.ACCOUNT, "TESTDEST");
+            event.finish(42);
+            ConnectorOperationEvent failed = ConnectorOperationEvent.start("delete", ObjectClass.ACCOUNT, "TESTDEST");
+            failed.failed(new IllegalStateException());
+            failed.finish(0);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        Assert.assertEquals(events.size(), 2);
+        RecordedEvent query = events.get(0).getString("operation").equals("executeQuery") ? events.get(0) : events.get(1);
+        RecordedEvent delete = query == events.get(0) ? events.get(1) : events.get(0);
+        Assert.assertEquals(query.getEventType().getName(), "com.evolveum.polygon.connector.sap.ConnectorOperation");
+        Assert.assertEquals(query.getString("objectClass"), ObjectClass.ACCOUNT_NAME);
+        Assert.assertEquals(query.getString("destination"), "TESTDEST");
+        Assert.assertEquals(query.getLong("objects"), 42L);
+        Assert.assertEquals(query.getString("outcome"), "OK");
+        Assert.assertEquals(delete.getString("outcome"), "IllegalStateException");
+    }
+}
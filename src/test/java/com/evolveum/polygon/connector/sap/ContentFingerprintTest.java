@@ -0,0 +1,115 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.AttributeUtil;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Content fingerprint of accounts, runs without SAP.
+ */
+public class ContentFingerprintTest {
+
+    private ConnectorObject user(String lastName, boolean enabledFirst) {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setUid("JOHN");
+        builder.setName("JOHN");
+        if (enabledFirst) {
+            builder.addAttribute(AttributeBuilder.buildEnabled(true));
+        }
+        builder.addAttribute(AttributeBuilder.build("ADDRESS.LASTNAME", lastName));
+        builder.addAttribute(AttributeBuilder.build("ACTIVITYGROUPS.AGR_NAME", "SAP_ALL", "SAP_NEW"));
+        builder.addAttribute(AttributeBuilder.build("LOGONDATA.GLTGV", 1500000000000L));
+        if (!enabledFirst) {
+            builder.addAttribute(AttributeBuilder.buildEnabled(true));
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testStableAndOrderIndependent() {
+        Assert.assertEquals(ContentFingerprint.of(user("Smith", true), null),
+                ContentFingerprint.of(user("Smith", false), null));
+    }
+
+    @Test
+    public void testChange() {
+        Assert.assertNotEquals(ContentFingerprint.of(user("Smith", true), null),
+                ContentFingerprint.of(user("Smyth", true), null));
+    }
+
+    @Test
+    public void testIgnoredAttribute() {
+        Assert.assertEquals(ContentFingerprint.of(user("Smith", true), "ADDRESS.LASTNAME"),
+                ContentFingerprint.of(user("Smyth", true), "ADDRESS.LASTNAME"));
+    }
+
+    @Test
+    public void testConvertedUser() {
+        SapSimulator simulator = SapSimulator.generate("SIM_FINGERPRINT", 3, 1);
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setContentFingerprint(true);
+        SapConnector connector = simulator.connect(configuration);
+        List<ConnectorObject> found = new ArrayList<>();
+        connector.executeQuery(ObjectClass.ACCOUNT, null, found::add, null);
+        Assert.assertEquals(found.size(), 3);
+        for (ConnectorObject object : found) {
+            // computed before the object was built, the same as of the built object
+            Assert.assertEquals(AttributeUtil.getStringValue(object.getAttributeByName(SapConnector.CONTENT_FINGERPRINT)),
+                    ContentFingerprint.toHex(ContentFingerprint.of(object, SapConnector.CONTENT_FINGERPRINT)));
+            Assert.assertEquals(object.getUid().getUidValue(), object.getName().getNameValue());
+        }
+    }
+
+    @Test
+    public void testCache() {
+        FingerprintCache cache = FingerprintCache.get("TEST-FINGERPRINT", 2, null);
+        cache.put("A", 1L);
+        cache.put("B", 2L);
+        cache.put("C", 3L);
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertFalse(cache.isUnchanged("A", 1L)); // evicted
+        Assert.assertTrue(cache.isUnchanged("C", 3L));
+        Assert.assertFalse(cache.isUnchanged("C", 4L));
+        Assert.assertEquals(cache.getSuppressed(), 1);
+    }
+
+    @Test
+    public void testCacheStoredInFile() throws IOException {
+        File directory = Files.createTempDirectory("sap-fingerprint").toFile();
+        File file = new File(directory, "TEST-USERS.fingerprints.gz");
+        try {
+            FingerprintCache cache = FingerprintCache.get("TEST-FINGERPRINT-SAVE", 2, file);
+            cache.put("A", 1L);
+            cache.put("B", 2L);
+            Assert.assertTrue(cache.isUnchanged("A", 1L));
+            cache.save();
+
+            // as after restart
+            FingerprintCache loaded = FingerprintCache.get("TEST-FINGERPRINT-LOAD", 2, file);
+            Assert.assertEquals(loaded.size(), 2);
+            loaded.put("C", 3L);
+            Assert.assertFalse(loaded.isUnchanged("B", 2L)); // least recently used one evicted
+            Assert.assertTrue(loaded.isUnchanged("A", 1L));
+            Assert.assertTrue(loaded.isUnchanged("C", 3L));
+        } finally {
+            Files.deleteIfExists(file.toPath());
+            Files.delete(directory.toPath());
+        }
+    }
+
+    @Test
+    public void testHex() {
+        Assert.assertEquals(ContentFingerprint.toHex(255L), "00000000000000ff");
+        Assert.assertEquals(ContentFingerprint.toHex(-1L), "ffffffffffffffff");
+    }
+}
@@ -0,0 +1,285 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoException;
+import com.sap.conn.jco.JCoFunction;
+import com.sap.conn.jco.JCoParameterList;
+import com.sap.conn.jco.JCoTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Injects latency and faults into RFC calls of another transport (usually {@link SapSimulator}), to test
+ * the connector under slow or failing SAP. Faults are described by a script, one rule per line:
+ * <pre>
+ * # function or *        fault     options
+ * *                      latency   ms=2 sigma=0.8
+ * BAPI_USER_GET_DETAIL   fail      p=0.01 group=102
+ * BAPI_USER_GET_DETAIL   fail      at=57 when=after
+ * RFC_GET_TABLE_ENTRIES  empty     p=0.3 import.TABLE_NAME=AGR_TEXTS
+ * BAPI_USER_GET_DETAIL   warning   p=0.2 number=148
+ * </pre>
+ * Faults:
+ * <ul>
+ *     <li>latency - delay before the call: ms=N constant, with max=M uniform between N and M, with sigma=S lognormal
+ *     with median N, with tail=T the call takes T ms instead of N with probability p</li>
+ *     <li>fail - communication failure (JCoException of group, default 102 JCO_ERROR_COMMUNICATION), before the call
+ *     or with when=after after the call was executed (the response is lost)</li>
+ *     <li>empty - ABAP exception TABLE_EMPTY instead of the call</li>
+ *     <li>warning - RETURN row of type W (number, default 001) added to the response</li>
+ * </ul>
+ * Options of all rules: p=probability (default 1), at=N only Nth call of the function, after=N not for first N calls,
+ * times=N at most N times, import.NAME=VALUE only calls with the import parameter value. Random decisions are
+ * repeatable for the same seed and order of calls.
+ */
+public class FaultInjectingTransport implements RfcTransport {
+
+    private final RfcTransport transport;
+
+    private final Random random;
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    private final Map<String, AtomicInteger> functionCalls = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> injected = new ConcurrentHashMap<>();
+
+    /**
+     * One line of the script.
+     */
+    private static final class Rule {
+
+        final String function;
+
+        final String fault;
+
+        final Map<String, String> options;
+
+        final Map<String, String> imports = new HashMap<>();
+
+        final AtomicInteger applied = new AtomicInteger();
+
+        Rule(String function, String fault, Map<String, String> options) {
+            this.function = function;
+            this.fault = fault;
+            this.options = options;
+            options.forEach((name, value) -> {
+                if (name.startsWith("import.")) {
+                    imports.put(name.substring("import.".length()), value);
+                }
+            });
+        }
+
+        double number(String option, double defaultValue) {
+            String value = options.get(option);
+            return value == null ? defaultValue : Double.parseDouble(value);
+        }
+
+        String string(String option, String defaultValue) {
+            return options.getOrDefault(option, defaultValue);
+        }
+    }
+
+    public FaultInjectingTransport(RfcTransport transport, long seed, String script) {
+        this.transport = transport;
+        this.random = new Random(seed);
+        for (String line : script.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = trimmed.split("\\s+");
+            if (tokens.length < 2) {
+                throw new IllegalArgumentException("Rule must have function and fault: " + line);
+            }
+            Map<String, String> options = new HashMap<>();
+            for (int i = 2; i < tokens.length; i++) {
+                int separator = tokens[i].indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Option must be name=value: " + tokens[i]);
+                }
+                options.put(tokens[i].substring(0, separator), tokens[i].substring(separator + 1));
+            }
+            switch (tokens[1]) {
+                case "latency":
+                case "fail":
+                case "empty":
+                case "warning":
+                    rules.add(new Rule(tokens[0], tokens[1], options));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown fault " + tokens[1] + " in: " + line);
+            }
+        }
+    }
+
+    /**
+     * @return count of injected faults of given type (latency, fail, empty, warning)
+     */
+    public long getInjected(String fault) {
+        LongAdder count = injected.get(fault);
+        return count == null ? 0 : count.sum();
+    }
+
+    @Override
+    public void execute(JCoFunction function) throws JCoException {
+        int call = functionCalls.computeIfAbsent(function.getName(), name -> new AtomicInteger()).incrementAndGet();
+        List<Rule> after = new ArrayList<>();
+        for (Rule rule : rules) {
+            if (!applies(rule, function, call)) {
+                continue;
+            }
+            count(rule.fault);
+            switch (rule.fault) {
+                case "latency":
+                    sleep(latency(rule));
+                    break;
+                case "empty":
+                    throw new SapSimulator.SimulatedAbapException("TABLE_EMPTY", "000", "TABLE_EMPTY");
+                case "fail":
+                    if (!"after".equals(rule.string("when", "before"))) {
+                        throw communicationFailure(rule, function);
+                    }
+                    after.add(rule);
+                    break;
+                default:
+                    after.add(rule);
+            }
+        }
+
+        transport.execute(function);
+
+        for (Rule rule : after) {
+            if ("fail".equals(rule.fault)) {
+                throw communicationFailure(rule, function);
+            }
+            JCoParameterList tables = function.getTableParameterList();
+            JCoTable messages = tables == null ? null : tables.getTable("RETURN");
+            if (messages != null) {
+                messages.appendRow();
+                messages.setValue("TYPE", "W");
+                messages.setValue("NUMBER", rule.string("number", "001"));
+                messages.setValue("MESSAGE", "Injected warning for " + function.getName());
+                messages.firstRow();
+            }
+        }
+    }
+
+    private boolean applies(Rule rule, JCoFunction function, int call) {
+        if (!"*".equals(rule.function) && !rule.function.equals(function.getName())) {
+            return false;
+        }
+        if (rule.options.containsKey("at") && call != (int) rule.number("at", 0)) {
+            return false;
+        }
+        if (call <= rule.number("after", 0)) {
+            return false;
+        }
+        for (Map.Entry<String, String> condition : rule.imports.entrySet()) {
+            JCoParameterList imports = function.getImportParameterList();
+            if (imports == null || !condition.getValue().equals(imports.getString(condition.getKey()))) {
+                return false;
+            }
+        }
+        if (rule.options.containsKey("times") && rule.applied.get() >= rule.number("times", 0)) {
+            return false;
+        }
+        // tail latency is decided in latency()
+        boolean tail = "latency".equals(rule.fault) && rule.options.containsKey("tail");
+        if (!tail && nextDouble() >= rule.number("p", 1)) {
+            return false;
+        }
+        rule.applied.incrementAndGet();
+        return true;
+    }
+
+    private long latency(Rule rule) {
+        double ms = rule.number("ms", 0);
+        if (rule.options.containsKey("tail")) {
+            return (long) (nextDouble() < rule.number("p", 1) ? rule.number("tail", ms) : ms);
+        } else if (rule.options.containsKey("max")) {
+            return (long) (ms + nextDouble() * (rule.number("max", ms) - ms));
+        } else if (rule.options.containsKey("sigma")) {
+            return (long) (ms * Math.exp(rule.number("sigma", 0) * nextGaussian()));
+        }
+        return (long) ms;
+    }
+
+    private JCoException communicationFailure(Rule rule, JCoFunction function) {
+        int group = (int) rule.number("group", JCoException.JCO_ERROR_COMMUNICATION);
+        return new ReplayRfcTransport.ReplayedException(group, "JCO_ERROR_" + group,
+                null, "Injected failure of " + function.getName());
+    }
+
+    private void count(String fault) {
+        injected.computeIfAbsent(fault, name -> new LongAdder()).increment();
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private synchronized double nextGaussian() {
+        return random.nextGaussian();
+    }
+
+    private static void sleep(long millis) throws JCoException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JCoException(JCoException.JCO_ERROR_CANCELLED, "CANCELLED", "Call was interrupted");
+        }
+    }
+
+    // --- delegated
+
+    @Override
+    public String getDestinationName() {
+        return transport.getDestinationName();
+    }
+
+    @Override
+    public JCoFunction getFunction(String name) throws JCoException {
+        return transport.getFunction(name);
+    }
+
+    @Override
+    public void ping() throws JCoException {
+        transport.ping();
+    }
+
+    @Override
+    public boolean isValid() {
+        return transport.isValid();
+    }
+
+    @Override
+    public void begin() {
+        transport.begin();
+    }
+
+    @Override
+    public void end() throws JCoException {
+        transport.end();
+    }
+
+    @Override
+    public boolean isStateful() {
+        return transport.isStateful();
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+    }
+}
@@ -0,0 +1,235 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Reconciliation over simulated SAP with injected latency and faults, runs without SAP.
+ */
+public class FaultInjectionTest {
+
+    private static final int USERS = 80;
+
+    private static final ObjectClass ROLE = new ObjectClass("ACTIVITYGROUP");
+
+    private static final String SUB_TABLE = "AGR_TEXTS for AGR_DEFINE format TSV as ShortDescription="
+            + "MANDT:3:IGNORE,AGR_NAME:30:MATCH,SPRAS:1(\"E\"):IGNORE,LINE:5(\"00000\"):IGNORE,TEXT:80";
+
+    private static List<String> userNames() {
+        List<String> userNames = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            userNames.add(String.format("USER%06d", i));
+        }
+        return userNames;
+    }
+
+    private static List<ConnectorObject> search(SapConnector connector, ObjectClass objectClass, OperationOptions options) {
+        List<ConnectorObject> found = new CopyOnWriteArrayList<>();
+        connector.executeQuery(objectClass, null, found::add, options);
+        return found;
+    }
+
+    private static List<String> names(List<ConnectorObject> objects) {
+        return objects.stream().map(o -> o.getName().getNameValue()).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testTailLatency() {
+        SapSimulator simulator = SapSimulator.generate("SIM_FAULT_LATENCY", USERS, 1);
+        // calls are in progress in the simulator long enough to overlap, if they are executed in parallel
+        simulator.setLatency(2, 0);
+        FaultInjectingTransport transport = new FaultInjectingTransport(simulator, 1,
+                "*                    latency ms=1 sigma=0.5\n"
+                        + "BAPI_USER_GET_DETAIL latency ms=0 tail=40 p=0.05\n");
+
+        SapConnector serial = new SapConnector(transport);
+        serial.init(simulator.createConfiguration());
+        simulator.resetStatistics();
+        Assert.assertEquals(names(search(serial, ObjectClass.ACCOUNT, null)), userNames());
+        Assert.assertEquals(simulator.getMaxConcurrency(), 1);
+        Assert.assertEquals(simulator.getCalls("BAPI_USER_GET_DETAIL"), USERS);
+
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setReconciliationPartitions(new String[]{"USER000021", "USER000041", "USER000061"});
+        configuration.setReconciliationThreads(4);
+        SapConnector partitioned = new SapConnector(transport);
+        partitioned.init(configuration);
+        simulator.resetStatistics();
+        Assert.assertEquals(names(search(partitioned, ObjectClass.ACCOUNT, null)), userNames());
+
+        Assert.assertTrue(transport.getInjected("latency") > 0);
+        // partitions are read at the same time, slow calls in one of them don't hold the others
+        Assert.assertTrue(simulator.getMaxConcurrency() > 1, "max concurrency " + simulator.getMaxConcurrency());
+        // each user is read once, in one partition
+        Assert.assertEquals(simulator.getCalls("BAPI_USER_GET_DETAIL"), USERS);
+        Assert.assertEquals(simulator.getCalls("BAPI_USER_GETLIST"), 4);
+    }
+
+    @Test
+    public void testPartitionedReadsShareThreads() throws Exception {
+        SapSimulator simulator = SapSimulator.generate("SIM_FAULT_SHARED", USERS, 1);
+        simulator.setLatency(2, 0);
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setReconciliationPartitions(new String[]{"USER000021", "USER000041", "USER000061"});
+        configuration.setReconciliationThreads(2);
+
+        // two reconciliations of the same destination at the same time
+        List<Thread> threads = new ArrayList<>();
+        List<List<String>> found = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            SapConnector connector = simulator.connect(configuration);
+            threads.add(new Thread(() -> found.add(names(search(connector, ObjectClass.ACCOUNT, null)))));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(found.size(), 2);
+        Assert.assertEquals(found.get(0), userNames());
+        Assert.assertEquals(found.get(1), userNames());
+        Assert.assertTrue(simulator.getMaxConcurrency() <= 2, "max concurrency " + simulator.getMaxConcurrency());
+    }
+
+    @Test
+    public void testReadStoppedByHandlerKeepsCheckpoint() throws Exception {
+        SapSimulator simulator = SapSimulator.generate("SIM_FAULT_STOPPED", USERS, 1);
+        assertStoppedReadResumes(simulator, simulator.createConfiguration());
+    }
+
+    @Test
+    public void testPartitionedReadStoppedByHandlerKeepsCheckpoint() throws Exception {
+        SapSimulator simulator = SapSimulator.generate("SIM_FAULT_STOPPED_PARTITIONED", USERS, 1);
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setReconciliationPartitions(new String[]{"USER000021", "USER000041", "USER000061"});
+        configuration.setReconciliationThreads(4);
+        assertStoppedReadResumes(simulator, configuration);
+    }
+
+    private static void assertStoppedReadResumes(SapSimulator simulator, SapConfiguration configuration) throws IOException {
+        File stateDirectory = Files.createTempDirectory("sap-fault").toFile();
+        configuration.setStateDirectory(stateDirectory.getAbsolutePath());
+        configuration.setCheckpointInterval(10);
+        SapConnector connector = simulator.connect(configuration);
+        try {
+            List<ConnectorObject> first = new ArrayList<>();
+            connector.executeQuery(ObjectClass.ACCOUNT, null, connectorObject -> {
+                first.add(connectorObject);
+                return first.size() < 30;
+            }, null);
+            Assert.assertEquals(first.size(), 30);
+
+            OperationOptions resume = new OperationOptionsBuilder()
+                    .setOption(SapConnector.OPTION_RESUME_FROM_CHECKPOINT, Boolean.TRUE).build();
+            List<ConnectorObject> resumed = search(connector, ObjectClass.ACCOUNT, resume);
+            // user which stopped the read is not confirmed in checkpoint
+            Assert.assertEquals(names(resumed), userNames().subList(29, USERS));
+        } finally {
+            for (File file : stateDirectory.listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(stateDirectory.toPath());
+        }
+    }
+
+    @Test
+    public void testResumeAfterCommunicationFailure() throws Exception {
+        SapSimulator simulator = SapSimulator.generate("SIM_FAULT_RESUME", USERS, 1);
+        // responses of all attempts to read 57th user are lost
+        FaultInjectingTransport transport = new FaultInjectingTransport(simulator, 1,
+                "BAPI_USER_GET_DETAIL fail after=56 times=3 when=after\n");
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setRfcRetryBackoff(1);
+        configuration.setStateDirectory(Files.createTempDirectory("sap-fault").toFile().getAbsolutePath());
+        configuration.setCheckpointInterval(10);
+        SapConnector connector = new SapConnector(transport);
+        connector.init(configuration);
+
+        List<ConnectorObject> first = new ArrayList<>();
+        try {
+            connector.executeQuery(ObjectClass.ACCOUNT, null, first::add, null);
+            Assert.fail("communication failure expected");
+        } catch (ConnectorIOException e) {
+            // expected
+        }
+        Assert.assertEquals(transport.getInjected("fail"), 3);
+        Assert.assertEquals(first.size(), 56);
+
+        simulator.resetStatistics();
+        OperationOptions resume = new OperationOptionsBuilder()
+                .setOption(SapConnector.OPTION_RESUME_FROM_CHECKPOINT, Boolean.TRUE).build();
+        List<ConnectorObject> resumed = search(connector, ObjectClass.ACCOUNT, resume);
+
+        Set<String> all = new HashSet<>(names(first));
+        all.addAll(names(resumed));
+        Assert.assertEquals(all, new HashSet<>(userNames()));
+        Assert.assertTrue(first.size() + resumed.size() - USERS <= 10, "duplicates: " + (first.size() + resumed.size() - USERS));
+        Assert.assertEquals(simulator.getCalls("BAPI_USER_GET_DETAIL"), resumed.size());
+    }
+
+    @Test
+    public void testEmptySubTable() {
+        SapSimulator simulator = SapSimulator.generate("SIM_FAULT_EMPTY", 5, 1);
+        for (int i = 0; i < 50; i++) {
+            String agrName = String.format("Z_ROLE_%02d", i);
+            simulator.addTableRow("AGR_TEXTS", String.format("%s%-30sE00000%-80s", SapSimulator.CLIENT, agrName, "Role " + i));
+        }
+        FaultInjectingTransport transport = new FaultInjectingTransport(simulator, 1,
+                "RFC_GET_TABLE_ENTRIES empty p=0.3 import.TABLE_NAME=AGR_TEXTS\n");
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setSubTables(new String[]{SUB_TABLE});
+        SapConnector connector = new SapConnector(transport);
+        connector.init(configuration);
+
+        List<ConnectorObject> roles = search(connector, ROLE, null);
+        Assert.assertEquals(roles.size(), 50);
+        long empty = roles.stream()
+                .filter(role -> role.getAttributeByName("ShortDescription").getValue().isEmpty())
+                .count();
+        Assert.assertTrue(empty > 0);
+        // only the rows with injected TABLE_EMPTY lost their texts
+        Assert.assertEquals(empty, transport.getInjected("empty"));
+    }
+
+    @Test
+    public void testReturnWarnings() {
+        SapSimulator simulator = SapSimulator.generate("SIM_FAULT_WARNING", USERS, 1);
+        String script = "BAPI_USER_GET_DETAIL warning p=0.2 number=148\n";
+        FaultInjectingTransport transport = new FaultInjectingTransport(simulator, 1, script);
+        SapConfiguration tolerantConfiguration = simulator.createConfiguration();
+        tolerantConfiguration.setFailWhenWarning(false);
+        SapConnector tolerant = new SapConnector(transport);
+        tolerant.init(tolerantConfiguration);
+        Assert.assertEquals(names(search(tolerant, ObjectClass.ACCOUNT, null)), userNames());
+        Assert.assertTrue(transport.getInjected("warning") > 0);
+
+        // failWhenWarning is true by default
+        SapConnector strict = new SapConnector(new FaultInjectingTransport(simulator, 1, script));
+        strict.init(simulator.createConfiguration());
+        List<ConnectorObject> found = Collections.synchronizedList(new ArrayList<>());
+        try {
+            strict.executeQuery(ObjectClass.ACCOUNT, null, found::add, null);
+            Assert.fail("warning should fail the read");
+        } catch (ConnectorException e) {
+            Assert.assertTrue(e.getMessage().contains("W:148"), e.getMessage());
+        }
+        Assert.assertTrue(found.size() < USERS);
+    }
+}
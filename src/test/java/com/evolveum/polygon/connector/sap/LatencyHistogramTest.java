@@ -0,0 +1,49 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histogram of RFC calls, runs without SAP.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long micros : new long[]{0, 1, 15, 16, 17, 100, 1000, 123456, 10000000000L}) {
+            int bucket = LatencyHistogram.bucket(micros);
+            Assert.assertTrue(LatencyHistogram.bucketLimit(bucket) >= micros, "limit of " + micros);
+            Assert.assertTrue(LatencyHistogram.bucketLimit(bucket) <= micros * 1.125 + 1, "error of " + micros);
+            if (bucket > 0) {
+                Assert.assertTrue(LatencyHistogram.bucketLimit(bucket - 1) < micros, "previous of " + micros);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        Assert.assertEquals(histogram.getCount(), 100);
+        Assert.assertEquals(histogram.getMeanMillis(), 50.5, 0.001);
+        Assert.assertEquals(histogram.getMaxMillis(), 100.0, 0.001);
+        Assert.assertEquals(histogram.getPercentileMillis(50), 50, 50 * 0.125);
+        Assert.assertEquals(histogram.getPercentileMillis(99), 99, 99 * 0.125);
+        Assert.assertEquals(histogram.getPercentileMillis(100), 100.0, 0.001);
+    }
+
+    @Test
+    public void testFunctionMetrics() {
+        RfcFunctionMetrics metrics = new RfcFunctionMetrics("BAPI_USER_GET_DETAIL");
+        metrics.record(TimeUnit.MILLISECONDS.toNanos(10), null);
+        metrics.record(TimeUnit.MILLISECONDS.toNanos(20), "COMMUNICATION");
+        RfcFunctionStats stats = metrics.toStats();
+        Assert.assertEquals(stats.getCalls(), 2);
+        Assert.assertEquals(stats.getErrors(), 1);
+        Assert.assertEquals(stats.getErrorsByGroup().get("COMMUNICATION"), Long.valueOf(1));
+    }
+}
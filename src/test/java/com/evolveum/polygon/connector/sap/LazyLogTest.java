@@ -0,0 +1,38 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.common.logging.Log;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lazy log arguments and sampling of per-object messages, runs without SAP.
+ */
+public class LazyLogTest {
+
+    @Test
+    public void testLazy() {
+        AtomicInteger calls = new AtomicInteger();
+        Object argument = LazyLog.lazy(() -> "<xml>" + calls.incrementAndGet() + "</xml>");
+        Assert.assertEquals(calls.get(), 0);
+        Assert.assertEquals(argument.toString(), "<xml>1</xml>");
+        Assert.assertEquals(calls.get(), 1);
+        Assert.assertEquals(LazyLog.xml(null).toString(), "null");
+    }
+
+    @Test
+    public void testSampler() {
+        LazyLog.Sampler sampler = new LazyLog.Sampler(Log.getLog(LazyLogTest.class), 3, 10);
+        List<Long> logged = new ArrayList<>();
+        for (int i = 0; i < 35; i++) {
+            long sample = sampler.sample();
+            if (sample > 0) {
+                logged.add(sample);
+            }
+        }
+        Assert.assertEquals(logged, List.of(1L, 2L, 3L, 10L, 20L, 30L));
+    }
+}
@@ -0,0 +1,109 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Overhead of logging per read object in reconciliation with OK level disabled (usual production setting):
+ * eager arguments (string concatenation, XML serialization) as before, lazy arguments with sampled object log,
+ * and no logging at all. Runs without SAP, start it from IDE or with:
+ * <pre>
+ * java -cp target/test-classes:target/classes:... com.evolveum.polygon.connector.sap.LoggingOverheadBenchmark
+ * </pre>
+ */
+public class LoggingOverheadBenchmark {
+
+    private static final int OBJECTS = 20000;
+    private static final int ROUNDS = 10;
+
+    private final Log log;
+
+    private final LazyLog.Sampler sampler;
+
+    private final List<ConnectorObject> objects = new ArrayList<>();
+
+    // simulates toXML() of table parameter list with 10 activity groups
+    private final Supplier<String> xml = () -> {
+        StringBuilder sb = new StringBuilder("<TABLES>");
+        for (int i = 0; i < 10; i++) {
+            sb.append("<ACTIVITYGROUPS><item><AGR_NAME>SAP_ROLE_").append(i)
+                    .append("</AGR_NAME><FROM_DAT>2020-01-01</FROM_DAT><TO_DAT>9999-12-31</TO_DAT></item></ACTIVITYGROUPS>");
+        }
+        return sb.append("</TABLES>").toString();
+    };
+
+    private long sink;
+
+    private LoggingOverheadBenchmark() {
+        log = Log.getLog(LoggingOverheadBenchmark.class);
+        sampler = new LazyLog.Sampler(log, 10, 100);
+        for (int i = 0; i < OBJECTS; i++) {
+            ConnectorObjectBuilder builder = new ConnectorObjectBuilder().setUid("USER" + i).setName("USER" + i);
+            for (int a = 0; a < 30; a++) {
+                builder.addAttribute(AttributeBuilder.build("ADDRESS.ATTR" + a, "value " + a + " of user " + i));
+            }
+            objects.add(builder.build());
+        }
+    }
+
+    private void eager() {
+        for (ConnectorObject object : objects) {
+            log.ok("SELECTION_EXP: " + xml.get());
+            List<String> ret = List.of("S:000:User " + object.getName().getNameValue() + " read");
+            log.ok("Return messages: " + ret + " for function: " + "BAPI_USER_GET_DETAIL");
+            log.ok("ConnectorObject: {0}", object);
+            sink += object.hashCode();
+        }
+    }
+
+    private void lazy() {
+        for (ConnectorObject object : objects) {
+            log.ok("SELECTION_EXP: {0}", LazyLog.lazy(xml));
+            List<String> ret = List.of("S:000:User " + object.getName().getNameValue() + " read");
+            log.ok("Return messages: {0} for function: {1}", ret, "BAPI_USER_GET_DETAIL");
+            sampler.ok("ConnectorObject: {0}", object);
+            sink += object.hashCode();
+        }
+    }
+
+    private void none() {
+        for (ConnectorObject object : objects) {
+            List<String> ret = List.of("S:000:User " + object.getName().getNameValue() + " read");
+            sink += object.hashCode() + ret.size();
+        }
+    }
+
+    private double measure(Runnable run) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / OBJECTS;
+    }
+
+    public static void main(String[] args) {
+        // JDK logging with default INFO level, so OK (FINE) messages are disabled
+        System.setProperty(Log.LOGSPI_PROP, "org.identityconnectors.common.logging.impl.JDKLogger");
+        LoggingOverheadBenchmark benchmark = new LoggingOverheadBenchmark();
+        if (benchmark.log.isOk()) {
+            System.out.println("OK level is enabled, results are not representative");
+        }
+        for (int warmup = 0; warmup < 3; warmup++) {
+            benchmark.measure(benchmark::eager);
+            benchmark.measure(benchmark::lazy);
+            benchmark.measure(benchmark::none);
+        }
+        System.out.printf("eager logging: %8.1f ns/object%n", benchmark.measure(benchmark::eager));
+        System.out.printf("lazy logging:  %8.1f ns/object%n", benchmark.measure(benchmark::lazy));
+        System.out.printf("no logging:    %8.1f ns/object%n", benchmark.measure(benchmark::none));
+        System.out.println("(" + benchmark.sink + ")");
+    }
+}
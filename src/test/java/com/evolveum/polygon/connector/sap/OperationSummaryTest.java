@@ -0,0 +1,80 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Operation summary counters and wrapped handlers, runs without SAP.
+ */
+public class OperationSummaryTest {
+
+    @Test
+    public void testSummary() {
+        OperationSummary summary = new OperationSummary("executeQuery", ObjectClass.ACCOUNT, "TESTDEST");
+        summary.rfc("BAPI_USER_GETLIST", 2000000L, 3);
+        summary.rfc("BAPI_USER_GET_DETAIL", 1000000L, 5);
+        summary.rfc("BAPI_USER_GET_DETAIL", 1000000L, 7);
+        summary.conversion(500000L);
+        summary.xml(120);
+        summary.filtered();
+
+        List<ConnectorObject> handled = new ArrayList<>();
+        List<SearchResult> results = new ArrayList<>();
+        ResultsHandler handler = summary.wrapSearch(new SearchResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject connectorObject) {
+                handled.add(connectorObject);
+                return true;
+            }
+
+            @Override
+            public void handleResult(SearchResult result) {
+                results.add(result);
+            }
+        });
+        Assert.assertTrue(handler.handle(user("A")));
+        Assert.assertTrue(handler.handle(user("B")));
+        SearchPage.of(List.of("A", "B", "C"), new OperationOptionsBuilder().setPageSize(2).build()).complete(handler, "B", 2, 3);
+        summary.finish();
+
+        Assert.assertEquals(handled.size(), 2);
+        Assert.assertEquals(results.size(), 1);
+        Assert.assertEquals(results.get(0).getRemainingPagedResults(), 1);
+        Assert.assertEquals(summary.getDelivered(), 2);
+        Assert.assertEquals(summary.getFiltered(), 1);
+        Assert.assertEquals(summary.getRfcCalls(), 3);
+        Assert.assertEquals(summary.getRows(), 15);
+        Assert.assertEquals(summary.getRfcMillis(), 4);
+        Assert.assertEquals(summary.getFunctions().get("BAPI_USER_GET_DETAIL").getCalls(), 2);
+        Assert.assertEquals(summary.getXmlLength(), 120);
+        Assert.assertEquals(summary.getOutcome(), "OK");
+        Assert.assertTrue(summary.toString().startsWith("executeQuery __ACCOUNT__ on TESTDEST: OK"), summary.toString());
+    }
+
+    @Test
+    public void testPlainHandler() {
+        OperationSummary summary = new OperationSummary("executeQuery", ObjectClass.ACCOUNT, "TESTDEST");
+        ResultsHandler handler = summary.wrapSearch(connectorObject -> false);
+        Assert.assertFalse(handler.handle(user("A")));
+        // original handler does not support paged results, nothing to pass
+        ((SearchResultsHandler) handler).handleResult(new SearchResult());
+        summary.failed(new IllegalStateException());
+        summary.finish();
+        Assert.assertEquals(summary.getDelivered(), 1);
+        Assert.assertEquals(summary.getOutcome(), "IllegalStateException");
+    }
+
+    private ConnectorObject user(String name) {
+        return new ConnectorObjectBuilder().setUid(name).setName(name).build();
+    }
+}
@@ -0,0 +1,62 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Parallel reads with ordered results, runs without SAP.
+ */
+public class OrderedFetcherTest {
+
+    private List<Integer> items(int count) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        List<Integer> consumed = new ArrayList<>();
+        try (OrderedFetcher fetcher = new OrderedFetcher(4, "test")) {
+            boolean finished = fetcher.run(items(100), item -> {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+                return item;
+            }, consumed::add);
+            Assert.assertTrue(finished);
+        }
+        Assert.assertEquals(consumed, items(100));
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        List<Integer> consumed = new ArrayList<>();
+        try (OrderedFetcher fetcher = new OrderedFetcher(4, "test")) {
+            boolean finished = fetcher.run(items(100), item -> item, item -> consumed.add(item) && item < 9);
+            Assert.assertFalse(finished);
+        }
+        Assert.assertEquals(consumed, items(10));
+    }
+
+    @Test
+    public void testErrorKeepsPrefix() throws Exception {
+        List<Integer> consumed = new ArrayList<>();
+        try (OrderedFetcher fetcher = new OrderedFetcher(4, "test")) {
+            fetcher.run(items(100), item -> {
+                if (item == 20) {
+                    throw new IllegalStateException("read failed");
+                }
+                return item;
+            }, consumed::add);
+            Assert.fail("exception expected");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "read failed");
+        }
+        Assert.assertEquals(consumed, items(20));
+    }
+}
@@ -0,0 +1,49 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiting of RFC calls, runs without SAP.
+ */
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstThenRate() {
+        RateLimiter limiter = new RateLimiter(10);
+        long now = 1000 * SECOND;
+        // burst of one second
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(limiter.reserve(now) <= 0, "call " + i);
+        }
+        // then one call per 100 ms
+        Assert.assertEquals(limiter.reserve(now), SECOND / 10);
+        Assert.assertEquals(limiter.reserve(now), 2 * SECOND / 10);
+
+        // after a pause the bucket is full again
+        Assert.assertTrue(limiter.reserve(now + 10 * SECOND) <= 0);
+    }
+
+    @Test
+    public void testSlowRate() {
+        RateLimiter limiter = new RateLimiter(0.5);
+        long now = 1000 * SECOND;
+        Assert.assertTrue(limiter.reserve(now) <= 0);
+        Assert.assertEquals(limiter.reserve(now), 2 * SECOND);
+    }
+
+    @Test
+    public void testFunctionClass() {
+        Assert.assertEquals(RfcFunctionClass.of("BAPI_USER_GET_DETAIL"), RfcFunctionClass.READ);
+        Assert.assertEquals(RfcFunctionClass.of("BAPI_USER_GETLIST"), RfcFunctionClass.READ);
+        Assert.assertEquals(RfcFunctionClass.of("BAPI_USER_CHANGE"), RfcFunctionClass.WRITE);
+        Assert.assertEquals(RfcFunctionClass.of("BAPI_TRANSACTION_COMMIT"), RfcFunctionClass.WRITE);
+        Assert.assertEquals(RfcFunctionClass.of("SUSR_USER_CHANGE_PASSWORD_RFC"), RfcFunctionClass.PASSWORD);
+        Assert.assertEquals(RfcFunctionClass.of("RFC_READ_TABLE"), RfcFunctionClass.TABLE);
+        Assert.assertEquals(RfcFunctionClass.of("RFC_GET_TABLE_ENTRIES"), RfcFunctionClass.TABLE);
+    }
+}
@@ -0,0 +1,135 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Recording of RFC calls over simulated SAP and their replay, runs without SAP.
+ */
+public class RecordReplayTest {
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("rfc-recording").toFile();
+    }
+
+    @AfterMethod
+    public void deleteDirectory() throws IOException {
+        for (File file : directory.listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory.toPath());
+    }
+
+    private static List<String> search(SapConnector connector, ObjectClass objectClass) {
+        List<ConnectorObject> found = new ArrayList<>();
+        connector.executeQuery(objectClass, null, found::add, null);
+        return found.stream().map(Object::toString).collect(Collectors.toList());
+    }
+
+    private static String read(File file) throws IOException {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        SapSimulator simulator = SapSimulator.generate("SIM_RECORD", 25, 1);
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setRfcRecordingDirectory(directory.getAbsolutePath());
+        SapConnector recorded = simulator.connect(configuration);
+
+        SyncToken token = recorded.getLatestSyncToken(ObjectClass.ACCOUNT);
+        List<String> users = search(recorded, ObjectClass.ACCOUNT);
+        List<String> roles = search(recorded, new ObjectClass("ACTIVITYGROUP"));
+        // created user is changed after the token
+        simulator.setClock(() -> System.currentTimeMillis() + 5000);
+        Set<Attribute> attributes = new HashSet<>();
+        attributes.add(new Name("JSMITH"));
+        attributes.add(AttributeBuilder.build("ADDRESS.LASTNAME", "Smith"));
+        attributes.add(AttributeBuilder.buildPassword("Secret123!".toCharArray()));
+        recorded.create(ObjectClass.ACCOUNT, attributes, null);
+        List<SyncDelta> deltas = new ArrayList<>();
+        recorded.sync(ObjectClass.ACCOUNT, token, deltas::add, null);
+        recorded.dispose();
+
+        File[] files = directory.listFiles();
+        Assert.assertEquals(files.length, 1);
+        String recording = read(files[0]);
+        Assert.assertFalse(recording.contains("Secret123!"));
+        Assert.assertFalse(recording.contains(SapSimulator.DEFAULT_PASSWORD));
+        Assert.assertTrue(recording.contains(RecordingRfcTransport.MASK));
+
+        ReplayRfcTransport replay = new ReplayRfcTransport(directory, 0);
+        Assert.assertEquals(replay.getDestinationName(), "SIM_RECORD");
+        Assert.assertEquals(replay.getRecordedCalls(), simulator.getCalls());
+        SapConfiguration replayConfiguration = simulator.createConfiguration();
+        SapConnector replayed = new SapConnector(replay);
+        replayed.init(replayConfiguration);
+
+        // reconciliation can be replayed more times
+        for (int run = 0; run < 2; run++) {
+            Assert.assertEquals(search(replayed, ObjectClass.ACCOUNT), users);
+        }
+        Assert.assertEquals(search(replayed, new ObjectClass("ACTIVITYGROUP")), roles);
+        Assert.assertEquals(replayed.create(ObjectClass.ACCOUNT, attributes, null), new Uid("JSMITH"));
+        List<SyncDelta> replayedDeltas = new ArrayList<>();
+        replayed.sync(ObjectClass.ACCOUNT, token, replayedDeltas::add, null);
+        Assert.assertEquals(deltas.size(), 1);
+        Assert.assertEquals(replayedDeltas.size(), 1);
+        Assert.assertEquals(replayedDeltas.get(0).getObject().toString(), deltas.get(0).getObject().toString());
+    }
+
+    @Test
+    public void testReplayLatency() throws Exception {
+        SapSimulator simulator = SapSimulator.generate("SIM_RECORD_LATENCY", 5, 1);
+        simulator.setLatency(20, 0);
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setRfcRecordingDirectory(directory.getAbsolutePath());
+        SapConnector recorded = simulator.connect(configuration);
+        List<String> users = search(recorded, ObjectClass.ACCOUNT);
+        recorded.dispose();
+
+        SapConnector original = new SapConnector(new ReplayRfcTransport(directory, 1));
+        original.init(simulator.createConfiguration());
+        Assert.assertEquals(search(original, ObjectClass.ACCOUNT), users);
+        // list and detail of each user
+        Assert.assertTrue(original.getLastOperationSummary().getRfcMillis() >= 6 * 20);
+
+        ReplayRfcTransport fast = new ReplayRfcTransport(directory, 0);
+        SapConnector scaled = new SapConnector(fast);
+        scaled.init(simulator.createConfiguration());
+        Assert.assertEquals(search(scaled, ObjectClass.ACCOUNT), users);
+        Assert.assertTrue(scaled.getLastOperationSummary().getRfcMillis() < 6 * 20);
+        Assert.assertEquals(fast.getReplayedCalls(), 6);
+    }
+}
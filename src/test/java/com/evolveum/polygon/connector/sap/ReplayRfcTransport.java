@@ -0,0 +1,367 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.evolveum.polygon.connector.sap.SimulatedRecords.Field;
+import com.evolveum.polygon.connector.sap.SimulatedRecords.Meta;
+import com.sap.conn.jco.JCoException;
+import com.sap.conn.jco.JCoField;
+import com.sap.conn.jco.JCoFunction;
+import com.sap.conn.jco.JCoMetaData;
+import com.sap.conn.jco.JCoParameterList;
+import com.sap.conn.jco.JCoRecord;
+import com.sap.conn.jco.JCoTable;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Serves RFC calls recorded by {@link RecordingRfcTransport} back to {@link SapConnector}, without SAP.
+ * <br/>
+ * Calls are matched by function name and request (import and table parameters, passwords masked the same way as in
+ * recording). Responses of the same request are returned in recorded order, repeatedly, so one recording can be
+ * replayed by more runs and threads. Each call takes its recorded duration multiplied by latency scale (0 = no delay).
+ * Functions fetched but not called in recording are available with their metadata, other functions don't exist.
+ */
+public class ReplayRfcTransport implements RfcTransport {
+
+    private final String destinationName;
+
+    private final double latencyScale;
+
+    private final Map<String, Meta[]> functions = new HashMap<>();
+
+    private final Map<String, Responses> calls = new HashMap<>();
+
+    private final LongAdder replayed = new LongAdder();
+
+    private int recordedCalls;
+
+    /**
+     * Recorded response of a call.
+     */
+    private static final class Response {
+
+        final long durationMicros;
+
+        // path and value pairs, null if the call failed
+        final List<String[]> values;
+
+        // group, key, message number, message
+        final String[] error;
+
+        Response(long durationMicros, List<String[]> values, String[] error) {
+            this.durationMicros = durationMicros;
+            this.values = values;
+            this.error = error;
+        }
+    }
+
+    private static final class Responses {
+
+        final List<Response> responses = new ArrayList<>();
+
+        final AtomicInteger next = new AtomicInteger();
+
+        Response next() {
+            return responses.get(Math.floorMod(next.getAndIncrement(), responses.size()));
+        }
+    }
+
+    /**
+     * Exception of recorded failed call, with recorded group, key and message.
+     */
+    static class ReplayedException extends JCoException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int group;
+
+        private final String key;
+
+        private final String messageNumber;
+
+        private final String message;
+
+        ReplayedException(int group, String key, String messageNumber, String message) {
+            super(group, key, message);
+            this.group = group;
+            this.key = key;
+            this.messageNumber = messageNumber;
+            this.message = message;
+        }
+
+        @Override
+        public int getGroup() {
+            return group;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String getMessageNumber() {
+            return messageNumber;
+        }
+
+        @Override
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + group + ") " + key + ": " + message + (messageNumber == null ? "" : " Message " + messageNumber);
+        }
+    }
+
+    /**
+     * @param recording recorded file or directory with recorded files (*.rfc.gz) of one destination
+     * @param latencyScale multiplier of recorded call durations, 1 = original latency, 0 = no delay
+     */
+    public ReplayRfcTransport(File recording, double latencyScale) throws IOException {
+        this.latencyScale = latencyScale;
+        File[] files = recording.isDirectory() ? recording.listFiles((dir, name) -> name.endsWith(".rfc.gz")) : new File[]{recording};
+        if (files == null || files.length == 0) {
+            throw new IOException("No recorded RFC calls in " + recording.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        String destination = null;
+        for (File file : files) {
+            destination = load(file);
+        }
+        this.destinationName = destination;
+    }
+
+    /**
+     * @return destination name from the recording header
+     */
+    private String load(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            String[] header = columns(reader.readLine());
+            if (!RecordingRfcTransport.HEADER.equals(header[0]) || Integer.parseInt(header[1]) != RecordingRfcTransport.VERSION) {
+                throw new IOException("Unsupported recording " + file.getAbsolutePath());
+            }
+            String line;
+            while ((line = readLine(reader)) != null) {
+                String[] columns = columns(line);
+                if ("F".equals(columns[0])) {
+                    functions.put(columns[1], new Meta[]{meta("IMPORTING", columns[2]), meta("EXPORTING", columns[3]),
+                            meta("TABLES", columns[4])});
+                } else if ("C".equals(columns[0])) {
+                    String request = readLine(reader);
+                    String response = readLine(reader);
+                    if (request == null || response == null) {
+                        // last call was not written completely
+                        break;
+                    }
+                    String[] responseColumns = columns(response);
+                    Response recorded = "!".equals(responseColumns[0])
+                            ? new Response(Long.parseLong(columns[3]), null, Arrays.copyOfRange(responseColumns, 1, 5))
+                            : new Response(Long.parseLong(columns[3]), values(responseColumns), null);
+                    calls.computeIfAbsent(key(columns[1], request.substring(1)), k -> new Responses()).responses.add(recorded);
+                    recordedCalls++;
+                }
+            }
+            return RecordingRfcTransport.unescape(header[2]);
+        }
+    }
+
+    private static String readLine(BufferedReader reader) throws IOException {
+        try {
+            return reader.readLine();
+        } catch (EOFException e) {
+            // recording of not disposed connector is flushed, but not finished
+            return null;
+        }
+    }
+
+    private static String[] columns(String line) {
+        String[] columns = line.split("\t", -1);
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = RecordingRfcTransport.unescape(columns[i]);
+        }
+        return columns;
+    }
+
+    private static List<String[]> values(String[] columns) {
+        List<String[]> values = new ArrayList<>();
+        for (int i = 1; i < columns.length; i++) {
+            int separator = columns[i].indexOf('=');
+            values.add(new String[]{columns[i].substring(0, separator), columns[i].substring(separator + 1)});
+        }
+        return values;
+    }
+
+    private static String key(String function, String request) {
+        return function + "\n" + request;
+    }
+
+    // --- metadata, see RecordingRfcTransport.describe
+
+    private static Meta meta(String name, String description) {
+        if ("-".equals(description)) {
+            return null;
+        }
+        List<Field> fields = new ArrayList<>();
+        int position = 0;
+        while (position < description.length()) {
+            position = field(description, position, fields);
+            if (position < description.length() && description.charAt(position) == ',') {
+                position++;
+            }
+        }
+        return new Meta(name, fields);
+    }
+
+    /**
+     * @return position after parsed field
+     */
+    private static int field(String description, int start, List<Field> fields) {
+        int nameEnd = description.indexOf(':', start);
+        int typeEnd = description.indexOf(':', nameEnd + 1);
+        String name = description.substring(start, nameEnd);
+        int type = Integer.parseInt(description.substring(nameEnd + 1, typeEnd));
+        if (type != JCoMetaData.TYPE_STRUCTURE && type != JCoMetaData.TYPE_TABLE) {
+            int end = typeEnd + 1;
+            while (end < description.length() && description.charAt(end) != ',' && description.charAt(end) != ')') {
+                end++;
+            }
+            fields.add(new Field(name, type, Integer.parseInt(description.substring(typeEnd + 1, end)), null));
+            return end;
+        }
+        int open = description.indexOf('(', typeEnd);
+        int depth = 1;
+        int close = open + 1;
+        while (depth > 0) {
+            char c = description.charAt(close++);
+            depth += c == '(' ? 1 : c == ')' ? -1 : 0;
+        }
+        Meta record = meta(description.substring(typeEnd + 1, open), description.substring(open + 1, close - 1));
+        fields.add(new Field(name, type, 0, record));
+        return close;
+    }
+
+    // --- statistics
+
+    /**
+     * @return count of calls in the recording
+     */
+    public int getRecordedCalls() {
+        return recordedCalls;
+    }
+
+    /**
+     * @return count of replayed calls
+     */
+    public long getReplayedCalls() {
+        return replayed.sum();
+    }
+
+    // --- RfcTransport
+
+    @Override
+    public String getDestinationName() {
+        return destinationName;
+    }
+
+    @Override
+    public JCoFunction getFunction(String name) {
+        Meta[] parameters = functions.get(name);
+        return parameters == null ? null : SimulatedRecords.function(name, parameters[0], parameters[1], parameters[2]);
+    }
+
+    @Override
+    public void execute(JCoFunction function) throws JCoException {
+        String request = RecordingRfcTransport.request(function);
+        Responses responses = calls.get(key(function.getName(), request));
+        if (responses == null) {
+            throw new IllegalStateException("Call of " + function.getName() + " with request " + request.trim() + " was not recorded");
+        }
+        Response response = responses.next();
+        replayed.increment();
+        long delay = (long) (TimeUnit.MICROSECONDS.toNanos(response.durationMicros) * latencyScale);
+        if (delay > 0) {
+            LockSupport.parkNanos(delay);
+        }
+        if (response.error != null) {
+            throw new ReplayedException(Integer.parseInt(response.error[0]), response.error[1],
+                    response.error[2].isEmpty() ? null : response.error[2], response.error[3]);
+        }
+        JCoParameterList tables = function.getTableParameterList();
+        if (tables != null) {
+            for (JCoField table : tables) {
+                table.getTable().deleteAllRows();
+            }
+        }
+        for (String[] value : response.values) {
+            JCoRecord list = value[0].startsWith("E.") ? function.getExportParameterList() : tables;
+            set(list, value[0].substring(2), value[1]);
+        }
+        if (tables != null) {
+            for (JCoField table : tables) {
+                table.getTable().firstRow();
+            }
+        }
+    }
+
+    private static void set(JCoRecord record, String path, String value) {
+        int dot = path.indexOf('.');
+        if (dot < 0) {
+            if (path.endsWith("#")) {
+                record.getTable(path.substring(0, path.length() - 1)).appendRows(Integer.parseInt(value));
+            } else {
+                record.setValue(path, value);
+            }
+            return;
+        }
+        Object nested = record.getValue(path.substring(0, dot));
+        String rest = path.substring(dot + 1);
+        if (nested instanceof JCoTable) {
+            JCoTable table = (JCoTable) nested;
+            int rowEnd = rest.indexOf('.');
+            table.setRow(Integer.parseInt(rest.substring(0, rowEnd)));
+            set(table, rest.substring(rowEnd + 1), value);
+        } else {
+            set((JCoRecord) nested, rest, value);
+        }
+    }
+
+    @Override
+    public void ping() {
+    }
+
+    @Override
+    public boolean isValid() {
+        return true;
+    }
+
+    @Override
+    public void begin() {
+    }
+
+    @Override
+    public void end() {
+    }
+
+    @Override
+    public boolean isStateful() {
+        return false;
+    }
+}
@@ -0,0 +1,131 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoException;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Retry of RFC calls failed because of transient errors, runs without SAP.
+ */
+public class RetryPolicyTest {
+
+    private static JCoException error(int group) {
+        return new ReplayRfcTransport.ReplayedException(group, "KEY", null, "failed");
+    }
+
+    @Test
+    public void testClassification() {
+        RetryPolicy policy = new RetryPolicy(3, 200, 10000, 0);
+        JCoException communication = error(JCoException.JCO_ERROR_COMMUNICATION);
+        Assert.assertTrue(policy.shouldRetry("BAPI_USER_GET_DETAIL", communication, 1, false, null));
+        Assert.assertTrue(policy.shouldRetry("RFC_GET_TABLE_ENTRIES", error(JCoException.JCO_ERROR_RESOURCE), 2, false, null));
+        // no attempts left
+        Assert.assertFalse(policy.shouldRetry("BAPI_USER_GET_DETAIL", communication, 3, false, null));
+        // not transient
+        Assert.assertFalse(policy.shouldRetry("BAPI_USER_GET_DETAIL", error(JCoException.JCO_ERROR_ABAP_EXCEPTION), 1, false, null));
+        Assert.assertFalse(policy.shouldRetry("BAPI_USER_GET_DETAIL", error(JCoException.JCO_ERROR_LOGON_FAILURE), 1, false, null));
+        // not idempotent
+        Assert.assertFalse(policy.shouldRetry("BAPI_USER_CHANGE", communication, 1, false, null));
+        Assert.assertFalse(policy.shouldRetry("BAPI_TRANSACTION_COMMIT", communication, 1, false, null));
+        Assert.assertFalse(policy.shouldRetry("SUSR_LOGIN_CHECK_RFC", communication, 1, false, null));
+        // session is lost with the connection
+        Assert.assertFalse(policy.shouldRetry("BAPI_USER_GET_DETAIL", communication, 1, true, null));
+    }
+
+    @Test
+    public void testBackoffAndBudget() {
+        RetryPolicy policy = new RetryPolicy(10, 200, 1000, 2);
+        for (int i = 0; i < 100; i++) {
+            long first = policy.backoffMillis(1);
+            Assert.assertTrue(first >= 100 && first <= 200, "backoff " + first);
+            long second = policy.backoffMillis(2);
+            Assert.assertTrue(second >= 200 && second <= 400, "backoff " + second);
+            long last = policy.backoffMillis(100);
+            Assert.assertTrue(last >= 500 && last <= 1000, "backoff " + last);
+        }
+
+        RetryPolicy.Budget budget = policy.newBudget();
+        JCoException timeout = error(JCoException.JCO_ERROR_TIMEOUT);
+        Assert.assertTrue(policy.shouldRetry("BAPI_USER_GETLIST", timeout, 1, false, budget));
+        Assert.assertTrue(policy.shouldRetry("BAPI_USER_GETLIST", timeout, 1, false, budget));
+        Assert.assertFalse(policy.shouldRetry("BAPI_USER_GETLIST", timeout, 1, false, budget));
+        Assert.assertEquals(budget.getRemaining(), 0);
+    }
+
+    @Test
+    public void testReconciliationWithTransientFailures() {
+        SapSimulator simulator = SapSimulator.generate("SIM_RETRY", 50, 1);
+        FaultInjectingTransport transport = new FaultInjectingTransport(simulator, 1,
+                "BAPI_USER_GETLIST    fail at=1\n"
+                        + "BAPI_USER_GET_DETAIL fail p=0.1 when=after\n");
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setRfcRetryAttempts(5);
+        configuration.setRfcRetryBackoff(1);
+        SapConnector connector = new SapConnector(transport);
+        connector.init(configuration);
+
+        List<ConnectorObject> found = new ArrayList<>();
+        connector.executeQuery(ObjectClass.ACCOUNT, null, found::add, null);
+        Assert.assertEquals(found.size(), 50);
+        // lost responses are not duplicated in tables of repeated call
+        for (ConnectorObject user : found) {
+            Assert.assertEquals(user.getAttributeByName("ACTIVITYGROUPS").getValue().size(),
+                    simulator.getUser(user.getName().getNameValue()).getRows("ACTIVITYGROUPS").size());
+        }
+
+        OperationSummary summary = connector.getLastOperationSummary();
+        Assert.assertEquals(summary.getRetries(), transport.getInjected("fail"));
+        Assert.assertEquals(summary.getFunctions().get("BAPI_USER_GETLIST").getRetries(), 1);
+        Assert.assertEquals(summary.getFunctions().get("BAPI_USER_GET_DETAIL").getCalls(),
+                50 + summary.getFunctions().get("BAPI_USER_GET_DETAIL").getRetries());
+        RfcFunctionStats stats = RfcExecutor.get("SIM_RETRY", 0, 0, Collections.emptyMap())
+                .getFunctionStats().get("BAPI_USER_GET_DETAIL");
+        Assert.assertEquals(stats.getRetries(), summary.getFunctions().get("BAPI_USER_GET_DETAIL").getRetries());
+    }
+
+    @Test
+    public void testWriteAndBudget() {
+        SapSimulator simulator = SapSimulator.generate("SIM_RETRY_LIMITS", 5, 1);
+        // change is executed in SAP, but its response is lost
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setRfcRetryBackoff(1);
+        SapConnector writer = new SapConnector(new FaultInjectingTransport(simulator, 1, "BAPI_USER_CHANGE fail when=after\n"));
+        writer.init(configuration);
+        try {
+            writer.update(ObjectClass.ACCOUNT, new Uid("USER000001"),
+                    Collections.singleton(AttributeBuilder.build("ADDRESS.LASTNAME", "Changed")), null);
+            Assert.fail("lost response of write expected");
+        } catch (ConnectorException e) {
+            // expected
+        }
+        Assert.assertEquals(simulator.getCalls("BAPI_USER_CHANGE"), 1);
+        Assert.assertEquals(writer.getLastOperationSummary().getRetries(), 0);
+
+        // SAP is not available
+        SapConfiguration limited = simulator.createConfiguration();
+        limited.setRfcRetryBackoff(1);
+        limited.setRfcRetryBudget(2);
+        SapConnector reader = new SapConnector(new FaultInjectingTransport(simulator, 1, "BAPI_USER_GET_DETAIL fail\n"));
+        reader.init(limited);
+        try {
+            reader.executeQuery(ObjectClass.ACCOUNT, null, object -> true, null);
+            Assert.fail("unavailable SAP expected");
+        } catch (ConnectorIOException e) {
+            // expected
+        }
+        // first attempt and two retries from the budget
+        OperationSummary summary = reader.getLastOperationSummary();
+        Assert.assertEquals(summary.getFunctions().get("BAPI_USER_GET_DETAIL").getCalls(), 3);
+        Assert.assertEquals(summary.getRetries(), 2);
+    }
+}
@@ -0,0 +1,1223 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.AbapException;
+import com.sap.conn.jco.JCoException;
+import com.sap.conn.jco.JCoFunction;
+import com.sap.conn.jco.JCoMetaData;
+import com.sap.conn.jco.JCoParameterList;
+import com.sap.conn.jco.JCoRecord;
+import com.sap.conn.jco.JCoStructure;
+import com.sap.conn.jco.JCoTable;
+import org.identityconnectors.common.security.GuardedString;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.evolveum.polygon.connector.sap.SimulatedRecords.*;
+
+/**
+ * SAP system simulated in memory, {@link SapConnector} works with it as with real SAP over {@link RfcTransport}.
+ * Used in tests and benchmarks of whole connector operations without SAP and JCo native library.
+ * <br/>
+ * Simulated are BAPIs and function modules called by the connector for users, profiles and tables
+ * (BAPI_USER_*, SUSR_* password functions, RFC_GET_TABLE_ENTRIES, BAPI_HELPVALUES_GET, MSS_GET_SY_DATE_TIME),
+ * with the subset of their parameters used by the connector. RFC_READ_TABLE is simulated only for USH02 (last
+ * modifications of users, BNAME, MODDA, MODTI columns, condition MODDA GE). All changes are committed immediately, BAPI_TRANSACTION_ROLLBACK does nothing. Every call can be delayed to simulate network
+ * and SAP processing time, count of calls and maximal count of parallel calls are recorded.
+ */
+public class SapSimulator implements RfcTransport {
+
+    public static final String CLIENT = "001";
+
+    public static final String DEFAULT_PASSWORD = "Simulated1!";
+
+    private static final int PASSWORD_MIN_LENGTH = 8;
+
+    private static final String SELECT = "X";
+
+    private static final String LOCKED = "L";
+
+    private static final String UNLOCKED = "U";
+
+    // --- metadata of simulated functions
+
+    private static final Meta ADDRESS = meta("BAPIADDR3", chars("FIRSTNAME", 40), chars("LASTNAME", 40),
+            chars("FULLNAME", 80), chars("TITLE_P", 30), chars("DEPARTMENT", 40), chars("FUNCTION", 40),
+            chars("ROOM_NO_P", 10), chars("E_MAIL", 241), chars("TEL1_NUMBR", 30), chars("TEL1_EXT", 10),
+            chars("COUNTY_CODE", 8), chars("COUNTY", 40), chars("TOWNSHIP_CODE", 8), chars("TOWNSHIP", 40),
+            chars("LANGU_P", 1), chars("COMM_TYPE", 3));
+    private static final Meta DEFAULTS = meta("BAPIDEFAUL", chars("SPLD", 4), chars("SPLG", 1), chars("SPDB", 1),
+            chars("SPDA", 1), chars("DATFM", 1), chars("DCPFM", 1), chars("LANGU", 1), chars("CATTKENNZ", 1),
+            chars("KOSTL", 8), chars("START_MENU", 30), chars("TIMEFM", 1));
+    private static final Meta UCLASS = meta("BAPIUCLASS", chars("LIC_TYPE", 2), chars("SPEC_VERS", 2));
+    private static final Meta LOGONDATA = meta("BAPILOGOND", date("GLTGV"), date("GLTGB"), chars("USTYP", 1),
+            chars("CLASS", 12), chars("ACCNT", 12), chars("TZONE", 6), chars("CODVN", 1));
+    private static final Meta ALIAS = meta("BAPIALIAS", chars("USERALIAS", 40));
+    private static final Meta COMPANY = meta("BAPIUSCOMP", chars("COMPANY", 42));
+    private static final Meta REF_USER = meta("BAPIREFUS", chars("REF_USER", 12));
+    private static final Meta ISLOCKED = meta("BAPISLOCKD", chars("WRNG_LOGON", 1), chars("LOCAL_LOCK", 1),
+            chars("GLOB_LOCK", 1), chars("NO_USER_PW", 1));
+    private static final Meta LASTMODIFIED = meta("BAPIMODDAT", date("MODDATE"), time("MODTIME"));
+    private static final Meta SNC = meta("BAPISNCU", chars("PNAME", 255), chars("GUIFLAG", 1));
+    private static final Meta ADMINDATA = meta("BAPIUSERADMIN", chars("ANAME", 12), date("ERDAT"), date("TRDAT"),
+            time("LTIME"), chars("MODIFIER", 12), date("MODDATE"), time("MODTIME"), date("PWDCHGDATE"));
+    private static final Meta IDENTITY = meta("BAPIIDENTITY", chars("PERSNUMBER", 10), chars("ADDRNUMBER", 10));
+    private static final Meta PASSWORD = meta("BAPIPWD", chars("BAPIPWD", 40));
+
+    private static final Meta RETURN = meta("BAPIRET2", chars("TYPE", 1), chars("ID", 20), num("NUMBER", 3),
+            chars("MESSAGE", 220), chars("LOG_NO", 20), num("LOG_MSG_NO", 6), chars("MESSAGE_V1", 50),
+            chars("MESSAGE_V2", 50), chars("MESSAGE_V3", 50), chars("MESSAGE_V4", 50), chars("PARAMETER", 32),
+            integer("ROW"), chars("FIELD", 30), chars("SYSTEM", 10));
+    private static final Meta PROFILES = meta("BAPIPROF", chars("BAPIPROF", 12), chars("BAPIPTEXT", 60),
+            chars("BAPITYPE", 1), chars("BAPIAKTPS", 1));
+    private static final Meta ACTIVITYGROUPS = meta("BAPIAGR", chars("AGR_NAME", 30), date("FROM_DAT"),
+            date("TO_DAT"), chars("AGR_TEXT", 80), chars("ORG_FLAG", 1));
+    private static final Meta GROUPS = meta("BAPIGROUPS", chars("USERGROUP", 12));
+    private static final Meta PARAMETER = meta("BAPIPARAM", chars("PARID", 20), chars("PARVA", 18), chars("PARTXT", 60));
+    private static final Meta ADDTEL = meta("BAPIADTEL", chars("COUNTRY", 3), chars("STD_NO", 1),
+            chars("TELEPHONE", 30), chars("EXTENSION", 10), chars("TEL_NO", 30), chars("HOME_FLAG", 1),
+            num("CONSNUMBER", 3));
+    private static final Meta ADDSMTP = meta("BAPIADSMTP", chars("STD_NO", 1), chars("E_MAIL", 241),
+            chars("HOME_FLAG", 1), num("CONSNUMBER", 3));
+    private static final Meta SELECTION_EXP = meta("BAPIUSSEXP", chars("LOGOP", 3), integer("ARITY"),
+            chars("PARAMETER", 32), chars("FIELD", 30), chars("OPTION", 2), chars("LOW", 40), chars("HIGH", 40));
+    private static final Meta USERLIST = meta("BAPIUSNAME", chars("USERNAME", 12), chars("FIRSTNAME", 40),
+            chars("LASTNAME", 40), chars("FULLNAME", 80));
+
+    // structures of user read over BAPI_USER_GET_DETAIL and written over BAPI_USER_CREATE1 and BAPI_USER_CHANGE
+    private static final Map<String, Meta> USER_STRUCTURES = new LinkedHashMap<>();
+    // tables of user, PROFILES and ACTIVITYGROUPS are written over separate BAPIs
+    private static final Map<String, Meta> USER_TABLES = new LinkedHashMap<>();
+    // change flags of tables in BAPI_USER_CHANGE
+    private static final Map<String, String> TABLE_CHANGE_FLAGS = new HashMap<>();
+
+    private static final Map<String, Meta[]> FUNCTIONS = new HashMap<>();
+
+    private static final Pattern USH02_CONDITION = Pattern.compile("MODDA GE '(\\d{8})'");
+
+    static {
+        USER_STRUCTURES.put("ADDRESS", ADDRESS);
+        USER_STRUCTURES.put("DEFAULTS", DEFAULTS);
+        USER_STRUCTURES.put("UCLASS", UCLASS);
+        USER_STRUCTURES.put("LOGONDATA", LOGONDATA);
+        USER_STRUCTURES.put("ALIAS", ALIAS);
+        USER_STRUCTURES.put("COMPANY", COMPANY);
+        USER_STRUCTURES.put("REF_USER", REF_USER);
+        USER_STRUCTURES.put("SNC", SNC);
+
+        USER_TABLES.put("PROFILES", PROFILES);
+        USER_TABLES.put("ACTIVITYGROUPS", ACTIVITYGROUPS);
+        USER_TABLES.put("GROUPS", GROUPS);
+        USER_TABLES.put("PARAMETER", PARAMETER);
+        USER_TABLES.put("ADDTEL", ADDTEL);
+        USER_TABLES.put("ADDSMTP", ADDSMTP);
+
+        TABLE_CHANGE_FLAGS.put("GROUPS", "GROUPSX.USERGROUP");
+        TABLE_CHANGE_FLAGS.put("PARAMETER", "PARAMETERX.PARID");
+        TABLE_CHANGE_FLAGS.put("ADDTEL", "ADDCOMX.ADTEL");
+        TABLE_CHANGE_FLAGS.put("ADDSMTP", "ADDCOMX.ADSMTP");
+
+        Meta returnTable = meta("TABLES", table("RETURN", RETURN));
+        Meta userName = meta("IMPORTING", chars("USERNAME", 12));
+
+        FUNCTIONS.put("BAPI_USER_GETLIST", new Meta[]{
+                meta("IMPORTING", integer("MAX_ROWS"), chars("WITH_USERNAME", 1)),
+                meta("EXPORTING", integer("ROWS")),
+                meta("TABLES", table("SELECTION_RANGE", SELECTION_EXP), table("SELECTION_EXP", SELECTION_EXP),
+                        table("USERLIST", USERLIST), table("RETURN", RETURN))});
+        FUNCTIONS.put("BAPI_USER_GET_DETAIL", new Meta[]{
+                meta("IMPORTING", chars("USERNAME", 12), chars("CACHE_RESULTS", 1)),
+                meta("EXPORTING", structure("LOGONDATA", LOGONDATA), structure("DEFAULTS", DEFAULTS),
+                        structure("ADDRESS", ADDRESS), structure("COMPANY", COMPANY), structure("SNC", SNC),
+                        structure("REF_USER", REF_USER), structure("ALIAS", ALIAS), structure("UCLASS", UCLASS),
+                        structure("LASTMODIFIED", LASTMODIFIED), structure("ISLOCKED", ISLOCKED),
+                        structure("IDENTITY", IDENTITY), structure("ADMINDATA", ADMINDATA)),
+                meta("TABLES", table("PARAMETER", PARAMETER), table("PROFILES", PROFILES),
+                        table("ACTIVITYGROUPS", ACTIVITYGROUPS), table("RETURN", RETURN), table("ADDTEL", ADDTEL),
+                        table("ADDSMTP", ADDSMTP), table("GROUPS", GROUPS))});
+        FUNCTIONS.put("BAPI_USER_CREATE1", new Meta[]{
+                meta("IMPORTING", chars("USERNAME", 12), structure("LOGONDATA", LOGONDATA),
+                        structure("PASSWORD", PASSWORD), structure("DEFAULTS", DEFAULTS), structure("ADDRESS", ADDRESS),
+                        structure("COMPANY", COMPANY), structure("SNC", SNC), structure("REF_USER", REF_USER),
+                        structure("ALIAS", ALIAS), structure("UCLASS", UCLASS)),
+                null,
+                meta("TABLES", table("PARAMETER", PARAMETER), table("RETURN", RETURN), table("ADDTEL", ADDTEL),
+                        table("ADDSMTP", ADDSMTP), table("GROUPS", GROUPS))});
+        FUNCTIONS.put("BAPI_USER_CHANGE", new Meta[]{
+                meta("IMPORTING", chars("USERNAME", 12),
+                        structure("LOGONDATA", LOGONDATA), structure("LOGONDATAX", changeFlags("BAPILOGONX", LOGONDATA)),
+                        structure("DEFAULTS", DEFAULTS), structure("DEFAULTSX", changeFlags("BAPIDEFAX", DEFAULTS, "CATTKENNZ")),
+                        structure("ADDRESS", ADDRESS), structure("ADDRESSX", changeFlags("BAPIADDR3X", ADDRESS,
+                                "COUNTY_CODE", "COUNTY", "TOWNSHIP_CODE", "TOWNSHIP")),
+                        structure("COMPANY", COMPANY), structure("COMPANYX", meta("BAPIUSCOMX", chars("COMPANY", 1))),
+                        structure("SNC", SNC), structure("SNCX", changeFlags("BAPISNCUX", SNC)),
+                        structure("REF_USER", REF_USER), structure("REF_USERX", meta("BAPIREFUSX", chars("REF_USER", 1))),
+                        structure("ALIAS", ALIAS), structure("ALIASX", meta("BAPIALIASX", chars("BAPIALIAS", 1))),
+                        structure("UCLASS", UCLASS), structure("UCLASSX", meta("BAPIUCLASSX", chars("UCLASS", 1))),
+                        structure("PASSWORD", PASSWORD), structure("PASSWORDX", meta("BAPIPWDX", chars("BAPIPWD", 1))),
+                        structure("GROUPSX", changeFlags("BAPIGROUPX", GROUPS)),
+                        structure("PARAMETERX", changeFlags("BAPIPARAMX", PARAMETER)),
+                        structure("ADDCOMX", meta("BAPIADCOMX", chars("ADTEL", 1), chars("ADFAX", 1), chars("ADSMTP", 1)))),
+                null,
+                meta("TABLES", table("PARAMETER", PARAMETER), table("RETURN", RETURN), table("ADDTEL", ADDTEL),
+                        table("ADDSMTP", ADDSMTP), table("GROUPS", GROUPS))});
+        FUNCTIONS.put("BAPI_USER_DELETE", new Meta[]{userName, null, returnTable});
+        FUNCTIONS.put("BAPI_USER_LOCK", new Meta[]{userName, null, returnTable});
+        FUNCTIONS.put("BAPI_USER_UNLOCK", new Meta[]{userName, null, returnTable});
+        FUNCTIONS.put("BAPI_USER_ACTGROUPS_ASSIGN", new Meta[]{userName, null,
+                meta("TABLES", table("ACTIVITYGROUPS", ACTIVITYGROUPS), table("RETURN", RETURN))});
+        FUNCTIONS.put("BAPI_USER_PROFILES_ASSIGN", new Meta[]{userName, null,
+                meta("TABLES", table("PROFILES", PROFILES), table("RETURN", RETURN))});
+        FUNCTIONS.put("BAPI_TRANSACTION_COMMIT", new Meta[]{meta("IMPORTING", chars("WAIT", 1)),
+                meta("EXPORTING", structure("RETURN", RETURN)), null});
+        FUNCTIONS.put("BAPI_TRANSACTION_ROLLBACK", new Meta[]{null, meta("EXPORTING", structure("RETURN", RETURN)), null});
+        FUNCTIONS.put("SUSR_GET_ADMIN_USER_LOGIN_INFO", new Meta[]{meta("IMPORTING", chars("USERID", 12)),
+                meta("EXPORTING", date("LAST_LOGON_DATE"), chars("LOCK_STATUS", 1), chars("PASSWORD_STATUS", 1)), null});
+        FUNCTIONS.put("SUSR_GENERATE_PASSWORD", new Meta[]{null, meta("EXPORTING", chars("PASSWORD", 40)), null});
+        FUNCTIONS.put("SUSR_USER_CHANGE_PASSWORD_RFC", new Meta[]{meta("IMPORTING", chars("BNAME", 12),
+                chars("PASSWORD", 40), chars("NEW_PASSWORD", 40)), null, null});
+        FUNCTIONS.put("SUSR_LOGIN_CHECK_RFC", new Meta[]{meta("IMPORTING", chars("BNAME", 12), chars("PASSWORD", 40)),
+                null, null});
+        FUNCTIONS.put("PASSWORD_FORMAL_CHECK", new Meta[]{meta("IMPORTING", structure("PASSWORD", PASSWORD)), null, null});
+        FUNCTIONS.put("RFC_GET_TABLE_ENTRIES", new Meta[]{
+                meta("IMPORTING", chars("TABLE_NAME", 30), chars("GEN_KEY", 72), integer("MAX_ENTRIES"),
+                        chars("FROM_KEY", 72), chars("BYPASS_BUFFER", 1)),
+                meta("EXPORTING", integer("NUMBER_OF_ENTRIES")),
+                meta("TABLES", table("ENTRIES", meta("TAB512", chars("WA", 512))))});
+        FUNCTIONS.put("RFC_READ_TABLE", new Meta[]{
+                meta("IMPORTING", chars("QUERY_TABLE", 30), chars("DELIMITER", 1)),
+                null,
+                meta("TABLES", table("OPTIONS", meta("RFC_DB_OPT", chars("TEXT", 72))),
+                        table("FIELDS", meta("RFC_DB_FLD", chars("FIELDNAME", 30))),
+                        table("DATA", meta("TAB512", chars("WA", 512))))});
+        FUNCTIONS.put("BAPI_HELPVALUES_GET", new Meta[]{
+                meta("IMPORTING", chars("OBJTYPE", 10), chars("OBJNAME", 32), chars("METHOD", 32),
+                        chars("PARAMETER", 32), chars("FIELD", 30)),
+                meta("EXPORTING", structure("RETURN", RETURN)),
+                meta("TABLES", table("VALUES_FOR_FIELD", meta("BAPIF4E", chars("VALUES", 1000))))});
+        FUNCTIONS.put("MSS_GET_SY_DATE_TIME", new Meta[]{null,
+                meta("EXPORTING", date("SAPDATE"), time("SAPTIME")), null});
+    }
+
+    /**
+     * ABAP exception with message number, as raised by SAP function modules.
+     */
+    static class SimulatedAbapException extends AbapException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String key;
+
+        private final String messageNumber;
+
+        private final String message;
+
+        SimulatedAbapException(String key, String messageNumber, String message) {
+            super(key, message);
+            this.key = key;
+            this.messageNumber = messageNumber;
+            this.message = message;
+        }
+
+        @Override
+        public int getGroup() {
+            return JCO_ERROR_ABAP_EXCEPTION;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String getMessageNumber() {
+            return messageNumber;
+        }
+
+        @Override
+        public String getMessageClass() {
+            return "00";
+        }
+
+        @Override
+        public String getMessageType() {
+            return "E";
+        }
+
+        @Override
+        public String toString() {
+            return "(126) " + getKey() + ": " + getMessage() + " Message " + messageNumber + " of class 00 type E";
+        }
+    }
+
+    /**
+     * Simulated SAP user, values are stored as strings returned by JCo getString.
+     */
+    public static class User {
+
+        private final String userName;
+
+        private final Map<String, Map<String, String>> structures = new HashMap<>();
+
+        private final Map<String, List<Map<String, String>>> tables = new HashMap<>();
+
+        private String password;
+
+        private boolean initialPassword;
+
+        private String lastLogonDate;
+
+        User(String userName) {
+            this.userName = userName;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        /**
+         * @param attribute structure and its field, for example ADDRESS.FIRSTNAME
+         */
+        public User set(String attribute, String value) {
+            String[] parts = attribute.split("\\.");
+            structures.computeIfAbsent(parts[0], name -> new HashMap<>()).put(parts[1], value);
+            return this;
+        }
+
+        /**
+         * @return value of structure field, null if not set
+         */
+        public String get(String attribute) {
+            String[] parts = attribute.split("\\.");
+            Map<String, String> structure = structures.get(parts[0]);
+            return structure == null ? null : structure.get(parts[1]);
+        }
+
+        public User addRow(String table, Map<String, String> row) {
+            tables.computeIfAbsent(table, name -> new ArrayList<>()).add(new HashMap<>(row));
+            return this;
+        }
+
+        /**
+         * @return rows of user table (ACTIVITYGROUPS, PROFILES, GROUPS, ...)
+         */
+        public List<Map<String, String>> getRows(String table) {
+            return tables.getOrDefault(table, new ArrayList<>());
+        }
+
+        /**
+         * @return values of one column of user table, for example AGR_NAME of ACTIVITYGROUPS
+         */
+        public List<String> getColumn(String table, String column) {
+            List<String> values = new ArrayList<>();
+            for (Map<String, String> row : getRows(table)) {
+                values.add(row.get(column));
+            }
+            return values;
+        }
+
+        public User setPassword(String password, boolean initial) {
+            this.password = password;
+            this.initialPassword = initial;
+            return this;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public boolean isInitialPassword() {
+            return initialPassword;
+        }
+
+        public boolean isLocked() {
+            return LOCKED.equals(get("ISLOCKED.LOCAL_LOCK"));
+        }
+
+        public User setLastLogonDate(String lastLogonDate) {
+            this.lastLogonDate = lastLogonDate;
+            return this;
+        }
+    }
+
+    private final String destinationName;
+
+    private final Map<String, User> users = new TreeMap<>();
+
+    // table name -> rows (WA), client dependent tables, rows start with CLIENT
+    private final Map<String, SortedSet<String>> tables = new HashMap<>();
+
+    private final SortedSet<String> profiles = new TreeSet<>();
+
+    private volatile long latencyMillis;
+
+    private volatile long jitterMillis;
+
+    private volatile LongSupplier clock = System::currentTimeMillis;
+
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private final ThreadLocal<Integer> sessions = ThreadLocal.withInitial(() -> 0);
+
+    // connections of JCo destination pool, null = not limited
+    private volatile Semaphore pool;
+
+    public SapSimulator(String destinationName) {
+        this.destinationName = destinationName;
+    }
+
+    /**
+     * Simulated SAP with generated users, each with some roles, profiles and user group, roles and groups
+     * are also in tables AGR_DEFINE and USGRP.
+     *
+     * @param seed the same seed generates the same users
+     */
+    public static SapSimulator generate(String destinationName, int userCount, long seed) {
+        String[] firstNames = {"Anna", "Boris", "Clara", "David", "Eva", "Filip", "Greta", "Hugo", "Ida", "Jan"};
+        String[] lastNames = {"Novak", "Svoboda", "Dvorak", "Cerny", "Prochazka", "Kucera", "Vesely", "Horak"};
+        String[] departments = {"FINANCE", "HR", "IT", "SALES", "LOGISTICS"};
+        Random random = new Random(seed);
+        SapSimulator simulator = new SapSimulator(destinationName);
+        for (String group : departments) {
+            simulator.addUserGroup(group);
+        }
+        for (int role = 0; role < 50; role++) {
+            simulator.addRole(String.format("Z_ROLE_%02d", role), role % 10 == 0 ? "" : String.format("Z_ROLE_%02d", role / 10 * 10));
+        }
+        for (int profile = 0; profile < 10; profile++) {
+            simulator.addProfile(String.format("Z_PROF_%02d", profile));
+        }
+        long now = simulator.clock.getAsLong();
+        for (int i = 1; i <= userCount; i++) {
+            String firstName = firstNames[random.nextInt(firstNames.length)];
+            String lastName = lastNames[random.nextInt(lastNames.length)];
+            String department = departments[random.nextInt(departments.length)];
+            User user = simulator.addUser(String.format("USER%06d", i))
+                    .set("ADDRESS.FIRSTNAME", firstName)
+                    .set("ADDRESS.LASTNAME", lastName)
+                    .set("ADDRESS.FULLNAME", firstName + " " + lastName)
+                    .set("ADDRESS.DEPARTMENT", department)
+                    .set("ADDRESS.E_MAIL", String.format("%s.%s%d@example.com", firstName, lastName, i).toLowerCase())
+                    .set("ADDRESS.TEL1_NUMBR", String.format("+420 555 %06d", i))
+                    .set("DEFAULTS.LANGU", "E")
+                    .set("DEFAULTS.DATFM", "1")
+                    .set("DEFAULTS.KOSTL", String.format("%08d", 1000 + random.nextInt(50)))
+                    .set("LOGONDATA.GLTGV", "2020-01-01")
+                    .set("LOGONDATA.CLASS", department)
+                    .set("COMPANY.COMPANY", "EXAMPLE")
+                    .setLastLogonDate(formatDate(now - random.nextInt(30) * 86400000L));
+            user.addRow("GROUPS", row("USERGROUP", department));
+            int roles = random.nextInt(6);
+            for (int role = 0; role < roles; role++) {
+                String agrName = String.format("Z_ROLE_%02d", random.nextInt(50));
+                if (!user.getColumn("ACTIVITYGROUPS", "AGR_NAME").contains(agrName)) {
+                    user.addRow("ACTIVITYGROUPS", row("AGR_NAME", agrName, "FROM_DAT", "2020-01-01",
+                            "TO_DAT", "9999-12-31", "AGR_TEXT", "Role " + agrName));
+                }
+            }
+            if (random.nextInt(4) == 0) {
+                user.addRow("PROFILES", row("BAPIPROF", String.format("Z_PROF_%02d", random.nextInt(10)),
+                        "BAPIPTEXT", "Generated profile", "BAPITYPE", "S", "BAPIAKTPS", "A"));
+            }
+            // modified during last year
+            simulator.touch(user, now - random.nextInt(365 * 86400) * 1000L);
+        }
+        return simulator;
+    }
+
+    /**
+     * @return map with given field names and values
+     */
+    public static Map<String, String> row(String... fieldsAndValues) {
+        Map<String, String> row = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < fieldsAndValues.length; i += 2) {
+            row.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        return row;
+    }
+
+    // --- dataset
+
+    /**
+     * Add unlocked dialog user with {@link #DEFAULT_PASSWORD}, modified now.
+     */
+    public synchronized User addUser(String userName) {
+        User user = new User(userName);
+        user.set("LOGONDATA.USTYP", "A")
+                .set("ISLOCKED.LOCAL_LOCK", UNLOCKED)
+                .set("ISLOCKED.GLOB_LOCK", UNLOCKED)
+                .set("ISLOCKED.WRNG_LOGON", UNLOCKED)
+                .set("ISLOCKED.NO_USER_PW", UNLOCKED)
+                .set("ADMINDATA.ANAME", "SIMULATOR")
+                .set("ADMINDATA.ERDAT", formatDate(clock.getAsLong()))
+                .setPassword(DEFAULT_PASSWORD, false);
+        users.put(userName, user);
+        touch(user, clock.getAsLong());
+        return user;
+    }
+
+    public synchronized User getUser(String userName) {
+        return users.get(userName);
+    }
+
+    public synchronized int getUserCount() {
+        return users.size();
+    }
+
+    /**
+     * Role in AGR_DEFINE (MANDT:3, AGR_NAME:30, PARENT_AGR:30).
+     */
+    public void addRole(String agrName, String parentAgr) {
+        addTableRow("AGR_DEFINE", CLIENT + pad(agrName, 30) + pad(parentAgr, 30));
+    }
+
+    /**
+     * User group in USGRP (MANDT:3, USERGROUP:12).
+     */
+    public void addUserGroup(String userGroup) {
+        addTableRow("USGRP", CLIENT + pad(userGroup, 12));
+    }
+
+    /**
+     * @param wa whole row including client
+     */
+    public synchronized void addTableRow(String table, String wa) {
+        tables.computeIfAbsent(table, name -> new TreeSet<>()).add(wa);
+    }
+
+    public synchronized boolean removeTableRow(String table, String wa) {
+        SortedSet<String> rows = tables.get(table);
+        return rows != null && rows.remove(wa);
+    }
+
+    /**
+     * Mark user as changed now, by the simulated server clock.
+     */
+    public synchronized void touch(String userName) {
+        touch(users.get(userName), clock.getAsLong());
+    }
+
+    /**
+     * Profile returned from BAPI_HELPVALUES_GET.
+     */
+    public synchronized void addProfile(String profile) {
+        profiles.add(profile);
+    }
+
+    private static String pad(String value, int length) {
+        StringBuilder padded = new StringBuilder(value == null ? "" : value);
+        while (padded.length() < length) {
+            padded.append(' ');
+        }
+        return padded.substring(0, length);
+    }
+
+    // --- simulation settings and statistics
+
+    /**
+     * Delay of each call, the same for all functions.
+     *
+     * @param jitterMillis maximal random delay added to latencyMillis
+     */
+    public void setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * @param clock time of simulated SAP server in millis, used for LASTMODIFIED and MSS_GET_SY_DATE_TIME
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Limit count of calls executed at the same time, as peak limit of JCo destination pool,
+     * other calls wait for free connection.
+     *
+     * @param capacity count of connections, 0 = not limited
+     */
+    public void setPoolCapacity(int capacity) {
+        this.pool = capacity > 0 ? new Semaphore(capacity, true) : null;
+    }
+
+    public long getCalls(String function) {
+        LongAdder count = calls.get(function);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getCalls() {
+        long sum = 0;
+        for (LongAdder count : calls.values()) {
+            sum += count.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * @return maximal count of calls executed at the same time
+     */
+    public int getMaxConcurrency() {
+        return maxRunning.get();
+    }
+
+    public void resetStatistics() {
+        calls.clear();
+        maxRunning.set(0);
+    }
+
+    /**
+     * @return minimal connector configuration for this simulator, can be adjusted before {@link #connect(SapConfiguration)}
+     */
+    public SapConfiguration createConfiguration() {
+        SapConfiguration configuration = new SapConfiguration();
+        configuration.setHost("simulator");
+        configuration.setUser("IDM");
+        configuration.setPassword(new GuardedString("secret".toCharArray()));
+        configuration.setClient(CLIENT);
+        configuration.setDestinationName(destinationName);
+        return configuration;
+    }
+
+    /**
+     * @return connector initialized over this simulator
+     */
+    public SapConnector connect(SapConfiguration configuration) {
+        SapConnector connector = new SapConnector(this);
+        connector.init(configuration);
+        return connector;
+    }
+
+    // --- RfcTransport
+
+    @Override
+    public String getDestinationName() {
+        return destinationName;
+    }
+
+    @Override
+    public JCoFunction getFunction(String name) {
+        Meta[] parameters = FUNCTIONS.get(name);
+        return parameters == null ? null : function(name, parameters[0], parameters[1], parameters[2]);
+    }
+
+    @Override
+    public void execute(JCoFunction function) throws JCoException {
+        Semaphore connections = pool;
+        if (connections != null) {
+            try {
+                connections.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JCoException(JCoException.JCO_ERROR_CANCELLED, "CANCELLED", "Waiting for connection was interrupted");
+            }
+        }
+        calls.computeIfAbsent(function.getName(), name -> new LongAdder()).increment();
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            delay();
+            synchronized (this) {
+                dispatch(function);
+            }
+        } finally {
+            running.decrementAndGet();
+            if (connections != null) {
+                connections.release();
+            }
+        }
+    }
+
+    private void delay() throws JCoException {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JCoException(JCoException.JCO_ERROR_CANCELLED, "CANCELLED", "Call was interrupted");
+        }
+    }
+
+    @Override
+    public void ping() {
+    }
+
+    @Override
+    public boolean isValid() {
+        return true;
+    }
+
+    @Override
+    public void begin() {
+        sessions.set(sessions.get() + 1);
+    }
+
+    @Override
+    public void end() {
+        sessions.set(Math.max(0, sessions.get() - 1));
+    }
+
+    @Override
+    public boolean isStateful() {
+        return sessions.get() > 0;
+    }
+
+    // --- simulated functions
+
+    private void dispatch(JCoFunction function) throws JCoException {
+        // like in JCo, returned tables replace tables of the function, also when the call is repeated
+        JCoParameterList tableList = function.getTableParameterList();
+        if (tableList != null && tableList.getMetaData().indexOf("RETURN") >= 0) {
+            tableList.getTable("RETURN").deleteAllRows();
+        }
+        switch (function.getName()) {
+            case "BAPI_USER_GETLIST":
+                getList(function);
+                break;
+            case "BAPI_USER_GET_DETAIL":
+                getDetail(function);
+                break;
+            case "BAPI_USER_CREATE1":
+                create(function);
+                break;
+            case "BAPI_USER_CHANGE":
+                change(function);
+                break;
+            case "BAPI_USER_DELETE":
+                if (existingUser(function) != null) {
+                    users.remove(function.getImportParameterList().getString("USERNAME"));
+                    message(function, "S", "029", "User deleted");
+                }
+                break;
+            case "BAPI_USER_LOCK":
+            case "BAPI_USER_UNLOCK":
+                lock(function, "BAPI_USER_LOCK".equals(function.getName()));
+                break;
+            case "BAPI_USER_ACTGROUPS_ASSIGN":
+                assign(function, "ACTIVITYGROUPS");
+                break;
+            case "BAPI_USER_PROFILES_ASSIGN":
+                assign(function, "PROFILES");
+                break;
+            case "BAPI_TRANSACTION_COMMIT":
+            case "BAPI_TRANSACTION_ROLLBACK":
+                break;
+            case "SUSR_GET_ADMIN_USER_LOGIN_INFO":
+                loginInfo(function);
+                break;
+            case "SUSR_GENERATE_PASSWORD":
+                function.getExportParameterList().setValue("PASSWORD",
+                        "Tmp" + Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36) + "#1");
+                break;
+            case "SUSR_USER_CHANGE_PASSWORD_RFC":
+                changePassword(function);
+                break;
+            case "SUSR_LOGIN_CHECK_RFC":
+                loginCheck(function);
+                break;
+            case "PASSWORD_FORMAL_CHECK":
+                String password = function.getImportParameterList().getStructure("PASSWORD").getString("BAPIPWD");
+                if (password.length() < PASSWORD_MIN_LENGTH) {
+                    throw new SimulatedAbapException("PASSWORD_NOT_ALLOWED", "187",
+                            "Password is not long enough (minimum length: " + PASSWORD_MIN_LENGTH + " characters)");
+                }
+                break;
+            case "RFC_GET_TABLE_ENTRIES":
+                tableEntries(function);
+                break;
+            case "RFC_READ_TABLE":
+                readTable(function);
+                break;
+            case "BAPI_HELPVALUES_GET":
+                JCoTable values = function.getTableParameterList().getTable("VALUES_FOR_FIELD");
+                for (String profile : profiles) {
+                    values.appendRow();
+                    values.setValue("VALUES", profile);
+                }
+                values.firstRow();
+                break;
+            case "MSS_GET_SY_DATE_TIME":
+                long now = clock.getAsLong();
+                function.getExportParameterList().setValue("SAPDATE", formatDate(now));
+                function.getExportParameterList().setValue("SAPTIME", formatTime(now));
+                break;
+            default:
+                throw new JCoException(JCoException.JCO_ERROR_FUNCTION_NOT_FOUND, "FU_NOT_FOUND",
+                        "Function " + function.getName() + " is not simulated");
+        }
+    }
+
+    private void getList(JCoFunction function) {
+        JCoTable expression = function.getTableParameterList().getTable("SELECTION_EXP");
+        List<Map<String, String>> rows = readRows(expression);
+        Predicate<User> selection;
+        try {
+            selection = user -> true;
+            int[] position = {0};
+            while (position[0] < rows.size()) {
+                selection = selection.and(parseSelection(rows, position));
+            }
+        } catch (IllegalArgumentException e) {
+            message(function, "E", "615", e.getMessage());
+            return;
+        }
+
+        int maxRows = function.getImportParameterList().getInt("MAX_ROWS");
+        JCoTable userList = function.getTableParameterList().getTable("USERLIST");
+        userList.deleteAllRows();
+        int count = 0;
+        for (User user : users.values()) {
+            if (selection.test(user)) {
+                count++;
+                if (maxRows <= 0 || userList.getNumRows() < maxRows) {
+                    userList.appendRow();
+                    userList.setValue("USERNAME", user.userName);
+                    userList.setValue("FIRSTNAME", user.get("ADDRESS.FIRSTNAME"));
+                    userList.setValue("LASTNAME", user.get("ADDRESS.LASTNAME"));
+                    userList.setValue("FULLNAME", user.get("ADDRESS.FULLNAME"));
+                }
+            }
+        }
+        userList.firstRow();
+        function.getExportParameterList().setValue("ROWS", count);
+    }
+
+    /**
+     * One expression of SELECTION_EXP in prefix notation, logical operation (AND, OR) is followed by ARITY operands.
+     */
+    private Predicate<User> parseSelection(List<Map<String, String>> rows, int[] position) {
+        if (position[0] >= rows.size()) {
+            throw new IllegalArgumentException("Missing operand in SELECTION_EXP");
+        }
+        Map<String, String> row = rows.get(position[0]++);
+        String operation = row.get("LOGOP");
+        if (!operation.isEmpty()) {
+            int arity = Integer.parseInt(row.get("ARITY"));
+            List<Predicate<User>> operands = new ArrayList<>();
+            for (int i = 0; i < arity; i++) {
+                operands.add(parseSelection(rows, position));
+            }
+            if ("AND".equals(operation)) {
+                return user -> operands.stream().allMatch(operand -> operand.test(user));
+            } else if ("OR".equals(operation)) {
+                return user -> operands.stream().anyMatch(operand -> operand.test(user));
+            } else if ("NOT".equals(operation) && arity == 1) {
+                return operands.get(0).negate();
+            }
+            throw new IllegalArgumentException("Logical operation " + operation + " is not supported");
+        }
+
+        String parameter = row.get("PARAMETER");
+        String attribute = "USERNAME".equals(parameter) ? null : parameter + "." + row.get("FIELD");
+        String option = row.get("OPTION");
+        String low = row.get("LOW");
+        String high = row.get("HIGH");
+        Predicate<String> condition;
+        switch (option) {
+            case "EQ":
+                condition = value -> value.equals(low);
+                break;
+            case "NE":
+                condition = value -> !value.equals(low);
+                break;
+            case "LT":
+                condition = value -> value.compareTo(low) < 0;
+                break;
+            case "LE":
+                condition = value -> value.compareTo(low) <= 0;
+                break;
+            case "GT":
+                condition = value -> value.compareTo(low) > 0;
+                break;
+            case "GE":
+                condition = value -> value.compareTo(low) >= 0;
+                break;
+            case "BT":
+                condition = value -> value.compareTo(low) >= 0 && value.compareTo(high) <= 0;
+                break;
+            case "NB":
+                condition = value -> value.compareTo(low) < 0 || value.compareTo(high) > 0;
+                break;
+            case "CP":
+                condition = pattern(low).asPredicate();
+                break;
+            case "NP":
+                condition = pattern(low).asPredicate().negate();
+                break;
+            default:
+                throw new IllegalArgumentException("Option " + option + " is not supported");
+        }
+        return user -> {
+            String value = attribute == null ? user.userName : user.get(attribute);
+            return condition.test(value == null ? "" : value);
+        };
+    }
+
+    /**
+     * @return regular expression of SAP pattern, * is any string, + is any character
+     */
+    private static Pattern pattern(String sapPattern) {
+        StringBuilder regex = new StringBuilder("^");
+        for (char c : sapPattern.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '+') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.append('$').toString());
+    }
+
+    private User existingUser(JCoFunction function) {
+        String userName = function.getImportParameterList().getString("USERNAME");
+        User user = users.get(userName);
+        if (user == null) {
+            message(function, "E", "124", "User " + userName + " does not exist");
+        }
+        return user;
+    }
+
+    private void getDetail(JCoFunction function) {
+        User user = existingUser(function);
+        if (user == null) {
+            return;
+        }
+        JCoParameterList exports = function.getExportParameterList();
+        for (Map.Entry<String, Map<String, String>> structure : user.structures.entrySet()) {
+            write(structure.getValue(), exports.getStructure(structure.getKey()));
+        }
+        JCoParameterList tableList = function.getTableParameterList();
+        for (String table : USER_TABLES.keySet()) {
+            tableList.getTable(table).deleteAllRows();
+            writeRows(user.getRows(table), tableList.getTable(table));
+        }
+    }
+
+    private void create(JCoFunction function) {
+        JCoParameterList imports = function.getImportParameterList();
+        String userName = imports.getString("USERNAME");
+        if (users.containsKey(userName)) {
+            message(function, "E", "224", "User " + userName + " already exists");
+            return;
+        }
+        String password = imports.getStructure("PASSWORD").getString("BAPIPWD");
+        String userType = imports.getStructure("LOGONDATA").getString("USTYP");
+        if (password.isEmpty() && (userType.isEmpty() || "A".equals(userType))) {
+            message(function, "E", "290", "Please enter an initial password");
+            return;
+        }
+        if (!password.isEmpty() && password.length() < PASSWORD_MIN_LENGTH) {
+            message(function, "E", "187", "Password is not long enough (minimum length: " + PASSWORD_MIN_LENGTH + " characters)");
+            return;
+        }
+
+        User user = addUser(userName);
+        for (String structure : USER_STRUCTURES.keySet()) {
+            for (Map.Entry<String, String> field : read(imports.getStructure(structure)).entrySet()) {
+                if (!isInitial(field.getValue())) {
+                    user.set(structure + "." + field.getKey(), field.getValue());
+                }
+            }
+        }
+        if (user.get("LOGONDATA.USTYP") == null) {
+            user.set("LOGONDATA.USTYP", "A");
+        }
+        JCoParameterList tableList = function.getTableParameterList();
+        for (String table : TABLE_CHANGE_FLAGS.keySet()) {
+            user.tables.put(table, readRows(tableList.getTable(table)));
+        }
+        user.setPassword(password.isEmpty() ? null : password, true);
+        message(function, "S", "102", "User " + userName + " created");
+    }
+
+    private void change(JCoFunction function) {
+        User user = existingUser(function);
+        if (user == null) {
+            return;
+        }
+        JCoParameterList imports = function.getImportParameterList();
+        boolean changed = false;
+        for (String structure : USER_STRUCTURES.keySet()) {
+            Map<String, String> flags = read(imports.getStructure(structure + SELECT));
+            Map<String, String> values = read(imports.getStructure(structure));
+            // UCLASSX, ALIASX, ... have one flag for whole structure
+            boolean all = flags.size() == 1 && !values.containsKey(flags.keySet().iterator().next())
+                    && SELECT.equals(flags.values().iterator().next());
+            for (Map.Entry<String, String> value : values.entrySet()) {
+                if (all || SELECT.equals(flags.get(value.getKey()))) {
+                    user.set(structure + "." + value.getKey(), isInitial(value.getValue()) ? null : value.getValue());
+                    changed = true;
+                }
+            }
+        }
+
+        JCoParameterList tableList = function.getTableParameterList();
+        for (Map.Entry<String, String> table : TABLE_CHANGE_FLAGS.entrySet()) {
+            String[] flag = table.getValue().split("\\.");
+            if (SELECT.equals(imports.getStructure(flag[0]).getString(flag[1]))) {
+                user.tables.put(table.getKey(), readRows(tableList.getTable(table.getKey())));
+                changed = true;
+            }
+        }
+
+        if (SELECT.equals(imports.getStructure("PASSWORDX").getString("BAPIPWD"))) {
+            String password = imports.getStructure("PASSWORD").getString("BAPIPWD");
+            if (password.length() < PASSWORD_MIN_LENGTH) {
+                message(function, "E", "187", "Password is not long enough (minimum length: " + PASSWORD_MIN_LENGTH + " characters)");
+                return;
+            }
+            user.setPassword(password, true);
+            changed = true;
+        }
+
+        if (changed) {
+            touch(user, clock.getAsLong());
+            message(function, "S", "039", "User " + user.userName + " has changed");
+        } else {
+            message(function, "I", "046", "No changes made to user " + user.userName);
+        }
+    }
+
+    private void lock(JCoFunction function, boolean lock) {
+        User user = existingUser(function);
+        if (user != null) {
+            user.set("ISLOCKED.LOCAL_LOCK", lock ? LOCKED : UNLOCKED);
+            if (!lock) {
+                user.set("ISLOCKED.WRNG_LOGON", UNLOCKED);
+            }
+            touch(user, clock.getAsLong());
+            message(function, "S", lock ? "048" : "049", "User " + user.userName + (lock ? " locked" : " unlocked"));
+        }
+    }
+
+    private void assign(JCoFunction function, String table) {
+        User user = existingUser(function);
+        if (user != null) {
+            user.tables.put(table, readRows(function.getTableParameterList().getTable(table)));
+            touch(user, clock.getAsLong());
+            message(function, "S", "048", "Assignments of user " + user.userName + " changed");
+        }
+    }
+
+    private void loginInfo(JCoFunction function) throws JCoException {
+        User user = userOrException(function.getImportParameterList().getString("USERID"));
+        JCoParameterList exports = function.getExportParameterList();
+        exports.setValue("LAST_LOGON_DATE", user.lastLogonDate);
+        exports.setValue("LOCK_STATUS", user.isLocked() ? LOCKED : UNLOCKED);
+        exports.setValue("PASSWORD_STATUS", user.password == null ? "D" : user.initialPassword ? "I" : "P");
+    }
+
+    private User userOrException(String userName) throws JCoException {
+        User user = users.get(userName);
+        if (user == null) {
+            throw new SimulatedAbapException("USER_NOT_EXISTS", "124", "User " + userName + " does not exist");
+        }
+        return user;
+    }
+
+    private void changePassword(JCoFunction function) throws JCoException {
+        JCoParameterList imports = function.getImportParameterList();
+        User user = userOrException(imports.getString("BNAME"));
+        String newPassword = imports.getString("NEW_PASSWORD");
+        if (!imports.getString("PASSWORD").equals(user.password)) {
+            throw new SimulatedAbapException("WRONG_PASSWORD", "152", "Name or password is incorrect");
+        }
+        if (newPassword.equals(user.password)) {
+            throw new SimulatedAbapException("PASSWORD_NOT_ALLOWED", "193",
+                    "Choose a password that is different from your last passwords");
+        }
+        if (newPassword.length() < PASSWORD_MIN_LENGTH) {
+            throw new SimulatedAbapException("PASSWORD_NOT_ALLOWED", "187", "Password is not long enough");
+        }
+        user.setPassword(newPassword, false);
+    }
+
+    private void loginCheck(JCoFunction function) throws JCoException {
+        JCoParameterList imports = function.getImportParameterList();
+        User user = users.get(imports.getString("BNAME"));
+        if (user == null || user.password == null || !user.password.equals(imports.getString("PASSWORD"))) {
+            throw new SimulatedAbapException("WRONG_PASSWORD", "152", "Name or password is incorrect");
+        }
+        if (user.isLocked()) {
+            throw new SimulatedAbapException("USER_LOCKED", "158", "User is locked");
+        }
+        if (user.initialPassword) {
+            throw new SimulatedAbapException("PASSWORD_EXPIRED", "012", "Password is expired");
+        }
+    }
+
+    private void tableEntries(JCoFunction function) throws JCoException {
+        JCoParameterList imports = function.getImportParameterList();
+        String tableName = imports.getString("TABLE_NAME");
+        SortedSet<String> rows = tables.get(tableName);
+        if (rows == null) {
+            throw new SimulatedAbapException("TABLE_NOT_FOUND", "000", "Table " + tableName + " not found");
+        }
+        // key of generic key and from key is without client
+        String genericKey = imports.getString("GEN_KEY");
+        String fromKey = imports.getString("FROM_KEY");
+        int maxEntries = imports.getInt("MAX_ENTRIES");
+        JCoTable entries = function.getTableParameterList().getTable("ENTRIES");
+        entries.deleteAllRows();
+        for (String row : rows) {
+            String key = row.substring(Math.min(CLIENT.length(), row.length()));
+            if (key.startsWith(genericKey) && key.compareTo(fromKey) >= 0
+                    && (maxEntries <= 0 || entries.getNumRows() < maxEntries)) {
+                entries.appendRow();
+                entries.setValue("WA", row);
+            }
+        }
+        if (entries.getNumRows() == 0) {
+            throw new SimulatedAbapException("TABLE_EMPTY", "000", "Table " + tableName + " is empty");
+        }
+        entries.firstRow();
+        function.getExportParameterList().setValue("NUMBER_OF_ENTRIES", entries.getNumRows());
+    }
+
+    private void readTable(JCoFunction function) throws JCoException {
+        JCoParameterList imports = function.getImportParameterList();
+        String tableName = imports.getString("QUERY_TABLE");
+        if (!"USH02".equals(tableName)) {
+            throw new SimulatedAbapException("TABLE_NOT_AVAILABLE", "000", "Table " + tableName + " is not simulated");
+        }
+        String from = "";
+        for (Map<String, String> option : readRows(function.getTableParameterList().getTable("OPTIONS"))) {
+            Matcher matcher = USH02_CONDITION.matcher(option.get("TEXT"));
+            if (!matcher.matches()) {
+                throw new SimulatedAbapException("OPTION_NOT_VALID", "000", "Not simulated condition " + option.get("TEXT"));
+            }
+            from = matcher.group(1);
+        }
+        List<Map<String, String>> fields = readRows(function.getTableParameterList().getTable("FIELDS"));
+        String delimiter = imports.getString("DELIMITER");
+        JCoTable data = function.getTableParameterList().getTable("DATA");
+        data.deleteAllRows();
+        for (User user : users.values()) {
+            // only the last change of user, not the whole history
+            Map<String, String> row = new HashMap<>();
+            row.put("BNAME", user.getUserName());
+            row.put("MODDA", user.get("LASTMODIFIED.MODDATE").replace("-", ""));
+            row.put("MODTI", user.get("LASTMODIFIED.MODTIME").replace(":", ""));
+            if (row.get("MODDA").compareTo(from) < 0) {
+                continue;
+            }
+            StringBuilder wa = new StringBuilder();
+            for (Map<String, String> field : fields) {
+                if (wa.length() > 0) {
+                    wa.append(delimiter);
+                }
+                wa.append(row.getOrDefault(field.get("FIELDNAME"), ""));
+            }
+            data.appendRow();
+            data.setValue("WA", wa.toString());
+        }
+        data.firstRow();
+    }
+
+    // --- helpers
+
+    private void touch(User user, long millis) {
+        user.set("LASTMODIFIED.MODDATE", formatDate(millis));
+        user.set("LASTMODIFIED.MODTIME", formatTime(millis));
+        user.set("ADMINDATA.MODDATE", formatDate(millis));
+        user.set("ADMINDATA.MODTIME", formatTime(millis));
+    }
+
+    private static String formatDate(long millis) {
+        return new SimpleDateFormat("yyyy-MM-dd").format(new Date(millis));
+    }
+
+    private static String formatTime(long millis) {
+        return new SimpleDateFormat("HH:mm:ss").format(new Date(millis));
+    }
+
+    private static boolean isInitial(String value) {
+        return value == null || value.isEmpty() || "0000-00-00".equals(value) || "00:00:00".equals(value);
+    }
+
+    private static void message(JCoFunction function, String type, String number, String message) {
+        JCoTable returnTable = function.getTableParameterList().getTable("RETURN");
+        returnTable.appendRow();
+        returnTable.setValue("TYPE", type);
+        returnTable.setValue("ID", "01");
+        returnTable.setValue("NUMBER", number);
+        returnTable.setValue("MESSAGE", message);
+        returnTable.firstRow();
+    }
+
+    /**
+     * @return values of all simple fields of the record (actual row of table)
+     */
+    private static Map<String, String> read(JCoRecord record) {
+        Map<String, String> values = new LinkedHashMap<>();
+        JCoMetaData meta = record.getMetaData();
+        for (int i = 0; i < meta.getFieldCount(); i++) {
+            if (!meta.isStructure(i) && !meta.isTable(i)) {
+                values.put(meta.getName(i), record.getString(i));
+            }
+        }
+        return values;
+    }
+
+    private static void write(Map<String, String> values, JCoStructure structure) {
+        JCoMetaData meta = structure.getMetaData();
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            if (meta.indexOf(value.getKey()) >= 0) {
+                structure.setValue(value.getKey(), value.getValue());
+            }
+        }
+    }
+
+    private static List<Map<String, String>> readRows(JCoTable table) {
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (int row = 0; row < table.getNumRows(); row++) {
+            table.setRow(row);
+            rows.add(read(table));
+        }
+        return rows;
+    }
+
+    private static void writeRows(List<Map<String, String>> rows, JCoTable table) {
+        JCoMetaData meta = table.getMetaData();
+        for (Map<String, String> row : rows) {
+            table.appendRow();
+            for (Map.Entry<String, String> value : row.entrySet()) {
+                if (meta.indexOf(value.getKey()) >= 0) {
+                    table.setValue(value.getKey(), value.getValue());
+                }
+            }
+        }
+        table.firstRow();
+    }
+}
@@ -0,0 +1,252 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.exceptions.UnknownUidException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncDeltaType;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Connector operations over simulated SAP, runs without SAP.
+ */
+public class SapSimulatorTest {
+
+    private static final ObjectClass ROLE = new ObjectClass("ACTIVITYGROUP");
+
+    private static SapConnector connect(SapSimulator simulator) {
+        return simulator.connect(simulator.createConfiguration());
+    }
+
+    private static List<ConnectorObject> search(SapConnector connector, ObjectClass objectClass, SapFilter query) {
+        List<ConnectorObject> found = new ArrayList<>();
+        connector.executeQuery(objectClass, query, found::add, null);
+        return found;
+    }
+
+    @Test
+    public void testSearch() {
+        SapSimulator simulator = SapSimulator.generate("SIM_SEARCH", 30, 1);
+        SapConnector connector = connect(simulator);
+
+        List<ConnectorObject> users = search(connector, ObjectClass.ACCOUNT, null);
+        Assert.assertEquals(users.size(), 30);
+        for (ConnectorObject user : users) {
+            SapSimulator.User simulated = simulator.getUser(user.getName().getNameValue());
+            Assert.assertEquals(user.getAttributeByName("ADDRESS.LASTNAME").getValue().get(0), simulated.get("ADDRESS.LASTNAME"));
+            Assert.assertEquals(new HashSet<>(user.getAttributeByName("ACTIVITYGROUPS.AGR_NAME").getValue()),
+                    new HashSet<>(simulated.getColumn("ACTIVITYGROUPS", "AGR_NAME")));
+            Assert.assertEquals(user.getAttributeByName(OperationalAttributes.ENABLE_NAME).getValue().get(0), Boolean.TRUE);
+        }
+        Assert.assertEquals(simulator.getCalls("BAPI_USER_GETLIST"), 1);
+        Assert.assertEquals(connector.getLastOperationSummary().getDelivered(), 30);
+
+        SapFilter itDepartment = connector.createFilterTranslator(ObjectClass.ACCOUNT, null)
+                .translate(FilterBuilder.equalTo(AttributeBuilder.build("ADDRESS.DEPARTMENT", "IT"))).get(0);
+        List<ConnectorObject> it = search(connector, ObjectClass.ACCOUNT, itDepartment);
+        Assert.assertFalse(it.isEmpty());
+        for (ConnectorObject user : users) {
+            boolean inIt = "IT".equals(user.getAttributeByName("ADDRESS.DEPARTMENT").getValue().get(0));
+            Assert.assertEquals(it.stream().anyMatch(found -> found.getUid().equals(user.getUid())), inIt);
+        }
+
+        Assert.assertEquals(search(connector, new ObjectClass("ACTIVITYGROUP"), null).size(), 50);
+        Assert.assertEquals(search(connector, new ObjectClass(SapConnector.PROFILE_NAME), null).size(), 10);
+    }
+
+    @Test
+    public void testCreateUpdateDelete() {
+        SapSimulator simulator = SapSimulator.generate("SIM_CRUD", 0, 1);
+        SapConnector connector = connect(simulator);
+
+        Set<Attribute> attributes = new HashSet<>();
+        attributes.add(new Name("JSMITH"));
+        attributes.add(AttributeBuilder.build("ADDRESS.FIRSTNAME", "John"));
+        attributes.add(AttributeBuilder.build("ADDRESS.LASTNAME", "Smith"));
+        attributes.add(AttributeBuilder.build("ACTIVITYGROUPS.AGR_NAME", "Z_ROLE_01", "Z_ROLE_02"));
+        attributes.add(AttributeBuilder.buildPassword("Secret123!".toCharArray()));
+        Uid uid = connector.create(ObjectClass.ACCOUNT, attributes, null);
+
+        SapSimulator.User user = simulator.getUser("JSMITH");
+        Assert.assertEquals(uid.getUidValue(), "JSMITH");
+        Assert.assertEquals(user.get("ADDRESS.LASTNAME"), "Smith");
+        Assert.assertEquals(user.getColumn("ACTIVITYGROUPS", "AGR_NAME"), List.of("Z_ROLE_01", "Z_ROLE_02"));
+        Assert.assertEquals(user.getPassword(), "Secret123!");
+        Assert.assertFalse(user.isInitialPassword());
+
+        Set<Attribute> changes = new HashSet<>();
+        changes.add(AttributeBuilder.build("ADDRESS.LASTNAME", "Smith-Jones"));
+        changes.add(AttributeBuilder.buildEnabled(false));
+        connector.update(ObjectClass.ACCOUNT, uid, changes, null);
+
+        ConnectorObject read = search(connector, ObjectClass.ACCOUNT, new SapFilter(SapFilter.OPERATOR_EQUAL, SapConnector.USERNAME, "JSMITH")).get(0);
+        Assert.assertEquals(read.getAttributeByName("ADDRESS.LASTNAME").getValue().get(0), "Smith-Jones");
+        Assert.assertEquals(read.getAttributeByName("ADDRESS.FIRSTNAME").getValue().get(0), "John");
+        Assert.assertEquals(read.getAttributeByName(OperationalAttributes.ENABLE_NAME).getValue().get(0), Boolean.FALSE);
+
+        connector.delete(ObjectClass.ACCOUNT, uid, null);
+        Assert.assertNull(simulator.getUser("JSMITH"));
+        Assert.assertThrows(UnknownUidException.class, () -> connector.delete(ObjectClass.ACCOUNT, uid, null));
+    }
+
+    @Test
+    public void testSync() {
+        SapSimulator simulator = SapSimulator.generate("SIM_SYNC", 20, 1);
+        SapConnector connector = connect(simulator);
+        SyncToken token = connector.getLatestSyncToken(ObjectClass.ACCOUNT);
+
+        // changes in SAP are after the token
+        simulator.setClock(() -> System.currentTimeMillis() + 5000);
+        Set<Attribute> changes = new HashSet<>();
+        changes.add(AttributeBuilder.build("ADDRESS.DEPARTMENT", "AUDIT"));
+        connector.update(ObjectClass.ACCOUNT, new Uid("USER000007"), changes, null);
+
+        List<SyncDelta> deltas = new ArrayList<>();
+        connector.sync(ObjectClass.ACCOUNT, token, deltas::add, null);
+        Assert.assertEquals(deltas.size(), 1);
+        Assert.assertEquals(deltas.get(0).getUid().getUidValue(), "USER000007");
+        Assert.assertEquals(deltas.get(0).getObject().getAttributeByName("ADDRESS.DEPARTMENT").getValue().get(0), "AUDIT");
+    }
+
+    @Test
+    public void testSyncDeletedUser() throws IOException {
+        SapSimulator simulator = SapSimulator.generate("SIM_SYNC_DELETE", 5, 1);
+        File stateDirectory = Files.createTempDirectory("sap-sync-delete").toFile();
+        try {
+            SapConfiguration configuration = simulator.createConfiguration();
+            configuration.setDeleteDetectionInterval(1);
+            configuration.setStateDirectory(stateDirectory.getAbsolutePath());
+            SapConnector connector = simulator.connect(configuration);
+            SyncToken token = connector.getLatestSyncToken(ObjectClass.ACCOUNT);
+            connector.delete(ObjectClass.ACCOUNT, new Uid("USER000003"), null);
+
+            // pretend the listing is older than deleteDetectionInterval
+            File listing = stateDirectory.listFiles()[0];
+            new UserNameSnapshot(0, UserNameSnapshot.read(listing).getUserNames()).write(listing);
+
+            List<SyncDelta> deltas = new ArrayList<>();
+            connector.sync(ObjectClass.ACCOUNT, token, deltas::add, null);
+            Assert.assertEquals(deltas.size(), 1);
+            Assert.assertEquals(deltas.get(0).getDeltaType(), SyncDeltaType.DELETE);
+            Assert.assertEquals(deltas.get(0).getObjectClass(), ObjectClass.ACCOUNT);
+            Assert.assertEquals(deltas.get(0).getUid().getUidValue(), "USER000003");
+        } finally {
+            deleteDirectory(stateDirectory);
+        }
+    }
+
+    @Test
+    public void testSyncBatch() {
+        SapSimulator simulator = SapSimulator.generate("SIM_SYNC_BATCH", 20, 1);
+        SapConfiguration configuration = simulator.createConfiguration();
+        configuration.setSyncBatchSize(3);
+        configuration.setSyncPrefilterTable("USH02");
+        SapConnector connector = simulator.connect(configuration);
+        SyncToken token = connector.getLatestSyncToken(ObjectClass.ACCOUNT);
+
+        // two changed users in each second, in reverse order of usernames
+        long now = System.currentTimeMillis() + 5000;
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            long modification = now + i / 2 * 1000L;
+            simulator.setClock(() -> modification);
+            String userName = String.format("USER%06d", 20 - i);
+            simulator.touch(userName);
+            expected.add(userName);
+        }
+        for (int i = 0; i < expected.size(); i += 2) {
+            expected.add(i, expected.remove(i + 1));
+        }
+
+        List<String> synced = new ArrayList<>();
+        while (true) {
+            simulator.resetStatistics();
+            List<SyncDelta> deltas = new ArrayList<>();
+            connector.sync(ObjectClass.ACCOUNT, token, deltas::add, null);
+            // details only of the batch, not of all changed users
+            Assert.assertTrue(simulator.getCalls("BAPI_USER_GET_DETAIL") <= 3,
+                    "details read: " + simulator.getCalls("BAPI_USER_GET_DETAIL"));
+            if (deltas.isEmpty()) {
+                break;
+            }
+            Assert.assertTrue(deltas.size() <= 3);
+            for (SyncDelta delta : deltas) {
+                synced.add(delta.getUid().getUidValue());
+            }
+            token = deltas.get(deltas.size() - 1).getToken();
+        }
+        Assert.assertEquals(synced, expected);
+    }
+
+    @Test
+    public void testTableSyncWithSubTable() throws IOException {
+        SapSimulator simulator = SapSimulator.generate("SIM_SYNC_TABLE", 0, 1);
+        for (int i = 0; i < 3; i++) {
+            simulator.addTableRow("AGR_TEXTS", agrText(String.format("Z_ROLE_%02d", i), "Role " + i));
+        }
+        File stateDirectory = Files.createTempDirectory("sap-sync-table").toFile();
+        try {
+            SapConfiguration configuration = simulator.createConfiguration();
+            configuration.setSubTables(new String[]{"AGR_TEXTS for AGR_DEFINE format TSV as ShortDescription="
+                    + "MANDT:3:IGNORE,AGR_NAME:30:MATCH,SPRAS:1(\"E\"):IGNORE,LINE:5(\"00000\"):IGNORE,TEXT:80"});
+            configuration.setStateDirectory(stateDirectory.getAbsolutePath());
+            SapConnector connector = simulator.connect(configuration);
+            SyncToken token = connector.getLatestSyncToken(ROLE);
+
+            // only the text in sub-table is changed
+            simulator.removeTableRow("AGR_TEXTS", agrText("Z_ROLE_01", "Role 1"));
+            simulator.addTableRow("AGR_TEXTS", agrText("Z_ROLE_01", "Changed role"));
+
+            List<SyncDelta> deltas = new ArrayList<>();
+            connector.sync(ROLE, token, deltas::add, null);
+            Assert.assertEquals(deltas.size(), 1);
+            Assert.assertEquals(deltas.get(0).getDeltaType(), SyncDeltaType.UPDATE);
+            Assert.assertEquals(deltas.get(0).getUid().getUidValue(), "Z_ROLE_01");
+            Assert.assertEquals(deltas.get(0).getObject().getAttributeByName("ShortDescription").getValue().get(0),
+                    "Changed role");
+        } finally {
+            deleteDirectory(stateDirectory);
+        }
+    }
+
+    private static void deleteDirectory(File directory) throws IOException {
+        for (File file : directory.listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(directory.toPath());
+    }
+
+    private static String agrText(String agrName, String text) {
+        return String.format("%s%-30sE00000%-80s", SapSimulator.CLIENT, agrName, text);
+    }
+
+    @Test
+    public void testLatency() {
+        SapSimulator simulator = SapSimulator.generate("SIM_LATENCY", 5, 1);
+        simulator.setLatency(20, 0);
+        SapConnector connector = connect(simulator);
+        simulator.resetStatistics();
+
+        search(connector, ObjectClass.ACCOUNT, null);
+        // list and detail of each user
+        Assert.assertEquals(simulator.getCalls(), 6);
+        Assert.assertEquals(simulator.getMaxConcurrency(), 1);
+        Assert.assertTrue(connector.getLastOperationSummary().getRfcMillis() >= 6 * 20);
+    }
+}
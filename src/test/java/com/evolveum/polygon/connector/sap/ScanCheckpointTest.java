@@ -0,0 +1,42 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Checkpoint of full read of users, runs without SAP.
+ */
+public class ScanCheckpointTest {
+
+    @Test
+    public void testSaveAndResume() throws IOException {
+        File dir = Files.createTempDirectory("sap-checkpoint").toFile();
+        dir.deleteOnExit();
+        File file = new File(dir, "TEST-USERS.checkpoint");
+        file.deleteOnExit();
+
+        ScanCheckpoint checkpoint = new ScanCheckpoint(file, "query=null", 2);
+        Assert.assertNull(checkpoint.resume());
+        checkpoint.delivered("ADAM");
+        Assert.assertFalse(file.exists());
+        checkpoint.delivered("BOB");
+        checkpoint.delivered("JOHN");
+        // read failed after JOHN
+        checkpoint.saveQuietly();
+
+        ScanCheckpoint resumed = new ScanCheckpoint(file, "query=null", 2);
+        Assert.assertEquals(resumed.resume(), "JOHN");
+        Assert.assertEquals(resumed.getDelivered(), 3);
+
+        // other query doesn't continue
+        Assert.assertNull(new ScanCheckpoint(file, "query=other", 2).resume());
+
+        resumed.delivered("MARY");
+        resumed.complete();
+        Assert.assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,115 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.SearchResult;
+import org.identityconnectors.framework.spi.SearchResultsHandler;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Paging of PROFILE and table object classes, runs without SAP.
+ */
+public class SearchPageTest {
+
+    private static final List<String> KEYS = Arrays.asList("A", "B", "C", "D", "E");
+
+    private static class ResultHandler implements SearchResultsHandler {
+
+        private SearchResult result;
+
+        @Override
+        public boolean handle(ConnectorObject connectorObject) {
+            return true;
+        }
+
+        @Override
+        public void handleResult(SearchResult result) {
+            this.result = result;
+        }
+    }
+
+    private static OperationOptions offset(int offset, int pageSize) {
+        return new OperationOptionsBuilder().setPagedResultsOffset(offset).setPageSize(pageSize).build();
+    }
+
+    private static OperationOptions cookie(String cookie, int pageSize) {
+        return new OperationOptionsBuilder().setPagedResultsCookie(cookie).setPageSize(pageSize).build();
+    }
+
+    @Test
+    public void testNotPaged() {
+        SearchPage page = SearchPage.of(KEYS, null);
+        Assert.assertFalse(page.isPaged());
+        Assert.assertEquals(page.getFrom(), 0);
+        Assert.assertEquals(page.getTo(), 5);
+
+        ResultHandler handler = new ResultHandler();
+        page.complete(handler, "E", 5, 5);
+        Assert.assertNull(handler.result);
+    }
+
+    @Test
+    public void testOffset() {
+        SearchPage page = SearchPage.of(KEYS, offset(1, 2));
+        Assert.assertEquals(page.getFrom(), 1);
+        Assert.assertEquals(page.getTo(), 3);
+        ResultHandler handler = new ResultHandler();
+        page.complete(handler, "C", 2, 5);
+        Assert.assertEquals(handler.result.getRemainingPagedResults(), 2);
+        Assert.assertEquals(handler.result.getPagedResultsCookie(), "C");
+
+        // last page is shorter, nothing remains
+        page = SearchPage.of(KEYS, offset(4, 2));
+        Assert.assertEquals(page.getFrom(), 4);
+        Assert.assertEquals(page.getTo(), 5);
+        page.complete(handler, "E", 1, 5);
+        Assert.assertEquals(handler.result.getRemainingPagedResults(), 0);
+        Assert.assertNull(handler.result.getPagedResultsCookie());
+
+        // offset after the end
+        page = SearchPage.of(KEYS, offset(10, 2));
+        Assert.assertEquals(page.getFrom(), 5);
+        Assert.assertEquals(page.getTo(), 5);
+    }
+
+    @Test
+    public void testCookie() {
+        SearchPage page = SearchPage.of(KEYS, cookie("B", 2));
+        Assert.assertEquals(page.getFrom(), 2);
+        Assert.assertEquals(page.getTo(), 4);
+        ResultHandler handler = new ResultHandler();
+        page.complete(handler, "D", 2, 5);
+        Assert.assertEquals(handler.result.getRemainingPagedResults(), 1);
+        Assert.assertEquals(handler.result.getPagedResultsCookie(), "D");
+
+        // key of cookie was deleted in the meantime, next page starts after it anyway
+        page = SearchPage.of(KEYS, cookie("BB", 2));
+        Assert.assertEquals(page.getFrom(), 2);
+        Assert.assertEquals(page.getTo(), 4);
+
+        page = SearchPage.of(KEYS, cookie("D", 2));
+        page.complete(handler, "E", 1, 5);
+        Assert.assertEquals(handler.result.getRemainingPagedResults(), 0);
+        Assert.assertNull(handler.result.getPagedResultsCookie());
+    }
+
+    @Test
+    public void testTableWithEmptyKey() {
+        // 50 generated roles in AGR_DEFINE
+        SapSimulator simulator = SapSimulator.generate("SIM_PAGE_EMPTY_KEY", 0, 1);
+        // row without key is never returned, but it's counted in NUMBER_OF_ENTRIES
+        simulator.addTableRow("AGR_DEFINE", SapSimulator.CLIENT);
+        SapConnector connector = simulator.connect(simulator.createConfiguration());
+
+        ResultHandler handler = new ResultHandler();
+        connector.executeQuery(new ObjectClass("ACTIVITYGROUP"), null, handler, offset(48, 2));
+        Assert.assertEquals(handler.result.getRemainingPagedResults(), 0);
+        Assert.assertNull(handler.result.getPagedResultsCookie());
+    }
+}
@@ -0,0 +1,29 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * SAP server clock offset, runs without SAP.
+ */
+public class ServerClockTest {
+
+    @Test
+    public void testOffset() {
+        ServerClock clock = ServerClock.get("TEST-CLOCK");
+        Assert.assertTrue(clock.isExpired(60000L));
+
+        long now = System.currentTimeMillis();
+        // server is one hour ahead, call took 200 ms
+        clock.update(now - 200, now, now - 100 + 3600000L);
+        Assert.assertEquals(clock.getOffset(), 3600000L);
+        Assert.assertEquals(clock.getUncertainty(), 1100L);
+        Assert.assertFalse(clock.isExpired(60000L));
+
+        long before = System.currentTimeMillis();
+        long serverNow = clock.now();
+        Assert.assertTrue(serverNow >= before + 3600000L && serverNow <= System.currentTimeMillis() + 3600000L);
+        Assert.assertTrue(clock.safeNow() < clock.now());
+        Assert.assertSame(ServerClock.get("TEST-CLOCK"), clock);
+    }
+}
@@ -0,0 +1,704 @@
+package com.evolveum.polygon.connector.sap;
+
+import com.sap.conn.jco.JCoField;
+import com.sap.conn.jco.JCoFieldIterator;
+import com.sap.conn.jco.JCoFunction;
+import com.sap.conn.jco.JCoListMetaData;
+import com.sap.conn.jco.JCoMetaData;
+import com.sap.conn.jco.JCoParameterList;
+import com.sap.conn.jco.JCoRecordMetaData;
+import com.sap.conn.jco.JCoStructure;
+import com.sap.conn.jco.JCoTable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JCo functions, parameter lists, structures and tables backed by plain Java arrays, used by {@link SapSimulator}.
+ * <br/>
+ * Only the part of JCo API used by the connector is implemented (as dynamic proxies of JCo interfaces), so neither
+ * JCo native library nor SAP system is needed. Values are kept as JCo returns them: CHAR and NUM as String,
+ * DATE and TIME as Date, INT as Integer, BCD as BigDecimal. Not thread safe, same as JCo records.
+ */
+final class SimulatedRecords {
+
+    private SimulatedRecords() {
+    }
+
+    /**
+     * Field of parameter list or record (structure, table row).
+     */
+    static final class Field {
+
+        final String name;
+
+        final int type;
+
+        final int length;
+
+        // fields of structure or table row, null for simple fields
+        final Meta record;
+
+        Field(String name, int type, int length, Meta record) {
+            this.name = name;
+            this.type = type;
+            this.length = length;
+            this.record = record;
+        }
+    }
+
+    /**
+     * Metadata of parameter list or record.
+     */
+    static final class Meta {
+
+        final String name;
+
+        final List<Field> fields;
+
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        Meta(String name, List<Field> fields) {
+            this.name = name;
+            this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+            for (int i = 0; i < fields.size(); i++) {
+                indexes.put(fields.get(i).name, i);
+            }
+        }
+
+        int indexOf(String name) {
+            Integer index = indexes.get(name);
+            return index == null ? -1 : index;
+        }
+
+        int index(Object nameOrIndex) {
+            int index = nameOrIndex instanceof Integer ? (Integer) nameOrIndex : indexOf((String) nameOrIndex);
+            if (index < 0 || index >= fields.size()) {
+                // same as JCoRuntimeException of JCo
+                throw new IllegalArgumentException("Field " + nameOrIndex + " not a member of " + name);
+            }
+            return index;
+        }
+
+        Field field(Object nameOrIndex) {
+            return fields.get(index(nameOrIndex));
+        }
+    }
+
+    static Meta meta(String name, Field... fields) {
+        return new Meta(name, Arrays.asList(fields));
+    }
+
+    /**
+     * @return metadata with all fields of given metadata as CHAR 1 change flags, except of excluded fields
+     */
+    static Meta changeFlags(String name, Meta record, String... excluded) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : record.fields) {
+            if (!Arrays.asList(excluded).contains(field.name)) {
+                fields.add(chars(field.name, 1));
+            }
+        }
+        return new Meta(name, fields);
+    }
+
+    static Field chars(String name, int length) {
+        return new Field(name, JCoMetaData.TYPE_CHAR, length, null);
+    }
+
+    static Field num(String name, int length) {
+        return new Field(name, JCoMetaData.TYPE_NUM, length, null);
+    }
+
+    static Field date(String name) {
+        return new Field(name, JCoMetaData.TYPE_DATE, 8, null);
+    }
+
+    static Field time(String name) {
+        return new Field(name, JCoMetaData.TYPE_TIME, 6, null);
+    }
+
+    static Field integer(String name) {
+        return new Field(name, JCoMetaData.TYPE_INT, 4, null);
+    }
+
+    static Field decimal(String name, int length) {
+        return new Field(name, JCoMetaData.TYPE_BCD, length, null);
+    }
+
+    static Field structure(String name, Meta record) {
+        return new Field(name, JCoMetaData.TYPE_STRUCTURE, 0, record);
+    }
+
+    static Field table(String name, Meta record) {
+        return new Field(name, JCoMetaData.TYPE_TABLE, 0, record);
+    }
+
+    /**
+     * @param imports import parameters, null if the function has none, the same for exports and tables
+     * @return new function with empty parameters
+     */
+    static JCoFunction function(String name, Meta imports, Meta exports, Meta tables) {
+        return proxy(JCoFunction.class, new FunctionHandler(name, imports, exports, tables));
+    }
+
+    // --- values
+
+    private static SimpleDateFormat dateFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setLenient(false);
+        return format;
+    }
+
+    /**
+     * @return value converted to internal representation of the field type, as JCo setValue does
+     */
+    static Object convert(Field field, Object value) {
+        switch (field.type) {
+            case JCoMetaData.TYPE_DATE:
+            case JCoMetaData.TYPE_TIME:
+                if (value == null || value instanceof Date) {
+                    return value;
+                }
+                return parseDate(field, String.valueOf(value).trim());
+            case JCoMetaData.TYPE_INT:
+                if (value instanceof Number) {
+                    return ((Number) value).intValue();
+                }
+                String number = value == null ? "" : String.valueOf(value).trim();
+                return number.isEmpty() ? 0 : Integer.parseInt(number);
+            case JCoMetaData.TYPE_BCD:
+                if (value == null || String.valueOf(value).trim().isEmpty()) {
+                    return BigDecimal.ZERO;
+                }
+                return value instanceof BigDecimal ? value : new BigDecimal(String.valueOf(value).trim());
+            case JCoMetaData.TYPE_NUM:
+                String digits = value == null ? "" : String.valueOf(value).trim();
+                if (!digits.matches("[0-9]*") || digits.length() > field.length) {
+                    throw new IllegalArgumentException("Value " + value + " is not NUM " + field.length + " of field " + field.name);
+                }
+                return pad(digits, field.length);
+            case JCoMetaData.TYPE_STRUCTURE:
+            case JCoMetaData.TYPE_TABLE:
+                throw new IllegalArgumentException("Value can't be set to " + field.name + ", use getStructure or getTable");
+            default:
+                String string = value == null ? "" : value instanceof Date ? format(field, value) : String.valueOf(value);
+                // CHAR is silently truncated and trailing spaces are removed, same as in SAP
+                if (field.length > 0 && string.length() > field.length) {
+                    string = string.substring(0, field.length);
+                }
+                return string.replaceAll("\\s+$", "");
+        }
+    }
+
+    private static Object parseDate(Field field, String value) {
+        boolean date = field.type == JCoMetaData.TYPE_DATE;
+        if (value.isEmpty() || value.matches("[0\\-:]*")) {
+            return null;
+        }
+        try {
+            if (date) {
+                return dateFormat(value.contains("-") ? "yyyy-MM-dd" : "yyyyMMdd").parse(value);
+            }
+            return dateFormat(value.contains(":") ? "HH:mm:ss" : "HHmmss").parse(value);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Value " + value + " is not " + (date ? "DATE" : "TIME") + " of field " + field.name, e);
+        }
+    }
+
+    private static String pad(String digits, int length) {
+        StringBuilder padded = new StringBuilder();
+        for (int i = digits.length(); i < length; i++) {
+            padded.append('0');
+        }
+        return padded.append(digits).toString();
+    }
+
+    /**
+     * @return value as JCo getString returns it
+     */
+    static String format(Field field, Object value) {
+        switch (field.type) {
+            case JCoMetaData.TYPE_DATE:
+                return value == null ? "0000-00-00" : dateFormat("yyyy-MM-dd").format((Date) value);
+            case JCoMetaData.TYPE_TIME:
+                return value == null ? "00:00:00" : dateFormat("HH:mm:ss").format((Date) value);
+            case JCoMetaData.TYPE_BCD:
+                return ((BigDecimal) value).toPlainString();
+            default:
+                return value == null ? "" : String.valueOf(value);
+        }
+    }
+
+    private static Object initial(Field field) {
+        switch (field.type) {
+            case JCoMetaData.TYPE_DATE:
+            case JCoMetaData.TYPE_TIME:
+                return null;
+            case JCoMetaData.TYPE_STRUCTURE:
+                return proxy(JCoStructure.class, new RecordHandler(field.record, false));
+            case JCoMetaData.TYPE_TABLE:
+                return proxy(JCoTable.class, new RecordHandler(field.record, true));
+            default:
+                return convert(field, null);
+        }
+    }
+
+    static String className(Field field) {
+        switch (field.type) {
+            case JCoMetaData.TYPE_DATE:
+            case JCoMetaData.TYPE_TIME:
+                return Date.class.getName();
+            case JCoMetaData.TYPE_INT:
+                return Integer.class.getName();
+            case JCoMetaData.TYPE_BCD:
+                return BigDecimal.class.getName();
+            case JCoMetaData.TYPE_BYTE:
+                return "byte[]";
+            case JCoMetaData.TYPE_STRUCTURE:
+                return JCoStructure.class.getName();
+            case JCoMetaData.TYPE_TABLE:
+                return JCoTable.class.getName();
+            default:
+                return String.class.getName();
+        }
+    }
+
+    static String typeName(Field field) {
+        switch (field.type) {
+            case JCoMetaData.TYPE_DATE:
+                return "DATE";
+            case JCoMetaData.TYPE_TIME:
+                return "TIME";
+            case JCoMetaData.TYPE_INT:
+                return "INT";
+            case JCoMetaData.TYPE_BCD:
+                return "BCD";
+            case JCoMetaData.TYPE_NUM:
+                return "NUM";
+            case JCoMetaData.TYPE_BYTE:
+                return "BYTE";
+            case JCoMetaData.TYPE_STRUCTURE:
+                return "STRUCTURE";
+            case JCoMetaData.TYPE_TABLE:
+                return "TABLE";
+            default:
+                return "CHAR";
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    // --- proxies
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        T proxy = (T) Proxy.newProxyInstance(SimulatedRecords.class.getClassLoader(), new Class<?>[]{type}, handler);
+        handler.self = proxy;
+        return proxy;
+    }
+
+    /**
+     * Dispatches calls of JCo interface methods by name, object methods are answered by the handler itself.
+     */
+    private abstract static class Handler implements InvocationHandler {
+
+        Object self;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            Object[] arguments = args == null ? new Object[0] : args;
+            switch (method.getName()) {
+                case "equals":
+                    if (arguments.length == 1 && method.getParameterTypes()[0] == Object.class) {
+                        return proxy == arguments[0];
+                    }
+                    break;
+                case "hashCode":
+                    if (arguments.length == 0) {
+                        return System.identityHashCode(proxy);
+                    }
+                    break;
+                case "toString":
+                    if (arguments.length == 0) {
+                        return describe();
+                    }
+                    break;
+                default:
+            }
+            return call(method, arguments);
+        }
+
+        abstract Object call(Method method, Object[] args);
+
+        abstract String describe();
+
+        UnsupportedOperationException unsupported(Method method) {
+            return new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + method.getName()
+                    + " is not simulated");
+        }
+    }
+
+    private static final class FunctionHandler extends Handler {
+
+        private final String name;
+
+        private final JCoParameterList imports;
+
+        private final JCoParameterList exports;
+
+        private final JCoParameterList tables;
+
+        FunctionHandler(String name, Meta imports, Meta exports, Meta tables) {
+            this.name = name;
+            this.imports = parameterList(imports);
+            this.exports = parameterList(exports);
+            this.tables = parameterList(tables);
+        }
+
+        private static JCoParameterList parameterList(Meta meta) {
+            return meta == null ? null : proxy(JCoParameterList.class, new RecordHandler(meta, false));
+        }
+
+        @Override
+        Object call(Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getImportParameterList":
+                    return imports;
+                case "getExportParameterList":
+                    return exports;
+                case "getTableParameterList":
+                    return tables;
+                case "getChangingParameterList":
+                case "getFunctionTemplate":
+                    return null;
+                case "toXML":
+                    return describe();
+                default:
+                    // also execute(JCoDestination), simulated functions are executed by SapSimulator
+                    throw unsupported(method);
+            }
+        }
+
+        @Override
+        String describe() {
+            StringBuilder xml = new StringBuilder("<").append(name).append(">");
+            for (JCoParameterList list : Arrays.asList(imports, exports, tables)) {
+                if (list != null) {
+                    xml.append(list.toXML());
+                }
+            }
+            return xml.append("</").append(name).append(">").toString();
+        }
+    }
+
+    /**
+     * Parameter list, structure or table, table has values of the actual row.
+     */
+    private static final class RecordHandler extends Handler {
+
+        private final Meta meta;
+
+        private final boolean table;
+
+        private final List<Object[]> rows = new ArrayList<>();
+
+        private int row;
+
+        RecordHandler(Meta meta, boolean table) {
+            this.meta = meta;
+            this.table = table;
+            if (!table) {
+                rows.add(newRow());
+            }
+        }
+
+        private Object[] newRow() {
+            Object[] values = new Object[meta.fields.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = initial(meta.fields.get(i));
+            }
+            return values;
+        }
+
+        private Object[] values() {
+            if (rows.isEmpty()) {
+                throw new IllegalStateException("Table " + meta.name + " is empty");
+            }
+            return rows.get(row);
+        }
+
+        @Override
+        Object call(Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getMetaData":
+                case "getListMetaData":
+                case "getRecordMetaData":
+                    return metaData(meta, method.getReturnType());
+                case "getFieldCount":
+                    return meta.fields.size();
+                case "getString":
+                    return format(meta.field(args[0]), values()[meta.index(args[0])]);
+                case "getValue":
+                case "getStructure":
+                case "getTable":
+                    return values()[meta.index(args[0])];
+                case "getDate":
+                    Object date = values()[meta.index(args[0])];
+                    return date instanceof Date ? date : convert(date(meta.field(args[0]).name), date);
+                case "getInt":
+                    return convert(integer(meta.field(args[0]).name), values()[meta.index(args[0])]);
+                case "getBigDecimal":
+                    return convert(decimal(meta.field(args[0]).name, 0), values()[meta.index(args[0])]);
+                case "getByteArray":
+                    Object bytes = values()[meta.index(args[0])];
+                    return bytes instanceof byte[] ? bytes : format(meta.field(args[0]), bytes).getBytes(StandardCharsets.UTF_8);
+                case "getField":
+                    return field(values(), meta.index(args[0]));
+                case "setValue":
+                    int index = meta.index(args[0]);
+                    values()[index] = convert(meta.fields.get(index), args[1]);
+                    return null;
+                case "isInitialized":
+                    meta.index(args[0]);
+                    return true;
+                case "iterator":
+                    return fields(values()).iterator();
+                case "getFieldIterator":
+                    Iterator<JCoField> iterator = fields(values()).iterator();
+                    return proxy(JCoFieldIterator.class, new Handler() {
+                        @Override
+                        Object call(Method method, Object[] args) {
+                            switch (method.getName()) {
+                                case "hasNextField":
+                                    return iterator.hasNext();
+                                case "nextField":
+                                    return iterator.next();
+                                default:
+                                    throw unsupported(method);
+                            }
+                        }
+
+                        @Override
+                        String describe() {
+                            return "JCoFieldIterator of " + meta.name;
+                        }
+                    });
+                case "toXML":
+                    return describe();
+                case "clear":
+                    if (table) {
+                        rows.clear();
+                        row = 0;
+                    } else {
+                        rows.set(0, newRow());
+                    }
+                    return null;
+                default:
+                    if (table) {
+                        return callTable(method, args);
+                    }
+                    throw unsupported(method);
+            }
+        }
+
+        private Object callTable(Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getNumRows":
+                    return rows.size();
+                case "getRow":
+                    return row;
+                case "isEmpty":
+                    return rows.isEmpty();
+                case "setRow":
+                    int newRow = (Integer) args[0];
+                    if (newRow < 0 || newRow >= rows.size()) {
+                        throw new IllegalArgumentException("Row " + newRow + " out of range of table " + meta.name
+                                + " with " + rows.size() + " rows");
+                    }
+                    row = newRow;
+                    return null;
+                case "firstRow":
+                    row = 0;
+                    return !rows.isEmpty();
+                case "lastRow":
+                    row = Math.max(0, rows.size() - 1);
+                    return !rows.isEmpty();
+                case "nextRow":
+                    if (row + 1 < rows.size()) {
+                        row++;
+                        return true;
+                    }
+                    return false;
+                case "appendRow":
+                    rows.add(newRow());
+                    row = rows.size() - 1;
+                    return null;
+                case "appendRows":
+                    for (int i = 0; i < (Integer) args[0]; i++) {
+                        rows.add(newRow());
+                    }
+                    row = rows.size() - 1;
+                    return null;
+                case "deleteAllRows":
+                    rows.clear();
+                    row = 0;
+                    return null;
+                default:
+                    throw unsupported(method);
+            }
+        }
+
+        private List<JCoField> fields(Object[] values) {
+            List<JCoField> fields = new ArrayList<>(values.length);
+            for (int i = 0; i < values.length; i++) {
+                fields.add(field(values, i));
+            }
+            return fields;
+        }
+
+        private JCoField field(Object[] values, int index) {
+            Field field = meta.fields.get(index);
+            return proxy(JCoField.class, new Handler() {
+                @Override
+                Object call(Method method, Object[] args) {
+                    switch (method.getName()) {
+                        case "getName":
+                            return field.name;
+                        case "getString":
+                            return format(field, values[index]);
+                        case "getValue":
+                        case "getStructure":
+                        case "getTable":
+                            return values[index];
+                        case "getDate":
+                            return values[index] instanceof Date ? values[index] : null;
+                        case "getInt":
+                            return convert(integer(field.name), values[index]);
+                        case "setValue":
+                            values[index] = convert(field, args[0]);
+                            return null;
+                        case "getType":
+                            return field.type;
+                        case "getTypeAsString":
+                            return typeName(field);
+                        case "getLength":
+                            return field.length;
+                        case "getClassNameOfValue":
+                            return className(field);
+                        case "isStructure":
+                            return field.type == JCoMetaData.TYPE_STRUCTURE;
+                        case "isTable":
+                            return field.type == JCoMetaData.TYPE_TABLE;
+                        case "isInitialized":
+                            return true;
+                        default:
+                            throw unsupported(method);
+                    }
+                }
+
+                @Override
+                String describe() {
+                    return field.name + "=" + format(field, values[index]);
+                }
+            });
+        }
+
+        @Override
+        String describe() {
+            StringBuilder xml = new StringBuilder("<").append(meta.name).append(">");
+            for (Object[] values : rows) {
+                if (table) {
+                    xml.append("<item>");
+                }
+                for (int i = 0; i < values.length; i++) {
+                    Field field = meta.fields.get(i);
+                    if (field.record != null) {
+                        xml.append(values[i]);
+                    } else {
+                        xml.append("<").append(field.name).append(">").append(escape(format(field, values[i])))
+                                .append("</").append(field.name).append(">");
+                    }
+                }
+                if (table) {
+                    xml.append("</item>");
+                }
+            }
+            return xml.append("</").append(meta.name).append(">").toString();
+        }
+    }
+
+    private static Object metaData(Meta meta, Class<?> type) {
+        Class<?> metaType = JCoListMetaData.class.isAssignableFrom(type) ? JCoListMetaData.class : JCoRecordMetaData.class;
+        return proxy(metaType, new Handler() {
+            @Override
+            Object call(Method method, Object[] args) {
+                if (args.length == 0) {
+                    switch (method.getName()) {
+                        case "getName":
+                            return meta.name;
+                        case "getFieldCount":
+                            return meta.fields.size();
+                        case "lock":
+                            return null;
+                        case "isLocked":
+                            return true;
+                        default:
+                            throw unsupported(method);
+                    }
+                }
+                if ("indexOf".equals(method.getName())) {
+                    return meta.indexOf((String) args[0]);
+                } else if ("hasField".equals(method.getName())) {
+                    return meta.indexOf((String) args[0]) >= 0;
+                }
+                Field field = meta.field(args[0]);
+                switch (method.getName()) {
+                    case "getName":
+                        return field.name;
+                    case "getType":
+                        return field.type;
+                    case "getLength":
+                    case "getByteLength":
+                        return field.length;
+                    case "getClassNameOfField":
+                        return className(field);
+                    case "getTypeAsString":
+                        return typeName(field);
+                    case "getRecordTypeName":
+                        return field.record == null ? null : field.record.name;
+                    case "getRecordMetaData":
+                        return field.record == null ? null : metaData(field.record, JCoRecordMetaData.class);
+                    case "isStructure":
+                        return field.type == JCoMetaData.TYPE_STRUCTURE;
+                    case "isTable":
+                        return field.type == JCoMetaData.TYPE_TABLE;
+                    default:
+                        throw unsupported(method);
+                }
+            }
+
+            @Override
+            String describe() {
+                return "metadata of " + meta.name;
+            }
+        });
+    }
+}
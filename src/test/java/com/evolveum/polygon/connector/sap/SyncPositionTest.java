@@ -0,0 +1,59 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.TreeSet;
+
+/**
+ * Composite LiveSync token of accounts, runs without SAP.
+ */
+public class SyncPositionTest {
+
+    @Test
+    public void testTokenRoundTrip() {
+        SyncPosition position = new SyncPosition(1500000000000L, "JOHN");
+        Assert.assertEquals(position.toToken().getValue(), "1500000000000|JOHN");
+        Assert.assertEquals(SyncPosition.fromToken(position.toToken()), position);
+
+        SyncPosition wholeSecond = new SyncPosition(1500000000000L, null);
+        Assert.assertEquals(SyncPosition.fromToken(wholeSecond.toToken()), wholeSecond);
+    }
+
+    @Test
+    public void testLegacyLongToken() {
+        SyncPosition position = SyncPosition.fromToken(new SyncToken(1500000000000L));
+        Assert.assertEquals(position.getTimestamp(), 1500000000000L);
+        Assert.assertNull(position.getUserName());
+        // all users changed in this second were already processed
+        Assert.assertFalse(position.isBefore(1500000000000L, "ZORRO"));
+        Assert.assertTrue(position.isBefore(1500000001000L, "ADAM"));
+    }
+
+    @Test
+    public void testResumeInsideSecond() {
+        SyncPosition position = new SyncPosition(1500000000000L, "JOHN");
+        Assert.assertFalse(position.isBefore(1500000000000L, "ADAM"));
+        Assert.assertFalse(position.isBefore(1500000000000L, "JOHN"));
+        Assert.assertTrue(position.isBefore(1500000000000L, "MARY"));
+        Assert.assertFalse(position.isBefore(1499999999000L, "ZORRO"));
+    }
+
+    @Test
+    public void testOrder() {
+        TreeSet<SyncPosition> positions = new TreeSet<>();
+        positions.add(new SyncPosition(2000L, "ADAM"));
+        positions.add(new SyncPosition(1000L, "MARY"));
+        positions.add(new SyncPosition(1000L, "JOHN"));
+        Assert.assertEquals(positions.first(), new SyncPosition(1000L, "JOHN"));
+        Assert.assertEquals(positions.last(), new SyncPosition(2000L, "ADAM"));
+        Assert.assertTrue(new SyncPosition(1000L, null).compareTo(new SyncPosition(1000L, "ZORRO")) > 0);
+    }
+
+    @Test
+    public void testInvalidToken() {
+        Assert.assertNull(SyncPosition.fromToken(new SyncToken("abc|JOHN")));
+        Assert.assertNull(SyncPosition.fromToken(null));
+    }
+}
@@ -0,0 +1,121 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Snapshot file used by LiveSync of table object classes, runs without SAP.
+ */
+public class TableSnapshotTest {
+
+    private File newSnapshotFile() throws IOException {
+        File dir = Files.createTempDirectory("sap-snapshot").toFile();
+        dir.deleteOnExit();
+        File file = new File(dir, "TEST-AGR_DEFINE.snapshot");
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testResetAndAppend() throws IOException {
+        File file = newSnapshotFile();
+        Map<String, Long> state = new HashMap<>();
+        state.put("ROLE_A", 1L);
+        state.put("ROLE_B", 2L);
+
+        long generation = TableSnapshot.reset(file, state);
+        Assert.assertEquals(generation, 1);
+
+        try (TableSnapshot snapshot = TableSnapshot.open(file, generation)) {
+            Assert.assertEquals(snapshot.getGeneration(), 1);
+            Assert.assertEquals(snapshot.getHash("ROLE_A"), Long.valueOf(1L));
+            snapshot.put("ROLE_C", 3L);
+            snapshot.remove("ROLE_A");
+            Assert.assertEquals(snapshot.getGeneration(), 3);
+        }
+
+        try (TableSnapshot snapshot = TableSnapshot.open(file, 3L)) {
+            Assert.assertNull(snapshot.getHash("ROLE_A"));
+            Assert.assertEquals(snapshot.getHash("ROLE_C"), Long.valueOf(3L));
+            Assert.assertEquals(snapshot.size(), 2);
+        }
+    }
+
+    @Test
+    public void testOlderGenerationForgetsUnconfirmedChanges() throws IOException {
+        File file = newSnapshotFile();
+        Map<String, Long> state = new HashMap<>();
+        state.put("ROLE_A", 1L);
+        long generation = TableSnapshot.reset(file, state);
+
+        try (TableSnapshot snapshot = TableSnapshot.open(file, generation)) {
+            snapshot.put("ROLE_A", 10L);
+            snapshot.put("ROLE_B", 20L);
+        }
+
+        // token of the first change only, second one must be reported again
+        try (TableSnapshot snapshot = TableSnapshot.open(file, generation + 1)) {
+            Assert.assertEquals(snapshot.getHash("ROLE_A"), Long.valueOf(10L));
+            Assert.assertNull(snapshot.getHash("ROLE_B"));
+            snapshot.put("ROLE_C", 30L);
+            Assert.assertEquals(snapshot.getGeneration(), generation + 2);
+        }
+
+        try (TableSnapshot snapshot = TableSnapshot.open(file, generation + 2)) {
+            Assert.assertNull(snapshot.getHash("ROLE_B"));
+            Assert.assertEquals(snapshot.getHash("ROLE_C"), Long.valueOf(30L));
+        }
+    }
+
+    @Test
+    public void testGenerationOlderThanCompactionStartsWithEmptyState() throws IOException {
+        File file = newSnapshotFile();
+        Map<String, Long> state = new HashMap<>();
+        state.put("ROLE_A", 1L);
+        long generation = TableSnapshot.reset(file, state);
+
+        try (TableSnapshot snapshot = TableSnapshot.open(file, generation)) {
+            for (long i = 0; i <= 1000; i++) {
+                snapshot.put("ROLE_B", i);
+            }
+            snapshot.compactIfNeeded();
+        }
+
+        // changes before the compaction are not in the file anymore, all rows must be reported again
+        try (TableSnapshot snapshot = TableSnapshot.open(file, generation)) {
+            Assert.assertEquals(snapshot.size(), 0);
+            Assert.assertEquals(snapshot.getGeneration(), generation + 1001);
+            snapshot.put("ROLE_A", 1L);
+        }
+
+        try (TableSnapshot snapshot = TableSnapshot.open(file, generation + 1002)) {
+            Assert.assertEquals(snapshot.getHash("ROLE_A"), Long.valueOf(1L));
+            Assert.assertEquals(snapshot.size(), 1);
+        }
+    }
+
+    @Test
+    public void testEmptyTokenStartsWithEmptyState() throws IOException {
+        File file = newSnapshotFile();
+        Map<String, Long> state = new HashMap<>();
+        state.put("ROLE_A", 1L);
+        long generation = TableSnapshot.reset(file, state);
+
+        try (TableSnapshot snapshot = TableSnapshot.open(file, null)) {
+            Assert.assertEquals(snapshot.size(), 0);
+            Assert.assertEquals(snapshot.getGeneration(), generation);
+        }
+    }
+
+    @Test
+    public void testHash() {
+        Assert.assertEquals(TableSnapshot.hash("100ROLE_A"), TableSnapshot.hash("100ROLE_A"));
+        Assert.assertNotEquals(TableSnapshot.hash("100ROLE_A"), TableSnapshot.hash("100ROLE_B"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Username listing used to detect deleted users in LiveSync, runs without SAP.
+ */
+public class UserNameSnapshotTest {
+
+    private SortedSet<String> names(String... names) {
+        return new TreeSet<>(Arrays.asList(names));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        File dir = Files.createTempDirectory("sap-users").toFile();
+        dir.deleteOnExit();
+        File file = new File(dir, "TEST-USERS.names.gz");
+        file.deleteOnExit();
+
+        Assert.assertNull(UserNameSnapshot.read(file));
+
+        SortedSet<String> names = names("TESTUSER01", "TESTUSER02", "TESTUSER10", "ADMIN", "DDIC", "T");
+        new UserNameSnapshot(1000L, names).write(file);
+
+        UserNameSnapshot snapshot = UserNameSnapshot.read(file);
+        Assert.assertEquals(snapshot.getListedAt(), 1000L);
+        Assert.assertEquals(snapshot.getUserNames(), names);
+    }
+
+    @Test
+    public void testRemoved() {
+        UserNameSnapshot previous = new UserNameSnapshot(1000L, names("ADMIN", "BOB", "JOHN", "MARY", "ZORRO"));
+        UserNameSnapshot actual = new UserNameSnapshot(2000L, names("ALICE", "BOB", "MARY", "NEW"));
+        Assert.assertEquals(previous.getRemoved(actual), Arrays.asList("ADMIN", "JOHN", "ZORRO"));
+        Assert.assertTrue(actual.getRemoved(actual).isEmpty());
+    }
+}
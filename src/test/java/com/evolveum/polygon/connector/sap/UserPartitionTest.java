@@ -0,0 +1,55 @@
+package com.evolveum.polygon.connector.sap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+/**
+ * Username ranges of partitioned reconciliation, runs without SAP.
+ */
+public class UserPartitionTest {
+
+    @Test
+    public void testPartitions() {
+        List<UserPartition> partitions = UserPartition.of(new String[]{"m", "F", " ", "S"});
+        Assert.assertEquals(partitions.size(), 4);
+        Assert.assertEquals(partitions.get(0), new UserPartition(null, "F"));
+        Assert.assertEquals(partitions.get(1), new UserPartition("F", "M"));
+        Assert.assertEquals(partitions.get(3), new UserPartition("S", null));
+
+        Assert.assertEquals(UserPartition.of(new String[0]).size(), 1);
+        Assert.assertNull(UserPartition.of(null).get(0).toFilter(null));
+    }
+
+    @Test
+    public void testFilter() {
+        UserPartition first = new UserPartition(null, "F");
+        Assert.assertEquals(first.toFilter(null).getOption(), SapFilter.OPERATOR_LESS_THAN);
+        Assert.assertEquals(first.toFilter("BOB").getOption(), SapFilter.OPERATOR_BETWEEN);
+        Assert.assertEquals(first.toFilter("BOB").getValue(), "BOB");
+
+        UserPartition middle = new UserPartition("F", "M");
+        SapFilter filter = middle.toFilter(null);
+        Assert.assertEquals(filter.getParameter(), SapConnector.USERNAME);
+        Assert.assertEquals(filter.getValue(), "F");
+        Assert.assertEquals(filter.getHighValue(), "M");
+        Assert.assertEquals(middle.toFilter("ADAM").getValue(), "F");
+
+        Assert.assertEquals(new UserPartition("S", null).toFilter(null).getOption(), SapFilter.OPERATOR_GREATER_EQUAL);
+    }
+
+    @Test
+    public void testContains() {
+        UserPartition middle = new UserPartition("F", "M");
+        Assert.assertTrue(middle.contains("F"));
+        Assert.assertTrue(middle.contains("JOHN"));
+        Assert.assertFalse(middle.contains("M")); // BT includes it, but it belongs to next partition
+        Assert.assertFalse(middle.contains("ADAM"));
+
+        Assert.assertTrue(middle.isBeforeOrAt("MARY"));
+        Assert.assertTrue(middle.isBeforeOrAt("M"));
+        Assert.assertFalse(middle.isBeforeOrAt("JOHN"));
+        Assert.assertFalse(new UserPartition("S", null).isBeforeOrAt("ZORRO"));
+    }
+}